@@ -0,0 +1,174 @@
+package oop.bank.system;
+
+import oop.bank.system.classes.BankServer;
+import oop.bank.system.classes.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for a running {@link BankServer}. Opens many concurrent sessions, each on a virtual thread,
+ * that send pipelined balance inquiries, deposits, withdrawals and transfers against a set of accounts it
+ * creates first, then prints the throughput and the latency percentiles of the requests.
+ * <p>
+ * Usage: {@code java oop.bank.system.LoadGenerator [host] [port] [sessions] [seconds] [pipelineDepth] [accounts]}
+ */
+public class LoadGenerator {
+    private static final String OPENING_DEPOSIT = "1000.00"; // Initial balance of each account
+    private static final int SETUP_ROUND_SIZE = 1000;         // Requests pipelined per round while opening accounts
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : BankServer.DEFAULT_PORT;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int pipelineDepth = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        int accountCount = args.length > 5 ? Integer.parseInt(args[5]) : 1000;
+
+        long[] accounts = openAccounts(host, port, accountCount);
+        System.out.println("Opened " + accounts.length + " accounts; running " + sessions + " sessions for "
+                + seconds + " s with " + pipelineDepth + " pipelined requests each.");
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        LongAdder failedSessions = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < sessions; i++) {
+                executor.execute(() -> {
+                    try {
+                        runSession(host, port, accounts, pipelineDepth, deadline, latencies, completed, rejected);
+                    } catch (IOException e) {
+                        failedSessions.increment();
+                    }
+                });
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format(Locale.ROOT, "%d requests in %.1f s: %.0f requests/s, %d rejected, %d sessions failed",
+                completed.sum(), elapsed, completed.sum() / elapsed, rejected.sum(), failedSessions.sum()));
+        System.out.println(String.format(Locale.ROOT, "Latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMax())));
+    }
+
+    /**
+     * Creates the accounts used by the sessions and funds them over one connection, pipelining the requests
+     * in rounds small enough for the responses of a round to fit in the socket buffers.
+     */
+    private static long[] openAccounts(String host, int port, int count) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = reader(socket);
+             BufferedWriter out = writer(socket)) {
+            long[] accounts = new long[count];
+            for (int from = 0; from < count; from += SETUP_ROUND_SIZE) {
+                int to = Math.min(count, from + SETUP_ROUND_SIZE);
+                for (int i = from; i < to; i++) {
+                    out.append(i % 2 == 0 ? "ADD,CHECKING" : "ADD,SAVINGS")
+                            .append(",Load,Client").append(Integer.toString(i)).append(",load@example.com,555-0100\n");
+                }
+                out.flush();
+                for (int i = from; i < to; i++) {
+                    accounts[i] = Long.parseLong(expectOk(in.readLine()).substring(3));
+                    out.append("DEPOSIT,").append(Long.toString(accounts[i])).append(',').append(OPENING_DEPOSIT).append('\n');
+                }
+                out.flush();
+                for (int i = from; i < to; i++) {
+                    expectOk(in.readLine());
+                }
+            }
+            out.append("QUIT\n").flush();
+            return accounts;
+        }
+    }
+
+    /**
+     * Sends rounds of pipelined requests until the deadline, recording the latency of each request
+     * from the time its round was sent to the time its response arrived.
+     */
+    private static void runSession(String host, int port, long[] accounts, int pipelineDepth, long deadline,
+                                   LatencyHistogram latencies, LongAdder completed, LongAdder rejected) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = reader(socket);
+             BufferedWriter out = writer(socket)) {
+            socket.setTcpNoDelay(true);
+            List<String> round = new ArrayList<>(pipelineDepth);
+            while (System.nanoTime() < deadline) {
+                round.clear();
+                for (int i = 0; i < pipelineDepth; i++) {
+                    round.add(randomRequest(random, accounts));
+                }
+                long sent = System.nanoTime();
+                for (String request : round) {
+                    out.append(request).append('\n');
+                }
+                out.flush();
+                for (int i = 0; i < pipelineDepth; i++) {
+                    String response = in.readLine();
+                    if (response == null) {
+                        throw new IOException("Connection closed by the server.");
+                    }
+                    latencies.record(System.nanoTime() - sent);
+                    completed.increment();
+                    if (!response.startsWith("OK")) {
+                        rejected.increment();
+                    }
+                }
+            }
+            out.append("QUIT\n").flush();
+            in.readLine();
+        }
+    }
+
+    /**
+     * Picks a request: 40% balance inquiries, 30% deposits, 20% withdrawals and 10% transfers.
+     */
+    private static String randomRequest(ThreadLocalRandom random, long[] accounts) {
+        long account = accounts[random.nextInt(accounts.length)];
+        int kind = random.nextInt(10);
+        if (kind < 4) {
+            return "BALANCE," + account;
+        } else if (kind < 7) {
+            return "DEPOSIT," + account + ",1.00";
+        } else if (kind < 9) {
+            return "WITHDRAW," + account + ",0.50";
+        }
+        return "TRANSFER," + account + "," + accounts[random.nextInt(accounts.length)] + ",0.25";
+    }
+
+    private static String expectOk(String response) throws IOException {
+        if (response == null || !response.startsWith("OK")) {
+            throw new IOException("Unexpected response while opening accounts: " + response);
+        }
+        return response;
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static BufferedWriter writer(Socket socket) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
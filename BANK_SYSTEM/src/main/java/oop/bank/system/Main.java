@@ -1,8 +1,12 @@
 package oop.bank.system;
 
 import oop.bank.system.classes.BankManager;
+import oop.bank.system.classes.BankMetrics;
+import oop.bank.system.classes.BankServer;
 import oop.bank.system.classes.Dashboard;
 
+import java.io.IOException;
+
 /**
  * Main entry point for the banking system application.
  * This class initializes the system with path configurations and starts the user interaction
@@ -16,10 +20,64 @@ public class Main {
         // Directory path where individual client data files are stored.
         String clientDataDirectory = "data/clientData";
 
-        // Create a Dashboard instance with a new BankManager configured with paths.
-        Dashboard dashboard = new Dashboard(new BankManager(clientListFilePath, clientDataDirectory));
+        // Path to the append-only journal recording every balance change.
+        String journalFilePath = "data/transactions.journal";
+
+        // Accounts kept in memory, set with -Dbank.accountCacheSize; 0 loads every account at startup.
+        int accountCacheSize = Integer.getInteger("bank.accountCacheSize", 0);
+
+        // Account state kept in off-heap columns, set with -Dbank.offHeapAccounts=true.
+        boolean offHeapAccounts = Boolean.getBoolean("bank.offHeapAccounts");
+
+        // Create a BankManager configured with paths.
+        BankManager bankManager = new BankManager(clientListFilePath, clientDataDirectory,
+                journalFilePath, BankManager.DEFAULT_GROUP_COMMIT_SIZE, accountCacheSize, offHeapAccounts);
+
+        // Operation metrics published over JMX, set with -Dbank.metrics=true; -Dbank.metricsReportSeconds
+        // also appends a text report to data/metrics.log at that interval.
+        if (Boolean.getBoolean("bank.metrics")) {
+            BankMetrics metrics = bankManager.enableMetrics();
+            metrics.registerMBean();
+            int reportSeconds = Integer.getInteger("bank.metricsReportSeconds", 0);
+            if (reportSeconds > 0) {
+                metrics.startReporting("data/metrics.log", reportSeconds);
+            }
+        }
+
+        // Serve the bank over the network instead of the console, set with -Dbank.serverPort.
+        int serverPort = Integer.getInteger("bank.serverPort", 0);
+        if (serverPort > 0) {
+            serve(bankManager, serverPort);
+            return;
+        }
+
+        // Create a Dashboard instance with the BankManager.
+        Dashboard dashboard = new Dashboard(bankManager);
 
         // Display the main menu to the user to begin interaction with the banking system.
         dashboard.displayMenu();
     }
+
+    /**
+     * Serves the bank on a local port until the process is stopped, then closes the server and the bank.
+     * @param bankManager The bank to serve.
+     * @param port The port to listen on.
+     */
+    private static void serve(BankManager bankManager, int port) {
+        BankServer server;
+        try {
+            server = new BankServer(bankManager, port);
+        } catch (IOException e) {
+            System.out.println("An error occurred while starting the server on port " + port + ".");
+            e.printStackTrace();
+            bankManager.close();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            bankManager.close();
+        }));
+        System.out.println("Serving the bank on port " + server.getPort() + "; stop with Ctrl+C.");
+        server.serve();
+    }
 }
@@ -0,0 +1,85 @@
+package oop.bank.system.classes;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded set of resident accounts used when accounts are loaded lazily.
+ * Eviction follows the CLOCK algorithm, an approximation of LRU: a hit only sets the entry's referenced flag,
+ * without locking, and the eviction sweep gives referenced entries a second chance and evicts the first entry
+ * not used since the sweep last passed it. Admissions and evictions are serialized on the cache's lock.
+ */
+class AccountCache {
+    /**
+     * Drops an entry's account from memory, writing it back first if needed.
+     */
+    interface Evictor {
+        /**
+         * @param entry The entry chosen for eviction.
+         * @return True if the entry no longer needs a place in the cache, false if it is busy and must stay.
+         */
+        boolean evict(AccountEntry entry);
+    }
+
+    private final int capacity;                   // Resident accounts kept before evicting
+    private final ArrayDeque<AccountEntry> clock; // Resident entries in sweep order
+    private final ReentrantLock lock;             // Serializes admissions and evictions
+    private final Evictor evictor;                // Releases the accounts of evicted entries
+
+    /**
+     * Creates an empty cache.
+     * @param capacity Maximum number of resident accounts.
+     * @param evictor Callback releasing an evicted entry's account.
+     */
+    AccountCache(int capacity, Evictor evictor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Account cache capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.clock = new ArrayDeque<>(Math.min(capacity, 1 << 16));
+        this.lock = new ReentrantLock();
+        this.evictor = evictor;
+    }
+
+    /**
+     * Adds an entry whose account was just made resident, evicting others if the cache is over capacity.
+     * Entries whose eviction is refused stay, so the cache can exceed its capacity while many accounts are busy.
+     * @param entry The entry to add.
+     */
+    void admit(AccountEntry entry) {
+        lock.lock();
+        try {
+            entry.referenced = true;
+            clock.addLast(entry);
+            // Each entry is passed at most twice: once to clear its flag, once to evict it
+            for (int budget = 2 * clock.size(); clock.size() > capacity && budget > 0; budget--) {
+                AccountEntry candidate = clock.pollFirst();
+                if (candidate.referenced) {
+                    candidate.referenced = false;
+                    clock.addLast(candidate);
+                } else if (!evictor.evict(candidate)) {
+                    clock.addLast(candidate);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache, including removed clients not swept out yet.
+     * @return The number of cached entries.
+     */
+    int size() {
+        lock.lock();
+        try {
+            return clock.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,19 @@
+package oop.bank.system.classes;
+
+/**
+ * Index entry pairing a client with their bank account.
+ * Both are reachable from a single account number lookup.
+ */
+class AccountEntry {
+    final Client client;           // Client owning the account
+    volatile BankAccount account;  // Account held by the client, null while it is not resident (lazy or off-heap only)
+    boolean dirty;                 // True when the balance changed since client-info.txt was last written
+    boolean referenced;            // Set on access, cleared by the account cache's eviction sweep; racy by design
+    int row;                       // Row of the account in the off-heap store, -1 if it has none
+
+    AccountEntry(Client client, BankAccount account) {
+        this.client = client;
+        this.account = account;
+        this.row = -1;
+    }
+}
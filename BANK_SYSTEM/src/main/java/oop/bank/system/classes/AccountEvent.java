@@ -0,0 +1,128 @@
+package oop.bank.system.classes;
+
+/**
+ * Structured record of activity on an account, handed to the notification dispatcher.
+ * Events carry only primitive values and references; the human-readable message is built
+ * by {@link #describe()} when a sink actually delivers the event.
+ */
+public final class AccountEvent {
+    /**
+     * Kind of activity.
+     */
+    public enum Type {
+        DEPOSIT,
+        WITHDRAWAL,
+        INTEREST,
+        FEE,
+        TRANSFER_OUT, // Withdrawn by a transfer to the counterparty
+        TRANSFER_IN   // Deposited by a transfer from the counterparty
+    }
+
+    /**
+     * Channel through which the account holder is notified.
+     */
+    public enum Channel {
+        SMS,
+        EMAIL
+    }
+
+    public static final long NO_COUNTERPARTY = 0; // Counterparty of activity not involving another account
+
+    private final Type type;            // Kind of activity
+    private final BankAccount account;  // Account the activity happened on
+    private final long amount;          // Amount moved, in cents
+    private final long balance;         // Balance after the activity, in cents
+    private final long timestamp;       // Time of the activity, in milliseconds since the epoch
+    private final long counterparty;    // Other account of a transfer, or NO_COUNTERPARTY
+
+    /**
+     * Creates an event.
+     * @param type Kind of activity.
+     * @param account Account the activity happened on.
+     * @param amount Amount moved, in cents.
+     * @param balance Balance after the activity, in cents.
+     * @param timestamp Time of the activity, in milliseconds since the epoch.
+     */
+    public AccountEvent(Type type, BankAccount account, long amount, long balance, long timestamp) {
+        this(type, account, amount, NO_COUNTERPARTY, balance, timestamp);
+    }
+
+    /**
+     * Creates an event involving another account, such as one side of a transfer.
+     * @param type Kind of activity.
+     * @param account Account the activity happened on.
+     * @param amount Amount moved, in cents.
+     * @param counterparty Other account involved, or {@link #NO_COUNTERPARTY}.
+     * @param balance Balance after the activity, in cents.
+     * @param timestamp Time of the activity, in milliseconds since the epoch.
+     */
+    public AccountEvent(Type type, BankAccount account, long amount, long counterparty, long balance, long timestamp) {
+        this.type = type;
+        this.account = account;
+        this.amount = amount;
+        this.counterparty = counterparty;
+        this.balance = balance;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public BankAccount getAccount() {
+        return account;
+    }
+
+    public long getAccountNumber() {
+        return account.getAccountNumber();
+    }
+
+    public Channel getChannel() {
+        return account.getNotificationChannel();
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getCounterparty() {
+        return counterparty;
+    }
+
+    /**
+     * Builds the notification message for the account holder.
+     * @return The message, e.g. "Deposited: 10.00; New Balance: 25.00".
+     */
+    public String describe() {
+        StringBuilder message = new StringBuilder(64);
+        switch (type) {
+            case DEPOSIT:
+                message.append("Deposited: ");
+                break;
+            case WITHDRAWAL:
+                message.append("Withdrawn: ");
+                break;
+            case FEE:
+                message.append("Fee charged: ");
+                break;
+            case TRANSFER_OUT:
+                message.append("Transferred to ").append(counterparty).append(": ");
+                break;
+            case TRANSFER_IN:
+                message.append("Received from ").append(counterparty).append(": ");
+                break;
+            default:
+                message.append("Interest added: ");
+        }
+        Money.appendTo(message, amount).append("; New Balance: ");
+        return Money.appendTo(message, balance).toString();
+    }
+}
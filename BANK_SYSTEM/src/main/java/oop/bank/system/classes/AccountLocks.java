@@ -0,0 +1,117 @@
+package oop.bank.system.classes;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks guarding account state.
+ * Each account number maps to one of a fixed number of locks, so operations on unrelated accounts
+ * usually take different locks and run in parallel. Locks covering several accounts are always
+ * acquired in ascending stripe order, which rules out deadlocks between concurrent transfers.
+ */
+class AccountLocks {
+    private final ReentrantLock[] stripes; // Lock per stripe
+    private final int mask;                // Maps a hash to a stripe index
+
+    /**
+     * Creates the lock stripes.
+     * @param stripeCount Number of stripes, rounded up to a power of two.
+     */
+    AccountLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    int stripeOf(long accountNumber) {
+        long h = accountNumber * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    void lock(long accountNumber) {
+        stripes[stripeOf(accountNumber)].lock();
+    }
+
+    void unlock(long accountNumber) {
+        stripes[stripeOf(accountNumber)].unlock();
+    }
+
+    /**
+     * Locks an account's stripe only if no thread holds it, including the calling thread,
+     * so the caller never disturbs an account that the current thread is in the middle of using.
+     * @return True if the stripe was locked.
+     */
+    boolean tryLockIdle(long accountNumber) {
+        ReentrantLock stripe = stripes[stripeOf(accountNumber)];
+        return !stripe.isHeldByCurrentThread() && stripe.tryLock();
+    }
+
+    /**
+     * Locks the stripes of two accounts in ascending stripe order.
+     */
+    void lockPair(long first, long second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        if (a == b) {
+            stripes[a].lock();
+        } else {
+            stripes[Math.min(a, b)].lock();
+            stripes[Math.max(a, b)].lock();
+        }
+    }
+
+    void unlockPair(long first, long second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        stripes[a].unlock();
+        if (a != b) {
+            stripes[b].unlock();
+        }
+    }
+
+    /**
+     * Returns the distinct stripes covering the given accounts, in ascending order.
+     * @param accountNumbers Account numbers, duplicates allowed.
+     * @param count Number of leading entries of the array to consider.
+     * @return The stripe indexes to pass to {@link #lockStripes(int[])}.
+     */
+    int[] stripesOf(long[] accountNumbers, int count) {
+        boolean[] used = new boolean[stripes.length];
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            int stripe = stripeOf(accountNumbers[i]);
+            if (!used[stripe]) {
+                used[stripe] = true;
+                distinct++;
+            }
+        }
+        int[] result = new int[distinct];
+        for (int stripe = 0, next = 0; next < distinct; stripe++) {
+            if (used[stripe]) {
+                result[next++] = stripe;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Locks the given stripes, which must be distinct and in ascending order.
+     */
+    void lockStripes(int[] sortedStripes) {
+        for (int stripe : sortedStripes) {
+            stripes[stripe].lock();
+        }
+    }
+
+    void unlockStripes(int[] sortedStripes) {
+        for (int i = sortedStripes.length - 1; i >= 0; i--) {
+            stripes[sortedStripes[i]].unlock();
+        }
+    }
+}
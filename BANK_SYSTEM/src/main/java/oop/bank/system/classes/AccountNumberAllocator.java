@@ -0,0 +1,229 @@
+package oop.bank.system.classes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allocates 10-digit account numbers that are unique by construction.
+ * A counter is mapped through a keyed format-preserving permutation (a Feistel network with cycle walking)
+ * onto the 9-digit payloads 100000000 to 999999999, and a Luhn check digit is appended. Different counter
+ * values always give different numbers, so no lookup is needed to avoid duplicates, while consecutive accounts
+ * still get unrelated-looking numbers.
+ * <p>
+ * The counter is advanced with a lock-free increment. Ranges of it are reserved durably in a small state file,
+ * a block at a time, so numbers handed out are never reissued after a restart; a crash skips at most the rest
+ * of the current block.
+ */
+public class AccountNumberAllocator {
+    public static final int DEFAULT_RESERVATION_SIZE = 4096; // Counter values reserved per state file write
+
+    private static final long PAYLOAD_BASE = 100_000_000L;  // Smallest 9-digit payload
+    private static final long PAYLOAD_RANGE = 900_000_000L; // Number of 9-digit payloads
+    private static final int HALF_BITS = 15;                // Feistel half width; 2^30 covers the payload range
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+    private static final int MAGIC = 0x424B414E;            // "BKAN"
+    private static final int STATE_SIZE = 4 + 8 + 8;        // Magic, permutation key, reserved limit
+
+    private final Path statePath;         // File holding the key and the reserved counter limit
+    private final int reservationSize;    // Counter values reserved per state file write
+    private final int[] roundKeys;        // Feistel round keys derived from the persisted key
+    private final long key;               // Permutation key, chosen randomly when the state file is created
+    private final AtomicLong next;        // Next counter value to hand out
+    private volatile long reservedLimit;  // Counter values below this are durably reserved
+    private final ReentrantLock lock;     // Serializes state file writes
+
+    /**
+     * Opens the allocator state, creating it with a random permutation key if it does not exist.
+     * @param stateFilePath Path to the state file.
+     * @param reservationSize Counter values reserved per state file write.
+     */
+    public AccountNumberAllocator(String stateFilePath, int reservationSize) {
+        if (reservationSize <= 0) {
+            throw new IllegalArgumentException("Reservation size must be positive.");
+        }
+        this.statePath = Paths.get(stateFilePath);
+        this.reservationSize = reservationSize;
+        this.lock = new ReentrantLock();
+        long storedKey = ThreadLocalRandom.current().nextLong();
+        long storedLimit = 0;
+        try {
+            if (Files.exists(statePath)) {
+                ByteBuffer state = ByteBuffer.wrap(Files.readAllBytes(statePath));
+                if (state.remaining() == STATE_SIZE && state.getInt() == MAGIC) {
+                    storedKey = state.getLong();
+                    storedLimit = state.getLong();
+                } else {
+                    System.out.println("Ignoring unrecognized account number state: " + statePath);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the account number state.");
+            e.printStackTrace();
+        }
+        this.key = storedKey;
+        this.roundKeys = new int[ROUNDS];
+        long seed = storedKey;
+        for (int i = 0; i < ROUNDS; i++) {
+            seed = seed * 0x5DEECE66DL + 0xBL;
+            roundKeys[i] = (int) (seed >>> 16);
+        }
+        // Everything below the stored limit may have been handed out before the restart
+        this.next = new AtomicLong(storedLimit);
+        this.reservedLimit = storedLimit;
+    }
+
+    /**
+     * Allocates the next account number. Lock-free unless a new block has to be reserved.
+     * @return A 10-digit account number never returned before by this allocator.
+     * @throws IllegalStateException if every number has been allocated.
+     */
+    public long allocate() {
+        long index = next.getAndIncrement();
+        if (index >= reservedLimit) {
+            reserveThrough(index);
+        }
+        return numberAt(index);
+    }
+
+    /**
+     * Allocates a block of account numbers with a single counter update.
+     * @param count Number of account numbers to allocate.
+     * @return The allocated account numbers.
+     * @throws IllegalStateException if not enough numbers are left.
+     */
+    public long[] allocate(int count) {
+        long[] numbers = new long[count];
+        if (count == 0) {
+            return numbers;
+        }
+        long first = next.getAndAdd(count);
+        long last = first + count - 1;
+        if (last >= reservedLimit) {
+            reserveThrough(last);
+        }
+        for (int i = 0; i < count; i++) {
+            numbers[i] = numberAt(first + i);
+        }
+        return numbers;
+    }
+
+    /**
+     * Checks that an account number has 10 digits and a valid check digit.
+     * Numbers created before the allocator existed usually fail this check.
+     * @param accountNumber The account number to check.
+     * @return True if the number is well-formed.
+     */
+    public static boolean isValid(long accountNumber) {
+        long payload = accountNumber / 10;
+        return payload >= PAYLOAD_BASE && payload < PAYLOAD_BASE + PAYLOAD_RANGE
+                && accountNumber % 10 == checkDigit(payload);
+    }
+
+    /**
+     * Computes the Luhn check digit of a payload.
+     * @param payload The digits to protect.
+     * @return The digit that makes the payload followed by it pass the Luhn check.
+     */
+    public static int checkDigit(long payload) {
+        int sum = 0;
+        boolean doubled = true; // The rightmost payload digit is doubled once the check digit is appended
+        for (long rest = payload; rest > 0; rest /= 10) {
+            int digit = (int) (rest % 10);
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private long numberAt(long index) {
+        if (index >= PAYLOAD_RANGE) {
+            throw new IllegalStateException("Account number space exhausted.");
+        }
+        long payload = PAYLOAD_BASE + permute(index);
+        return payload * 10 + checkDigit(payload);
+    }
+
+    /**
+     * Maps an index below the payload range to another index below it, bijectively.
+     * The Feistel network permutes 30-bit values; results outside the range are encrypted again until they fall
+     * inside it, which preserves the bijection on the range.
+     */
+    private long permute(long index) {
+        long value = index;
+        do {
+            int left = (int) (value >>> HALF_BITS);
+            int right = (int) (value & HALF_MASK);
+            for (int round = 0; round < ROUNDS; round++) {
+                int mixed = left ^ (round(right, roundKeys[round]) & HALF_MASK);
+                left = right;
+                right = mixed;
+            }
+            value = ((long) left << HALF_BITS) | right;
+        } while (value >= PAYLOAD_RANGE);
+        return value;
+    }
+
+    private static int round(int half, int roundKey) {
+        int h = (half ^ roundKey) * 0x9E3779B1;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * Durably reserves counter values up to and including the given one.
+     */
+    private void reserveThrough(long index) {
+        lock.lock();
+        try {
+            if (index < reservedLimit) {
+                return;
+            }
+            long limit = reservedLimit;
+            while (limit <= index) {
+                limit += reservationSize;
+            }
+            writeState(Math.min(limit, PAYLOAD_RANGE));
+            reservedLimit = limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeState(long limit) {
+        Path tempPath = statePath.resolveSibling(statePath.getFileName() + ".tmp");
+        ByteBuffer state = ByteBuffer.allocate(STATE_SIZE).putInt(MAGIC).putLong(key).putLong(limit);
+        state.flip();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (state.hasRemaining()) {
+                channel.write(state);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the account number state.");
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempPath, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("An error occurred while replacing the account number state.");
+            e.printStackTrace();
+        }
+    }
+}
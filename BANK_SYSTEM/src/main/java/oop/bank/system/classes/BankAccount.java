@@ -1,10 +1,15 @@
 package oop.bank.system.classes;
 
+import java.math.RoundingMode;
+
 /**
  * Abstract base class for different types of bank accounts.
  * Provides a framework for account operations and properties that are common across all types of accounts.
+ * Balance changes are not synchronized by the account: {@link BankManager} serializes them with the lock stripe
+ * of the account number, so accounts, including views over off-heap rows, need no lock object of their own.
+ * An account used outside a bank must be guarded by its caller.
  */
-public abstract class BankAccount {
+public abstract class BankAccount implements IArchive {
     // Unique identifier for the bank account
     private long accountNumber;
 
@@ -14,11 +19,17 @@ public abstract class BankAccount {
     // Type of the bank account (e.g., "Savings", "Checking")
     private String accountType;
 
-    // Current balance of the account
-    protected double balance;
+    // Current balance of the account in cents, readable without holding the account's lock stripe
+    protected volatile long balance;
+
+    // Annual fees applicable to the account, in cents
+    protected long annualFees;
+
+    // Dispatcher receiving activity events, null while the account is not registered with a bank
+    private volatile NotificationDispatcher notifier;
 
-    // Annual fees applicable to the account
-    protected double annualFees;
+    // Durable archive receiving transaction records, null while the account is not registered with a bank
+    private volatile TransactionArchive archive;
 
     /**
      * Constructor for bank account with initial balance.
@@ -26,10 +37,10 @@ public abstract class BankAccount {
      * @param accountNumber the unique identifier for the account
      * @param accountHolder the name of the individual or entity that holds the account
      * @param accountType the type of account
-     * @param annualFees the annual maintenance fees for the account
-     * @param balance the initial balance of the account
+     * @param annualFees the annual maintenance fees for the account, in cents
+     * @param balance the initial balance of the account, in cents
      */
-    public BankAccount(long accountNumber, String accountHolder, String accountType, double annualFees, double balance) {
+    public BankAccount(long accountNumber, String accountHolder, String accountType, long annualFees, long balance) {
         this.accountNumber = accountNumber;
         this.accountHolder = accountHolder;
         this.accountType = accountType;
@@ -43,10 +54,10 @@ public abstract class BankAccount {
      * @param accountNumber the unique identifier for the account
      * @param accountHolder the name of the individual or entity that holds the account
      * @param accountType the type of account
-     * @param annualFees the annual maintenance fees for the account
+     * @param annualFees the annual maintenance fees for the account, in cents
      */
-    public BankAccount(long accountNumber, String accountHolder, String accountType, double annualFees) {
-        this(accountNumber, accountHolder, accountType, annualFees, 0.0); // Call the main constructor with a zero balance
+    public BankAccount(long accountNumber, String accountHolder, String accountType, long annualFees) {
+        this(accountNumber, accountHolder, accountType, annualFees, 0); // Call the main constructor with a zero balance
     }
 
     /**
@@ -54,37 +65,80 @@ public abstract class BankAccount {
      */
     public abstract void accountSummary();
 
+    /**
+     * Returns the channel through which the account holder is notified of activity.
+     *
+     * @return the notification channel
+     */
+    public abstract AccountEvent.Channel getNotificationChannel();
+
     /**
      * Notifies the account holder of account activity.
+     * The event is queued for asynchronous delivery, so the caller never waits on notification I/O;
+     * nothing is allocated when no dispatcher is attached or it has no sink.
      *
-     * @param message the notification message to be sent to the account holder
+     * @param type the kind of activity
+     * @param amount the amount moved, in cents
      */
-    public abstract void notifyAccountActivity(String message);
+    protected void notifyAccountActivity(AccountEvent.Type type, long amount) {
+        notifyAccountActivity(type, amount, AccountEvent.NO_COUNTERPARTY);
+    }
+
+    /**
+     * Notifies the account holder of account activity involving another account, such as a transfer.
+     * The activity is archived durably before the notification is queued.
+     *
+     * @param type the kind of activity
+     * @param amount the amount moved, in cents
+     * @param counterparty the other account involved, or {@link AccountEvent#NO_COUNTERPARTY}
+     */
+    protected void notifyAccountActivity(AccountEvent.Type type, long amount, long counterparty) {
+        archiveTransaction(type, amount, counterparty, balance, System.currentTimeMillis());
+        NotificationDispatcher dispatcher = notifier;
+        if (dispatcher != null && dispatcher.isActive()) {
+            dispatcher.publish(new AccountEvent(type, this, amount, counterparty, balance, System.currentTimeMillis()));
+        }
+    }
 
     /**
      * Calculates and returns the annual fees for the account.
      *
-     * @return the annual fees
+     * @return the annual fees, in cents
      */
-    public abstract double calculateAnnualFees();
+    public abstract long calculateAnnualFees();
 
     /**
      * Determines the minimum balance required for the account.
      *
-     * @return the minimum balance required
+     * @return the minimum balance required, in cents
      */
-    public abstract double minimumBalanceRequired();
+    public abstract long minimumBalanceRequired();
 
     /**
      * Deposits a specified amount into the account.
      *
-     * @param amount the amount to deposit
-     * @return true if the deposit was successful, false otherwise (e.g., negative amounts)
+     * @param amount the amount to deposit, in cents
+     * @return true if the deposit was successful, false otherwise (e.g., negative amounts or a balance overflow)
+     */
+    public boolean deposit(long amount) {
+        return credit(amount, AccountEvent.Type.DEPOSIT, AccountEvent.NO_COUNTERPARTY);
+    }
+
+    /**
+     * Receives the amount of a transfer from another account, recorded with the source as counterparty.
+     *
+     * @param amount the amount to receive, in cents
+     * @param sourceAccountNumber the account the transfer comes from
+     * @return true if the amount was added, false for a non-positive amount or a balance overflow
      */
-    public boolean deposit(double amount) {
-        if (amount > 0) {
+    boolean receiveTransfer(long amount, long sourceAccountNumber) {
+        return credit(amount, AccountEvent.Type.TRANSFER_IN, sourceAccountNumber);
+    }
+
+    private boolean credit(long amount, AccountEvent.Type type, long counterparty) {
+        if (amount > 0 && this.balance <= Long.MAX_VALUE - amount) {
             this.balance += amount;
-            notifyAccountActivity("Deposited: " + amount + "; New Balance: " + this.balance);
+            notifyAccountActivity(type, amount, counterparty);
             return true;
         } else {
             return false;
@@ -94,23 +148,140 @@ public abstract class BankAccount {
     /**
      * Withdraws a specified amount from the account.
      *
-     * @param amount the amount to withdraw
-     * @return true if the withdrawal was successful, false if it fails due to insufficient balance or invalid amount
-     * @throws BankSystemException if the withdrawal fails due to an invalid condition
+     * @param amount the amount to withdraw, in cents
+     * @return true if the withdrawal was successful
+     * @throws BankSystemException if the withdrawal is refused, e.g. for insufficient balance or an invalid amount
+     */
+    public boolean withdraw(long amount) throws BankSystemException, Exception {
+        TransactionResult result = tryWithdraw(amount);
+        if (!result.isSuccess()) {
+            throw new BankSystemException("Withdrawal refused: " + result + ".");
+        }
+        return true;
+    }
+
+    /**
+     * Withdraws a specified amount from the account, telling why it was refused without throwing.
+     *
+     * @param amount the amount to withdraw, in cents
+     * @return {@link TransactionResult#SUCCESS}, or the reason the withdrawal was refused: an invalid amount,
+     *         insufficient funds, an exceeded overdraft or a balance that would fall below the minimum balance
+     */
+    public TransactionResult tryWithdraw(long amount) {
+        return debit(amount, AccountEvent.Type.WITHDRAWAL, AccountEvent.NO_COUNTERPARTY);
+    }
+
+    /**
+     * Sends the amount of a transfer to another account, recorded with the target as counterparty.
+     * The same limits apply as to a withdrawal.
+     *
+     * @param amount the amount to send, in cents
+     * @param targetAccountNumber the account the transfer goes to
+     * @return {@link TransactionResult#SUCCESS}, or the reason the transfer was refused, as for {@link #tryWithdraw(long)}
      */
-    public boolean withdraw(double amount) throws BankSystemException, Exception {
-        if (amount > 0 && this.balance >= amount) {
+    TransactionResult sendTransfer(long amount, long targetAccountNumber) {
+        return debit(amount, AccountEvent.Type.TRANSFER_OUT, targetAccountNumber);
+    }
+
+    private TransactionResult debit(long amount, AccountEvent.Type type, long counterparty) {
+        if (amount <= 0) {
+            return TransactionResult.INVALID_AMOUNT;
+        }
+        TransactionResult result = checkDebit(amount);
+        if (result.isSuccess()) {
             this.balance -= amount;
-            notifyAccountActivity("Withdrawn: " + amount + "; New Balance: " + this.balance);
-            return true;
-        } else {
-            throw new BankSystemException("Insufficient balance or invalid amount.");
+            notifyAccountActivity(type, amount, counterparty);
         }
+        return result;
+    }
+
+    /**
+     * Determines whether the balance allows taking out an amount.
+     * By default the balance must cover the amount and stay at or above the account's minimum balance.
+     *
+     * @param amount the positive amount to take out, in cents
+     * @return {@link TransactionResult#SUCCESS} if the amount may be taken out, otherwise the reason it may not
+     */
+    protected TransactionResult checkDebit(long amount) {
+        if (this.balance < amount) {
+            return TransactionResult.INSUFFICIENT_FUNDS;
+        }
+        if (this.balance - amount < minimumBalanceRequired()) {
+            return TransactionResult.BELOW_MINIMUM_BALANCE;
+        }
+        return TransactionResult.SUCCESS;
+    }
+
+    /**
+     * Charges the share of the annual fees due for one of several equal billing periods of a year.
+     * The fee is waived while the balance is at least the account's minimum balance, for accounts that have one.
+     * A fee may take the balance below zero; it is not limited by funds like a withdrawal.
+     *
+     * @param periodsPerYear the number of billing periods in a year, e.g. 12 for monthly
+     * @return the fee charged, in cents, or 0 if it was waived
+     */
+    public long chargeFee(int periodsPerYear) {
+        long minimumBalance = minimumBalanceRequired();
+        if (minimumBalance > 0 && this.balance >= minimumBalance) {
+            return 0;
+        }
+        long fee = Money.divide(calculateAnnualFees(), periodsPerYear, RoundingMode.HALF_EVEN);
+        if (fee <= 0 || this.balance < Long.MIN_VALUE + fee) {
+            return 0;
+        }
+        this.balance -= fee;
+        notifyAccountActivity(AccountEvent.Type.FEE, fee);
+        return fee;
+    }
+
+    /**
+     * Overwrites the balance with a previously recorded value, without notifying the account holder.
+     * Used when recovering balances from the transaction journal.
+     *
+     * @param balance the recorded balance, in cents
+     */
+    void restoreBalance(long balance) {
+        this.balance = balance;
+    }
+
+    /**
+     * Attaches the dispatcher that receives this account's activity events.
+     *
+     * @param notifier the dispatcher, or null to stop notifying
+     */
+    void setNotifier(NotificationDispatcher notifier) {
+        this.notifier = notifier;
+    }
+
+    /**
+     * Appends a transaction record to the attached archive, if any, and to the account's ledger in it.
+     *
+     * @param type the kind of transaction
+     * @param amount the amount moved, in cents
+     * @param counterparty the other account of a transfer, or {@link AccountEvent#NO_COUNTERPARTY}
+     * @param balance the balance after the transaction, in cents
+     * @param timestamp the time of the transaction, in milliseconds since the epoch
+     */
+    @Override
+    public void archiveTransaction(AccountEvent.Type type, long amount, long counterparty, long balance, long timestamp) {
+        TransactionArchive archive = this.archive;
+        if (archive != null) {
+            archive.append(accountNumber, type, amount, counterparty, balance, timestamp);
+        }
+    }
+
+    /**
+     * Attaches the archive that receives this account's transaction records.
+     *
+     * @param archive the archive, or null to stop archiving
+     */
+    void setArchive(TransactionArchive archive) {
+        this.archive = archive;
     }
 
     // Getter methods for account properties
 
-    public double getBalance() {
+    public long getBalance() {
         return this.balance;
     }
 
@@ -126,7 +297,7 @@ public abstract class BankAccount {
         return this.accountType;
     }
 
-    public double getAnnualFees() {
+    public long getAnnualFees() {
         return this.annualFees;
     }
 }
@@ -1,78 +1,1086 @@
 package oop.bank.system.classes;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Manages the operations for a bank, handling clients and their accounts.
+ * All operations are thread-safe. Money movement locks only the stripes of the accounts involved,
+ * so operations on independent accounts run in parallel, and clients can be added or removed at the same time.
+ * If the transaction journal cannot be written, every operation changing the bank throws
+ * {@link java.io.UncheckedIOException} instead of reporting success; the bank must then be reopened,
+ * which recovers the changes that were made durable.
  */
-public class BankManager {
-    private List<Client> clients;
-    private List<BankAccount> accounts;
-    private Random random;
+public final class BankManager {
+    public static final int DEFAULT_GROUP_COMMIT_SIZE = 16;    // Journal records per fsync; up to 15 may be lost on a power loss
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 10000; // Journal records written between two snapshots
+    public static final int DEFAULT_VIEW_CACHE_SIZE = 65536;   // Account objects kept when accounts are stored off-heap
+    private static final int LOCK_STRIPES = 1024;              // Number of account lock stripes
+    private static final int BATCH_CHUNK_SIZE = 65536;         // Streamed batch commands applied per locking pass
+    private static final int IMPORT_CHUNK_SIZE = 65536;        // CSV rows parsed and registered per parallel pass
+    private static final String EXPORT_HEADER_PREFIX = "AccountNumber,";
+    public static final long FIRST_PAGE = Long.MIN_VALUE;      // Cursor requesting the first page of clients
+    private static final int MONTHS_PER_YEAR = 12;             // Interest and fee periods per year at month-end
+    private static final int MONTH_END_RECORD_SIZE = 4096;     // Account balances per month-end journal record
+
+    // Terms of newly opened accounts; amounts in cents, rates in basis points
+    static final long CHECKING_OVERDRAFT_LIMIT = 20000;
+    static final long CHECKING_ANNUAL_FEE = 10000;
+    static final long SAVINGS_INTEREST_RATE = 150;
+    static final long SAVINGS_ANNUAL_FEE = 5000;
+
+    private ConcurrentLongHashMap<AccountEntry> accountIndex; // Primary index from account number to client and account
+    private NameIndex nameIndex;                   // Secondary index from case-insensitive full name to account numbers
+    private ConcurrentSkipListSet<Long> sortedAccountNumbers; // Account numbers in order, for paging through clients
+    private AccountLocks accountLocks;             // Striped locks guarding balances and client details
     private IOHandling ioHandling;
+    private TransactionJournal journal;            // Write-ahead log of balance mutations and client changes
+    private Queue<AccountEntry> dirtyEntries;      // Entries whose client-info.txt lags behind the journal
+    private SnapshotStore snapshotStore;           // Binary image of all clients and balances
+    private ExecutorService snapshotWriter;        // Background thread writing snapshots to disk
+    private AtomicBoolean snapshotInProgress;      // True while a captured snapshot is being written
+    private volatile long lastSnapshotSequence;    // Journal sequence covered by the last captured snapshot
+    private volatile int snapshotInterval;         // Journal records between two snapshots
+    private NotificationDispatcher notifications;  // Delivers account activity notifications off the caller's thread
+    private TransactionArchive archive;            // Durable per-transaction records for statements
+    private AccountNumberAllocator accountNumbers; // Source of new, collision-free account numbers
+    private AccountCache accountCache;             // Resident accounts when loading lazily, null when all are loaded
+    private OffHeapAccountStore accountStore;      // Account state in off-heap columns, null when accounts are objects
+    private MonthEndState monthEndState;           // Last closed month and progress of an unfinished month-end run
+    private volatile BankMetrics metrics;          // Operation counters and latencies, null while metrics are disabled
+    private IdempotencyCache idempotencyCache;     // Outcomes of recent requests by idempotency key
+    private LongAdder[] rejectionCounts;           // Refused money movements by TransactionResult ordinal
+    private ReentrantLock maintenanceLock;         // Serializes checkpoints, month-end runs and metrics changes
+    private volatile LongPredicate ownedAccountNumbers; // Numbers new accounts may get, null for any; set by a shard router
 
     /**
      * Initializes the manager with paths for data storage.
+     * The transaction journal is kept next to the client data directory.
      * @param clientListFilePath Path to the file containing client list.
      * @param clientDataDirectory Directory for client data files.
      */
     public BankManager(String clientListFilePath, String clientDataDirectory) {
-        this.clients = new ArrayList<>();
-        this.accounts = new ArrayList<>();
-        this.random = new Random();
+        this(clientListFilePath, clientDataDirectory,
+                Paths.get(clientDataDirectory).resolveSibling("transactions.journal").toString(),
+                DEFAULT_GROUP_COMMIT_SIZE);
+    }
+
+    /**
+     * Initializes the manager with paths for data storage and the transaction journal.
+     * The snapshot file, the transaction archive directory, the account number state and the month-end state
+     * are kept next to the journal.
+     * @param clientListFilePath Path to the file containing client list.
+     * @param clientDataDirectory Directory for client data files.
+     * @param journalFilePath Path to the transaction journal.
+     * @param groupCommitSize Journal records written between two fsync calls; 1 syncs every operation, 0 never syncs explicitly.
+     *                        Operations acknowledged since the last fsync may be lost on a power loss.
+     */
+    public BankManager(String clientListFilePath, String clientDataDirectory, String journalFilePath, int groupCommitSize) {
+        this(clientListFilePath, clientDataDirectory, journalFilePath, groupCommitSize, 0);
+    }
+
+    /**
+     * Initializes the manager with paths for data storage and the transaction journal, optionally loading accounts lazily.
+     * In lazy mode only clients are loaded at startup. Each account is read from its client data file on first access
+     * and kept in a bounded cache; when the cache is full, the least recently used accounts are written back to their
+     * data file if changed and dropped from memory, so memory use follows the active working set, not the client count.
+     * @param clientListFilePath Path to the file containing client list.
+     * @param clientDataDirectory Directory for client data files.
+     * @param journalFilePath Path to the transaction journal.
+     * @param groupCommitSize Journal records written between two fsync calls; 1 syncs every operation, 0 never syncs explicitly.
+     *                        Operations acknowledged since the last fsync may be lost on a power loss.
+     * @param accountCacheSize Maximum number of accounts kept in memory, or 0 to load every account at startup.
+     */
+    public BankManager(String clientListFilePath, String clientDataDirectory, String journalFilePath, int groupCommitSize,
+                       int accountCacheSize) {
+        this(clientListFilePath, clientDataDirectory, journalFilePath, groupCommitSize, accountCacheSize, false);
+    }
+
+    /**
+     * Initializes the manager with paths for data storage and the transaction journal, optionally keeping account
+     * state off the Java heap. Off-heap, every account is loaded at startup into columns outside the heap, and
+     * account objects are only created when an operation needs one; the most recently used ones are kept in a
+     * bounded cache and written back to their columns when evicted. Heap use and garbage collection work then
+     * no longer grow with the number of accounts.
+     * @param clientListFilePath Path to the file containing client list.
+     * @param clientDataDirectory Directory for client data files.
+     * @param journalFilePath Path to the transaction journal.
+     * @param groupCommitSize Journal records written between two fsync calls; 1 syncs every operation, 0 never syncs explicitly.
+     *                        Operations acknowledged since the last fsync may be lost on a power loss.
+     * @param accountCacheSize Maximum number of accounts kept in memory, or 0 to load every account at startup;
+     *                         off-heap, the number of account objects kept, or 0 for {@link #DEFAULT_VIEW_CACHE_SIZE}.
+     * @param offHeapAccounts True to keep account state in off-heap columns.
+     */
+    public BankManager(String clientListFilePath, String clientDataDirectory, String journalFilePath, int groupCommitSize,
+                       int accountCacheSize, boolean offHeapAccounts) {
+        this.accountIndex = new ConcurrentLongHashMap<>();
+        this.nameIndex = new NameIndex();
+        this.sortedAccountNumbers = new ConcurrentSkipListSet<>();
+        this.accountLocks = new AccountLocks(LOCK_STRIPES);
+        this.dirtyEntries = new ConcurrentLinkedQueue<>();
         this.ioHandling = new IOHandling(clientListFilePath, clientDataDirectory);
+        this.journal = new TransactionJournal(journalFilePath, groupCommitSize);
+        this.snapshotStore = new SnapshotStore(Paths.get(journalFilePath).resolveSibling("clients.snapshot").toString());
+        this.snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.snapshotInProgress = new AtomicBoolean();
+        this.snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+        this.accountNumbers = new AccountNumberAllocator(
+                Paths.get(journalFilePath).resolveSibling("account-numbers.state").toString(),
+                AccountNumberAllocator.DEFAULT_RESERVATION_SIZE);
+        this.archive = new TransactionArchive(Paths.get(journalFilePath).resolveSibling("archive").toString());
+        this.notifications = new NotificationDispatcher(new ConsoleNotificationSink(),
+                NotificationDispatcher.DEFAULT_QUEUE_CAPACITY, NotificationDispatcher.OverflowPolicy.DROP);
+        if (offHeapAccounts) {
+            this.accountStore = new OffHeapAccountStore();
+            accountCacheSize = accountCacheSize > 0 ? accountCacheSize : DEFAULT_VIEW_CACHE_SIZE;
+        }
+        this.accountCache = accountCacheSize > 0 ? new AccountCache(accountCacheSize, this::evict) : null;
+        this.monthEndState = new MonthEndState(Paths.get(journalFilePath).resolveSibling("month-end.state").toString());
+        this.idempotencyCache = new IdempotencyCache(IdempotencyCache.DEFAULT_CAPACITY,
+                IdempotencyCache.DEFAULT_RETENTION_MILLIS);
+        this.rejectionCounts = new LongAdder[TransactionResult.values().length];
+        Arrays.setAll(rejectionCounts, i -> new LongAdder());
+        this.maintenanceLock = new ReentrantLock();
         initializeClientsAndAccounts();
     }
 
     /**
-     * Loads clients and their accounts from storage, or initializes new accounts if none exist.
+     * Loads clients and their accounts from the latest snapshot and replays the journal records written after it.
+     * Without a usable snapshot, falls back to the client list file and the per-client data files.
      */
     private void initializeClientsAndAccounts() {
+        long watermark = snapshotStore.load(this::restore);
+        if (watermark < 0) {
+            accountIndex.clear();
+            nameIndex.clear();
+            sortedAccountNumbers.clear();
+            if (accountStore != null) {
+                accountStore = new OffHeapAccountStore();
+            }
+            loadClientDataFiles();
+            watermark = 0;
+        }
+        journal.advanceSequence(watermark);
+        lastSnapshotSequence = watermark;
+        JournalRecovery recovery = new JournalRecovery();
+        int replayed = journal.replay(watermark, recovery);
+        recovery.saveMonthEndProgress();
+        checkpoint();
+        if (replayed > 0 || !snapshotStore.exists()) {
+            snapshotAsync();
+        }
+    }
+
+    /**
+     * Loads clients from the client list file and their balances from the per-client data files.
+     * When loading lazily, the data files are left to be read on first access.
+     */
+    private void loadClientDataFiles() {
         ioHandling.readClientList();
-        List<String> clientData = ioHandling.getClientList();
-        for (String data : clientData) {
-            Client client = Client.fromString(data);
-            clients.add(client);
-            BankAccount account = ioHandling.readAccountData(client);
+        for (Client client : ioHandling.getClientList()) {
+            placeAccount(register(client, accountCache == null || accountStore != null ? readAccountFile(client) : null));
+        }
+    }
+
+    /**
+     * Reads an account from its client data file, opening an empty checking account if the file is missing.
+     */
+    private BankAccount readAccountFile(Client client) {
+        BankAccount account = ioHandling.readAccountData(client);
+        if (account == null) {
+            account = new CheckingAccount(client.getAccountNumber(), client.getFullName(),
+                    CHECKING_OVERDRAFT_LIMIT, CHECKING_ANNUAL_FEE);
+        }
+        return account;
+    }
+
+    /**
+     * Registers a client and account read from the snapshot. A dormant account is read from its data file
+     * right away unless accounts are loaded lazily. When loading lazily, accounts stored in full are marked dirty:
+     * their data file may predate the snapshot, so it must be rewritten before they can be evicted.
+     */
+    private void restore(Client client, BankAccount account) {
+        if (account == null && (accountCache == null || accountStore != null)) {
+            account = readAccountFile(client);
+        }
+        AccountEntry entry = register(client, account);
+        if (account != null && accountCache != null && accountStore == null) {
+            markDirty(entry);
+        }
+        placeAccount(entry);
+    }
+
+    /**
+     * Moves the account of a newly registered entry to where accounts are kept: into a row of the off-heap store,
+     * or into the account cache when loading lazily. Does nothing when all accounts are loaded or the entry is dormant.
+     * Must be called while holding the account's lock, or during recovery.
+     */
+    private void placeAccount(AccountEntry entry) {
+        BankAccount account = entry.account;
+        if (account == null || accountCache == null) {
+            return;
+        }
+        if (accountStore == null) {
+            accountCache.admit(entry);
+            return;
+        }
+        entry.row = accountStore.add(account);
+        entry.account = null;
+        account.setNotifier(null);
+        account.setArchive(null);
+    }
+
+    /**
+     * Returns a new object holding the state of a dormant account, read from the off-heap store or,
+     * when loading lazily, from the client data file.
+     */
+    private BankAccount loadAccount(AccountEntry entry) {
+        int row = entry.row;
+        return row >= 0 ? accountStore.view(row, entry.client) : readAccountFile(entry.client);
+    }
+
+    /**
+     * Adds a client and account to the account, name and account number indexes, replacing any entry with the same account number.
+     * The account may be null when loading lazily.
+     */
+    private AccountEntry register(Client client, BankAccount account) {
+        AccountEntry entry = new AccountEntry(client, account);
+        if (account != null) {
+            account.setNotifier(notifications);
+            account.setArchive(archive);
+        }
+        AccountEntry previous = accountIndex.put(client.getAccountNumber(), entry);
+        if (previous != null) {
+            nameIndex.remove(previous.client.getFullName(), previous.client.getAccountNumber());
+        }
+        nameIndex.add(client.getFullName(), client.getAccountNumber());
+        sortedAccountNumbers.add(client.getAccountNumber());
+        return entry;
+    }
+
+    /**
+     * Removes a client and account from the account, name and account number indexes.
+     */
+    private AccountEntry unregister(long accountNumber) {
+        AccountEntry entry = accountIndex.remove(accountNumber);
+        if (entry != null) {
+            nameIndex.remove(entry.client.getFullName(), accountNumber);
+            sortedAccountNumbers.remove(accountNumber);
+            BankAccount account = entry.account;
+            if (account != null) {
+                account.setNotifier(null);
+                account.setArchive(null);
+            }
+            // Freed only once the entry is out of the index, so snapshot captures never read a reused row
+            if (entry.row >= 0) {
+                accountStore.free(entry.row);
+                entry.row = -1;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns an entry's account, reading it from the off-heap store or its client data file and caching it
+     * if it is not resident. Must be called while holding the account's lock, or during recovery.
+     */
+    private BankAccount account(AccountEntry entry) {
+        BankAccount account = entry.account;
+        if (account != null) {
+            entry.referenced = true;
+            return account;
+        }
+        account = loadAccount(entry);
+        account.setNotifier(notifications);
+        account.setArchive(archive);
+        entry.account = account;
+        accountCache.admit(entry);
+        return account;
+    }
+
+    /**
+     * Returns an entry's account for reading without making it resident: a dormant account is read from
+     * the off-heap store or its client data file into a detached copy.
+     * Must not be called while holding a lock of the account index.
+     */
+    private BankAccount peekAccount(AccountEntry entry) {
+        BankAccount account = entry.account;
+        if (account != null) {
+            return account;
+        }
+        long accountNumber = entry.client.getAccountNumber();
+        accountLocks.lock(accountNumber);
+        try {
+            // Re-read under the lock, so the data file is not read while an eviction rewrites it
+            account = entry.account;
+            return account != null ? account : loadAccount(entry);
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
+    }
+
+    /**
+     * Evicts an entry from the account cache, writing its balance back to its off-heap row, or to its client
+     * data file if it changed. Accounts whose lock is held, by any thread, are busy and are not evicted.
+     * @return True if the entry left the cache, false if it must stay.
+     */
+    private boolean evict(AccountEntry entry) {
+        long accountNumber = entry.client.getAccountNumber();
+        if (!accountLocks.tryLockIdle(accountNumber)) {
+            return false;
+        }
+        try {
+            BankAccount account = entry.account;
             if (account == null) {
-                account = new CheckingAccount(client.getAccountNumber(), client.getFullName(), 200, 100);
+                return true;
+            }
+            if (accountStore != null) {
+                // Client data files stay a checkpointed view, as when all accounts are loaded
+                if (entry.row >= 0) {
+                    accountStore.write(entry.row, account);
+                }
+            } else {
+                if (entry.dirty && isRegistered(entry)) {
+                    // The data file becomes the only copy of the balance, so it must not get ahead of the durable journal
+                    journal.sync();
+                    if (!writeClientData(entry.client, account.getAccountType(), account.getBalance())) {
+                        return false;
+                    }
+                }
+                entry.dirty = false;
+            }
+            entry.account = null;
+            account.setNotifier(null);
+            account.setArchive(null);
+            return true;
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
+    }
+
+    /**
+     * Changes a registered client's details and moves them in the name index.
+     * Must be called while holding the account's lock, or during recovery.
+     */
+    private void changeClientDetails(Client client, String firstName, String lastName, String email, String phone) {
+        nameIndex.remove(client.getFullName(), client.getAccountNumber());
+        client.setFirstName(firstName);
+        client.setLastName(lastName);
+        client.setEmail(email);
+        client.setPhone(phone);
+        nameIndex.add(client.getFullName(), client.getAccountNumber());
+    }
+
+    /**
+     * Checks, while holding the account's lock, that the entry has not been removed or replaced concurrently.
+     */
+    private boolean isRegistered(AccountEntry entry) {
+        return accountIndex.get(entry.client.getAccountNumber()) == entry;
+    }
+
+    /**
+     * Applies journal records written after the loaded snapshot to the in-memory state.
+     */
+    private class JournalRecovery implements TransactionJournal.RecordHandler {
+        // Month-end balances by month and stripe, applied once the stripe's commit record is replayed
+        private final Map<Long, List<long[]>> pendingMonthEnd = new HashMap<>();
+        // Stripes committed by month-end runs, by month
+        private final Map<Long, BitSet> committedMonthEnd = new HashMap<>();
+
+        @Override
+        public void onBalanceUpdate(long sequence, long accountNumber, long balance) {
+            AccountEntry entry = accountIndex.get(accountNumber);
+            if (entry != null) {
+                account(entry).restoreBalance(balance);
+                markDirty(entry);
+            }
+        }
+
+        @Override
+        public void onClientAdded(long sequence, Client client, BankAccount account) {
+            unregister(client.getAccountNumber());
+            AccountEntry entry = register(client, account);
+            markDirty(entry);
+            placeAccount(entry);
+        }
+
+        @Override
+        public void onClientUpdated(long sequence, Client client) {
+            AccountEntry entry = accountIndex.get(client.getAccountNumber());
+            if (entry != null) {
+                changeClientDetails(entry.client, client.getFirstName(), client.getLastName(),
+                        client.getEmail(), client.getPhone());
+                markDirty(entry);
             }
-            accounts.add(account);
+        }
+
+        @Override
+        public void onClientRemoved(long sequence, long accountNumber) {
+            unregister(accountNumber);
+        }
+
+        @Override
+        public void onMonthEndBalance(long sequence, long period, int stripe, long accountNumber, long balance) {
+            pendingMonthEnd.computeIfAbsent(period * LOCK_STRIPES + stripe, key -> new ArrayList<>())
+                    .add(new long[] {accountNumber, balance});
+        }
+
+        @Override
+        public void onMonthEndCommitted(long sequence, long period, int stripe) {
+            List<long[]> balances = pendingMonthEnd.remove(period * LOCK_STRIPES + stripe);
+            if (balances != null) {
+                for (long[] balance : balances) {
+                    onBalanceUpdate(sequence, balance[0], balance[1]);
+                }
+            }
+            committedMonthEnd.computeIfAbsent(period, key -> new BitSet()).set(stripe);
+        }
+
+        @Override
+        public void onRequestCompleted(long sequence, String key, long fingerprint, TransactionResult result,
+                                       long timestamp) {
+            idempotencyCache.restore(key, fingerprint, result, timestamp);
+        }
+
+        /**
+         * Records the stripes committed by an unfinished month-end run in the month-end state,
+         * before a snapshot compacts their commit records out of the journal.
+         */
+        void saveMonthEndProgress() {
+            committedMonthEnd.forEach((period, stripes) -> {
+                if (period > monthEndState.getLastClosed()) {
+                    monthEndState.savePending(period, stripes);
+                }
+            });
+        }
+    }
+
+    /**
+     * Records the balance of an account in the journal and schedules its client data file for rewriting.
+     * Must be called while holding the account's lock, so journal records of one account stay in mutation order.
+     * The record reaches the journal file on the next commit.
+     * @param entry The entry whose balance changed.
+     */
+    private void journalBalance(AccountEntry entry) {
+        journal.appendBalance(entry.account.getAccountNumber(), entry.account.getBalance());
+        markDirty(entry);
+    }
+
+    /**
+     * Records the balances changed by a successful money movement in the journal, in a single record together with
+     * the outcome when the movement has an idempotency key. Must be called while holding the accounts' locks.
+     * @param request The request being executed, or null if it has no idempotency key.
+     * @param first The entry whose balance changed.
+     * @param second The other entry whose balance changed, or null.
+     */
+    private void journalBalances(IdempotencyCache.Request request, AccountEntry first, AccountEntry second) {
+        if (request == null) {
+            journalBalance(first);
+            if (second != null) {
+                journalBalance(second);
+            }
+            return;
+        }
+        long[] accountNumbers = {first.account.getAccountNumber(), second == null ? 0 : second.account.getAccountNumber()};
+        long[] balances = {first.account.getBalance(), second == null ? 0 : second.account.getBalance()};
+        journal.appendRequestCompleted(request.getKey(), request.getFingerprint(), TransactionResult.SUCCESS,
+                request.getTimestamp(), accountNumbers, balances, second == null ? 1 : 2);
+        markDirty(first);
+        if (second != null) {
+            markDirty(second);
+        }
+    }
+
+    /**
+     * Commits the journal records of the current operation and starts a background snapshot
+     * once enough records accumulated since the previous one.
+     */
+    private void commitJournal() {
+        journal.commit();
+        snapshotIfDue();
+    }
+
+    private void snapshotIfDue() {
+        if (journal.getLastSequence() - lastSnapshotSequence >= snapshotInterval) {
+            snapshotAsync();
+        }
+    }
+
+    private void markDirty(AccountEntry entry) {
+        if (!entry.dirty) {
+            entry.dirty = true;
+            dirtyEntries.add(entry);
+        }
+    }
+
+    /**
+     * Rewrites the client data files of accounts changed since the last checkpoint.
+     * The per-client files are a derived view of the journal and are only brought up to date here,
+     * or when an account is evicted while loading lazily.
+     */
+    public void checkpoint() {
+        maintenanceLock.lock();
+        try {
+            journal.sync();
+            List<AccountEntry> failed = new ArrayList<>();
+            AccountEntry entry;
+            while ((entry = dirtyEntries.poll()) != null) {
+                long accountNumber = entry.client.getAccountNumber();
+                Client client;
+                BankAccount account;
+                long balance;
+                accountLocks.lock(accountNumber);
+                try {
+                    if (!entry.dirty || !isRegistered(entry)) {
+                        continue;
+                    }
+                    entry.dirty = false;
+                    account = entry.account != null ? entry.account : loadAccount(entry);
+                    balance = account.getBalance();
+                    if (accountCache != null && accountStore == null) {
+                        // An evicted account is read back from this file, so a late write must not overwrite a newer one
+                        if (!writeClientData(entry.client, account.getAccountType(), balance)) {
+                            // Kept dirty, so it is not evicted before a later checkpoint writes it
+                            entry.dirty = true;
+                            failed.add(entry);
+                        }
+                        continue;
+                    }
+                    client = new Client(accountNumber, entry.client.getFirstName(), entry.client.getLastName(),
+                            entry.client.getEmail(), entry.client.getPhone());
+                } finally {
+                    accountLocks.unlock(accountNumber);
+                }
+                writeClientData(client, account.getAccountType(), balance);
+            }
+            dirtyEntries.addAll(failed);
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a client data file, timing the write when metrics are enabled.
+     */
+    private boolean writeClientData(Client client, String accountType, long balance) {
+        BankMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return ioHandling.writeClientData(client, accountType, balance);
+        }
+        long start = System.nanoTime();
+        boolean written = ioHandling.writeClientData(client, accountType, balance);
+        metrics.recordPersistence(BankMetrics.Operation.CLIENT_DATA_WRITE, System.nanoTime() - start);
+        return written;
+    }
+
+    /**
+     * Captures the current clients and balances and writes them as a snapshot on the background thread.
+     * Once written, the journal is compacted down to the records made after the capture.
+     * Does nothing if a previous snapshot is still being captured or written.
+     * <p>
+     * The capture takes no locks: it reads the journal sequence first, and every change made while the index is
+     * walked has a journal record after it, which recovery replays. So the calling thread, e.g. the operation whose
+     * commit made a snapshot due, only hands the work over and never waits for the walk.
+     */
+    public void snapshotAsync() {
+        if (!snapshotInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        snapshotWriter.execute(() -> {
+            try {
+                writeSnapshot();
+            } finally {
+                snapshotInProgress.set(false);
+            }
+        });
+    }
+
+    /**
+     * Writes the current clients and balances as a snapshot, then compacts the journal down to the records
+     * made after it. Each entry is encoded straight into the snapshot file as the index is walked, and off-heap
+     * rows are read from their columns, so the snapshot needs no copy of the bank on the heap. The index hands out
+     * the entries of one segment at a time after releasing the segment's lock, so clients can be added and removed
+     * while the records are written.
+     */
+    private void writeSnapshot() {
+        long journalSequence = journal.getLastSequence();
+        lastSnapshotSequence = journalSequence;
+        boolean written;
+        try (SnapshotStore.Writer snapshot = snapshotStore.open(journalSequence)) {
+            accountIndex.valueSpliterator().forEachRemaining(entry -> {
+                BankAccount account = entry.account;
+                // An evicted account's row is written before the account is dropped, so a null account means the row is current
+                if (account == null && entry.row >= 0) {
+                    accountStore.addTo(snapshot, entry.client, entry.row);
+                } else {
+                    snapshot.add(entry.client, account);
+                }
+            });
+            // Records up to the watermark must be durable before the journal is compacted past them.
+            journal.sync();
+            written = snapshot.commit();
+        }
+        // Without the snapshot, recovery starts from the client list, so it must list every client the snapshot holds
+        if (written && writeClientList()) {
+            journal.compact(journalSequence, idempotencyCache.getExpiryTime());
+        }
+    }
+
+    /**
+     * Rewrites the client list file from the account index, timing the write when metrics are enabled.
+     * Like the client data files, the list is a derived view: new clients are made durable by the journal,
+     * and the list is brought up to date with each snapshot, before the journal is compacted.
+     * Clients are copied one at a time as the file is written, so concurrent detail updates cannot tear a record.
+     */
+    private boolean writeClientList() {
+        BankMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean written = ioHandling.writeClientList(() -> streamClients()
+                .map(client -> new Client(client.getAccountNumber(), client.getFirstName(), client.getLastName(),
+                        client.getEmail(), client.getPhone()))
+                .iterator());
+        if (metrics != null) {
+            metrics.recordPersistence(BankMetrics.Operation.CLIENT_LIST_WRITE, System.nanoTime() - start);
+        }
+        return written;
+    }
+
+    /**
+     * Sets how many journal records may accumulate before a background snapshot is taken.
+     * @param snapshotInterval Number of journal records between two snapshots.
+     */
+    public void setSnapshotInterval(int snapshotInterval) {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive.");
+        }
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Sets how many idempotency keys are kept and for how long. A retry arriving after its key was dropped
+     * is executed again.
+     * @param maxKeys Maximum number of keys kept; the oldest are dropped first.
+     * @param retentionMillis Time a key is kept after its request arrived, in milliseconds.
+     */
+    public void setIdempotencyLimits(int maxKeys, long retentionMillis) {
+        idempotencyCache.setLimits(maxKeys, retentionMillis);
+    }
+
+    /**
+     * Starts counting operations and timing deposits, withdrawals, transfers, batches and client file writes.
+     * While disabled, operations only read one field to find that metrics are off.
+     * @return The metrics, the ones already collecting if metrics were enabled before.
+     */
+    public BankMetrics enableMetrics() {
+        maintenanceLock.lock();
+        try {
+            if (metrics == null) {
+                metrics = new BankMetrics();
+            }
+            return metrics;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Stops collecting metrics, stopping their periodic report and unregistering their MBean.
+     * Operations already running may still record into the old metrics.
+     */
+    public void disableMetrics() {
+        maintenanceLock.lock();
+        try {
+            BankMetrics disabled = metrics;
+            metrics = null;
+            if (disabled != null) {
+                disabled.close();
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the metrics being collected.
+     * @return The metrics, or null if metrics are disabled.
+     */
+    public BankMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checkpoints outstanding changes, writes a final snapshot and closes the transaction journal.
+     * Notifications still queued are delivered before returning, waiting at most a few seconds.
+     * If the journal failed, nothing more is written and the files are only closed.
+     */
+    public void close() {
+        notifications.close(5000);
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            checkpoint();
+            writeSnapshot();
+        } finally {
+            journal.close();
+            archive.close();
+            BankMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of accounts held in memory.
+     * @return The size of the account cache when loading lazily or storing accounts off-heap,
+     *         otherwise the number of accounts.
+     */
+    public int getResidentAccountCount() {
+        return accountCache == null ? accountIndex.size() : accountCache.size();
+    }
+
+    /**
+     * Returns the dispatcher delivering account activity notifications, e.g. to replace its sink
+     * or change its overflow policy.
+     * @return The notification dispatcher.
+     */
+    public NotificationDispatcher getNotificationDispatcher() {
+        return notifications;
+    }
+
+    /**
+     * Returns the durable archive of account transactions, e.g. to scan an account's activity for a statement.
+     * @return The transaction archive.
+     */
+    public TransactionArchive getTransactionArchive() {
+        return archive;
+    }
+
+    /**
+     * Generates an account number that is not in use yet.
+     * Allocated numbers never repeat; the index lookup only skips numbers that happen to match
+     * an account created before the allocator was introduced.
+     * @return An account number that is not in use.
+     */
+    private long generateUniqueAccountNumber() {
+        LongPredicate owned = ownedAccountNumbers;
+        long accountNumber;
+        do {
+            accountNumber = accountNumbers.allocate();
+        } while (accountIndex.containsKey(accountNumber) || (owned != null && !owned.test(accountNumber)));
+        return accountNumber;
+    }
+
+    /**
+     * Restricts the numbers given to new accounts, so a shard only opens accounts that are routed to it.
+     * Numbers refused by the filter are skipped, so a filter accepting one number in n costs n allocations per account.
+     * @param owned Test accepting the numbers this bank may use, or null to accept any.
+     */
+    void setOwnedAccountNumbers(LongPredicate owned) {
+        this.ownedAccountNumbers = owned;
+    }
+
+    /**
+     * Adds a new client and creates their account, storing information persistently.
+     * @param client Client information.
+     * @param isCheckingAccount True if the account is a checking account.
+     */
+    public void addClient(Client client, boolean isCheckingAccount) {
+        AccountEntry entry;
+        long accountNumber;
+        do {
+            accountNumber = generateUniqueAccountNumber();
+            client.setAccountNumber(accountNumber);
+            entry = new AccountEntry(client, openAccount(client, isCheckingAccount, 0));
+            accountLocks.lock(accountNumber);
+            // Another thread may have claimed the same number since it was generated.
+            if (accountIndex.putIfAbsent(accountNumber, entry) != null) {
+                accountLocks.unlock(accountNumber);
+                entry = null;
+            }
+        } while (entry == null);
+        try {
+            nameIndex.add(client.getFullName(), accountNumber);
+            sortedAccountNumbers.add(accountNumber);
+            journal.appendClientAdded(client, entry.account);
+            markDirty(entry);
+            placeAccount(entry);
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
+        commitJournal();
+    }
+
+    /**
+     * Creates an account with the standard terms for a client whose account number is set,
+     * attached to the bank's notification dispatcher and transaction archive.
+     */
+    private BankAccount openAccount(Client client, boolean isCheckingAccount, long openingBalance) {
+        BankAccount account = isCheckingAccount
+                ? new CheckingAccount(client.getAccountNumber(), client.getFullName(), CHECKING_OVERDRAFT_LIMIT, CHECKING_ANNUAL_FEE, openingBalance)
+                : new SavingsAccount(client.getAccountNumber(), client.getFullName(), SAVINGS_INTEREST_RATE, SAVINGS_ANNUAL_FEE, openingBalance);
+        account.setNotifier(notifications);
+        account.setArchive(archive);
+        return account;
+    }
+
+    /**
+     * Imports clients and their opening balances from a CSV file in bulk.
+     * Each row is either a client list row as written by {@link Client#toString()}, which opens a checking account
+     * with a zero balance, or a row in the format written by {@link CsvExporter}, which adds the account type
+     * ("Checking" or "Savings") and the opening balance. A header row is skipped. Rows with account number 0
+     * get a newly allocated number; rows with a number already in use are rejected.
+     * <p>
+     * The file is streamed in chunks whose rows are parsed and registered in parallel. Instead of journaling every
+     * client, the import is persisted once at the end by writing a snapshot, which also rewrites the client list
+     * from every client of the bank, so it becomes durable when this method returns.
+     * @param csvFilePath Path to the CSV file.
+     * @return The number of imported and rejected rows.
+     * @throws IOException if the file cannot be read.
+     */
+    public ImportResult importClients(String csvFilePath) throws IOException {
+        List<Client> importedClients = new ArrayList<>();
+        long rejected = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(csvFilePath), StandardCharsets.UTF_8)) {
+            List<String> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+            String line = reader.readLine();
+            if (line != null && line.startsWith(EXPORT_HEADER_PREFIX)) {
+                line = reader.readLine();
+            }
+            for (; line != null; line = reader.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (CsvParser.hasOpenQuote(line)) {
+                    line = readQuotedRow(reader, line);
+                }
+                chunk.add(line);
+                if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                    rejected += importChunk(chunk, importedClients);
+                    chunk.clear();
+                }
+            }
+            rejected += importChunk(chunk, importedClients);
+        }
+        if (!importedClients.isEmpty()) {
+            snapshotNow();
+        }
+        return new ImportResult(importedClients.size(), rejected);
+    }
+
+    /**
+     * Joins the lines of a row whose quoted field contains line breaks.
+     */
+    private static String readQuotedRow(BufferedReader reader, String firstLine) throws IOException {
+        StringBuilder row = new StringBuilder(firstLine);
+        String line;
+        while (CsvParser.hasOpenQuote(row) && (line = reader.readLine()) != null) {
+            row.append('\n').append(line);
+        }
+        return row.toString();
+    }
+
+    /**
+     * Parses and registers one chunk of import rows in parallel.
+     * @return The number of rejected rows.
+     */
+    private int importChunk(List<String> lines, List<Client> importedClients) {
+        int size = lines.size();
+        ImportRow[] rows = new ImportRow[size];
+        IntStream.range(0, size).parallel().forEach(i -> rows[i] = ImportRow.parse(lines.get(i)));
+
+        int unnumbered = 0;
+        for (ImportRow row : rows) {
+            if (row != null && row.client.getAccountNumber() == 0) {
+                unnumbered++;
+            }
+        }
+        long[] numbers = reserveAccountNumbers(unnumbered);
+        for (int i = 0, next = 0; i < size; i++) {
+            if (rows[i] != null && rows[i].client.getAccountNumber() == 0) {
+                rows[i].allocated = true;
+                rows[i].client.setAccountNumber(numbers[next++]);
+            }
+        }
+
+        boolean[] registered = new boolean[size];
+        IntStream.range(0, size).parallel().forEach(i -> registered[i] = rows[i] != null && registerImported(rows[i]));
+        int rejected = 0;
+        for (int i = 0; i < size; i++) {
+            if (registered[i]) {
+                importedClients.add(rows[i].client);
+            } else {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Claims the row's account number in the index. An allocated number already claimed by a row
+     * with an explicit account number is replaced by a new one; a number given in the file is not.
+     */
+    private boolean registerImported(ImportRow row) {
+        Client client = row.client;
+        while (true) {
+            long accountNumber = client.getAccountNumber();
+            AccountEntry entry = new AccountEntry(client, openAccount(client, row.checking, row.balance));
+            accountLocks.lock(accountNumber);
+            try {
+                if (accountIndex.putIfAbsent(accountNumber, entry) == null) {
+                    nameIndex.add(client.getFullName(), accountNumber);
+                    sortedAccountNumbers.add(accountNumber);
+                    markDirty(entry);
+                    placeAccount(entry);
+                    return true;
+                }
+            } finally {
+                accountLocks.unlock(accountNumber);
+            }
+            if (!row.allocated) {
+                return false;
+            }
+            client.setAccountNumber(generateUniqueAccountNumber());
+        }
+    }
+
+    /**
+     * Reserves a block of distinct account numbers that are not in use yet.
+     */
+    private long[] reserveAccountNumbers(int count) {
+        LongPredicate owned = ownedAccountNumbers;
+        long[] numbers = accountNumbers.allocate(count);
+        for (int i = 0; i < count; i++) {
+            if (accountIndex.containsKey(numbers[i]) || (owned != null && !owned.test(numbers[i]))) {
+                numbers[i] = generateUniqueAccountNumber();
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * Writes a snapshot on the calling thread, waiting for any background snapshot to finish first
+     * so an older image cannot overwrite this one.
+     */
+    private void snapshotNow() {
+        holdSnapshots();
+        try {
+            writeSnapshot();
+        } finally {
+            snapshotInProgress.set(false);
+        }
+    }
+
+    /**
+     * Waits until no snapshot is being written and keeps new ones from starting, until snapshotInProgress is reset.
+     */
+    private void holdSnapshots() {
+        boolean interrupted = false;
+        while (!snapshotInProgress.compareAndSet(false, true)) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * Generates a unique account number.
-     * @return A unique long account number.
+     * One parsed row of a client import file.
      */
-    private long generateUniqueAccountNumber() {
-        long accountNumber;
-        do {
-            accountNumber = (long) (random.nextDouble() * 9999999999L + 1000000000L);
-        } while (findAccountByNumber(accountNumber).isPresent());
-        return accountNumber;
-    }
+    private static final class ImportRow {
+        private static final ThreadLocal<CsvParser> PARSERS = ThreadLocal.withInitial(CsvParser::new);
 
-    /**
-     * Adds a new client and creates their account, storing information persistently.
-     * @param client Client information.
-     * @param isCheckingAccount True if the account is a checking account.
-     */
-    public void addClient(Client client, boolean isCheckingAccount) {
-        long accountNumber = generateUniqueAccountNumber();
-        client.setAccountNumber(accountNumber);
-        clients.add(client);
+        final Client client;    // Client details; account number 0 until one is allocated
+        final boolean checking; // True for a checking account, false for a savings account
+        final long balance;     // Opening balance in cents
+        boolean allocated;      // True if the account number was allocated rather than given in the file
 
-        BankAccount account = isCheckingAccount
-                ? new CheckingAccount(client.getAccountNumber(), client.getFullName(), 200, 100)
-                : new SavingsAccount(client.getAccountNumber(), client.getFullName(), 1.5, 50);
-        accounts.add(account);
+        private ImportRow(Client client, boolean checking, long balance) {
+            this.client = client;
+            this.checking = checking;
+            this.balance = balance;
+        }
+
+        /**
+         * Parses a row, returning null if it is malformed.
+         */
+        static ImportRow parse(String line) {
+            CsvParser parser = PARSERS.get();
+            int fields = parser.parse(line);
+            try {
+                if (fields == 5) {
+                    return new ImportRow(toClient(parser), true, 0);
+                }
+                if (fields != 7) {
+                    return null;
+                }
+                boolean checking;
+                if (parser.equalsIgnoreCase(5, "Checking")) {
+                    checking = true;
+                } else if (parser.equalsIgnoreCase(5, "Savings")) {
+                    checking = false;
+                } else {
+                    return null;
+                }
+                long balance = parser.getMoney(6);
+                if (balance < 0) {
+                    return null;
+                }
+                return new ImportRow(toClient(parser), checking, balance);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
 
-        ioHandling.writeClientToList(client);
-        ioHandling.writeClientData(client, account.getBalance());
+        private static Client toClient(CsvParser parser) {
+            long accountNumber = parser.isEmpty(0) ? 0 : parser.getLong(0);
+            return new Client(accountNumber, parser.getString(1), parser.getString(2), parser.getString(3), parser.getString(4));
+        }
     }
 
     /**
@@ -81,13 +1089,19 @@ public class BankManager {
      * @return True if successful, false otherwise.
      */
     public boolean removeClient(long accountNumber) {
-        Optional<Client> clientOptional = clients.stream()
-                .filter(client -> client.getAccountNumber() == accountNumber)
-                .findFirst();
+        AccountEntry entry;
+        accountLocks.lock(accountNumber);
+        try {
+            entry = unregister(accountNumber);
+            if (entry != null) {
+                journal.appendClientRemoved(accountNumber);
+            }
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
 
-        if (clientOptional.isPresent()) {
-            clients.remove(clientOptional.get());
-            accounts.removeIf(account -> account.getAccountNumber() == accountNumber);
+        if (entry != null) {
+            commitJournal();
             ioHandling.removeClientData(accountNumber);
             return true;
         }
@@ -104,90 +1118,308 @@ public class BankManager {
      * @return True if the update was successful, false otherwise.
      */
     public boolean updateClient(long accountNumber, String firstName, String lastName, String email, String phone) {
-        Optional<Client> clientOptional = clients.stream()
-                .filter(client -> client.getAccountNumber() == accountNumber)
-                .findFirst();
-
-        if (clientOptional.isPresent()) {
-            Client client = clientOptional.get();
-            client.setFirstName(firstName);
-            client.setLastName(lastName);
-            client.setEmail(email);
-            client.setPhone(phone);
-            ioHandling.writeClientData(client, findAccountByNumber(accountNumber).get().getBalance());
-            return true;
+        AccountEntry entry = accountIndex.get(accountNumber);
+        if (entry == null) {
+            return false;
         }
-        return false;
+
+        accountLocks.lock(accountNumber);
+        try {
+            if (!isRegistered(entry)) {
+                return false;
+            }
+            changeClientDetails(entry.client, firstName, lastName, email, phone);
+            journal.appendClientUpdated(entry.client);
+            markDirty(entry);
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
+        commitJournal();
+        return true;
     }
 
     /**
      * Transfers funds between two accounts.
+     * Both accounts are locked for the duration of the transfer, in an order that cannot deadlock.
      * @param fromAccountNumber Source account number.
      * @param toAccountNumber Destination account number.
-     * @param amount Amount to transfer.
+     * @param amount Amount to transfer, in cents.
      * @return True if the transfer was successful, false otherwise.
      */
-    public boolean transferFunds(long fromAccountNumber, long toAccountNumber, double amount) {
-        Optional<BankAccount> fromAccount = findAccountByNumber(fromAccountNumber);
-        Optional<BankAccount> toAccount = findAccountByNumber(toAccountNumber);
+    public boolean transferFunds(long fromAccountNumber, long toAccountNumber, long amount) {
+        return applyTransfer(null, fromAccountNumber, toAccountNumber, amount).isSuccess();
+    }
 
-        if (fromAccount.isPresent() && toAccount.isPresent()) {
-            try {
-                if (fromAccount.get().withdraw(amount)) {
-                    toAccount.get().deposit(amount);
-                    ioHandling.writeClientData(findClientByAccountNumber(fromAccountNumber).get(), fromAccount.get().getBalance());
-                    ioHandling.writeClientData(findClientByAccountNumber(toAccountNumber).get(), toAccount.get().getBalance());
-                    return true;
-                }
-            } catch (Exception e) {
-                System.err.println(e.getMessage());
+    /**
+     * Transfers funds between two accounts, telling why the transfer was refused.
+     * @param fromAccountNumber Source account number.
+     * @param toAccountNumber Destination account number.
+     * @param amount Amount to transfer, in cents.
+     * @return {@link TransactionResult#SUCCESS}, or the reason the transfer was refused.
+     */
+    public TransactionResult tryTransferFunds(long fromAccountNumber, long toAccountNumber, long amount) {
+        return applyTransfer(null, fromAccountNumber, toAccountNumber, amount);
+    }
+
+    /**
+     * Transfers funds between two accounts at most once per idempotency key, as described for
+     * {@link #deposit(String, long, long)}.
+     * @param idempotencyKey Key identifying the request across retries, or null to always transfer.
+     * @param fromAccountNumber Source account number.
+     * @param toAccountNumber Destination account number.
+     * @param amount Amount to transfer, in cents.
+     * @return The outcome of the first request with the key.
+     * @throws IllegalArgumentException if the key is invalid or was used for a different request.
+     */
+    public TransactionResult transferFunds(String idempotencyKey, long fromAccountNumber, long toAccountNumber, long amount) {
+        return executeOnce(idempotencyKey, IdempotencyCache.fingerprint(TransactionCommand.Type.TRANSFER,
+                fromAccountNumber, toAccountNumber, amount),
+                request -> applyTransfer(request, fromAccountNumber, toAccountNumber, amount));
+    }
+
+    private TransactionResult applyTransfer(IdempotencyCache.Request request, long fromAccountNumber, long toAccountNumber,
+                                            long amount) {
+        BankMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        AccountEntry from = accountIndex.get(fromAccountNumber);
+        AccountEntry to = accountIndex.get(toAccountNumber);
+        if (from == null || to == null) {
+            return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.ACCOUNT_NOT_FOUND);
+        }
+
+        accountLocks.lockPair(fromAccountNumber, toAccountNumber);
+        try {
+            if (!isRegistered(from) || !isRegistered(to)) {
+                return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.ACCOUNT_NOT_FOUND);
+            }
+            BankAccount source = account(from);
+            BankAccount target = account(to);
+            long previousBalance = source.getBalance();
+            TransactionResult debited = source.sendTransfer(amount, toAccountNumber);
+            if (!debited.isSuccess()) {
+                return reject(metrics, BankMetrics.Operation.TRANSFER, debited);
             }
+            if (!target.receiveTransfer(amount, fromAccountNumber)) {
+                // The destination balance would overflow; undo the withdrawal.
+                source.restoreBalance(previousBalance);
+                return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.BALANCE_OVERFLOW);
+            }
+            journalBalances(request, from, to);
+        } finally {
+            accountLocks.unlockPair(fromAccountNumber, toAccountNumber);
         }
-        return false;
+        commitJournal(metrics, BankMetrics.Operation.TRANSFER, start);
+        return TransactionResult.SUCCESS;
     }
 
     /**
      * Retrieves the balance of a specific account.
      * @param accountNumber Account number to check balance.
-     * @return Balance of the account, or 0.0 if account does not exist.
+     * @return Balance of the account in cents, or 0 if account does not exist.
+     */
+    public long getAccountBalance(long accountNumber) {
+        AccountEntry entry = accountIndex.get(accountNumber);
+        if (entry == null) {
+            return 0;
+        }
+        BankAccount account = entry.account;
+        if (account != null) {
+            entry.referenced = true;
+            return account.getBalance();
+        }
+        accountLocks.lock(accountNumber);
+        try {
+            if (!isRegistered(entry)) {
+                return 0;
+            }
+            // Off-heap, the balance is read from its column without creating the account
+            return entry.account == null && entry.row >= 0
+                    ? accountStore.getBalance(entry.row)
+                    : account(entry).getBalance();
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
+    }
+
+    /**
+     * Returns an account's statement: its transactions within a time range, oldest first.
+     * Entries are read from the account's ledger in the transaction archive, in O(log n + k) for an account with
+     * n archived transactions of which k are returned, without scanning the rest of its history.
+     * @param accountNumber Account whose statement is wanted.
+     * @param fromTimestamp Start of the range, inclusive, in milliseconds since the epoch.
+     * @param toTimestamp End of the range, inclusive, in milliseconds since the epoch.
+     * @return The transactions in the range, empty if there are none or the account does not exist.
+     */
+    public List<LedgerEntry> getStatement(long accountNumber, long fromTimestamp, long toTimestamp) {
+        return archive.statement(accountNumber, fromTimestamp, toTimestamp);
+    }
+
+    /**
+     * Returns an account's most recent transactions, oldest first.
+     * @param accountNumber Account whose transactions are wanted.
+     * @param limit Maximum number of transactions.
+     * @return Up to limit transactions, the newest last.
      */
-    public double getAccountBalance(long accountNumber) {
-        Optional<BankAccount> account = findAccountByNumber(accountNumber);
-        return account.map(BankAccount::getBalance).orElse(0.0);
+    public List<LedgerEntry> getRecentTransactions(long accountNumber, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+        return archive.recent(accountNumber, limit);
     }
 
     /**
      * Lists all clients currently managed by the bank.
+     * Copies and sorts every client; use {@link #listClients(long, int)} or {@link #streamClients()} to go
+     * through a large bank without materializing it.
      * @return A list of all clients.
      */
     public List<Client> listAllClients() {
-        return new ArrayList<>(clients);
+        List<Client> allClients = new ArrayList<>(accountIndex.size());
+        accountIndex.forEachValue(entry -> allClients.add(entry.client));
+        allClients.sort(Comparator.comparingLong(Client::getAccountNumber));
+        return allClients;
+    }
+
+    /**
+     * Returns one page of clients in account number order, starting after a cursor.
+     * The account numbers are walked in order from the cursor, so a page costs time and memory in proportion
+     * to the page size, not to the number of clients.
+     * @param afterAccountNumber Cursor: {@link #FIRST_PAGE} for the first page, then {@link ClientPage#getNextCursor()}
+     * of the previous page. Only clients with a larger account number are returned.
+     * @param limit Maximum number of clients on the page.
+     * @return The page, telling whether more clients follow.
+     */
+    public ClientPage listClients(long afterAccountNumber, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        List<Client> page = new ArrayList<>(Math.min(limit, 1024));
+        for (long accountNumber : sortedAccountNumbers.tailSet(afterAccountNumber, false)) {
+            AccountEntry entry = accountIndex.get(accountNumber);
+            if (entry == null) {
+                continue; // Removed since the number was read
+            }
+            if (page.size() == limit) {
+                return new ClientPage(page, true);
+            }
+            page.add(entry.client);
+        }
+        return new ClientPage(page, false);
+    }
+
+    /**
+     * Returns the first page of clients in account number order.
+     * @param limit Maximum number of clients on the page.
+     * @return The page, telling whether more clients follow.
+     */
+    public ClientPage listClients(int limit) {
+        return listClients(FIRST_PAGE, limit);
+    }
+
+    /**
+     * Returns a lazy stream over all clients, in no particular order. Nothing is copied up front; the account
+     * index is read one segment at a time as the stream is consumed, and parallel streams split along segments.
+     * Clients added or removed while the stream is consumed may or may not be seen.
+     * @return A stream of the clients.
+     */
+    public Stream<Client> streamClients() {
+        return StreamSupport.stream(accountIndex.valueSpliterator(), false).map(entry -> entry.client);
+    }
+
+    /**
+     * Visits every client together with their account, in no particular order, without sorting. Only one index
+     * segment is copied at a time, and the callback holds no index lock; see {@link #forEachAccount(int, int, BiConsumer)}.
+     * Clients added or removed during the visit may or may not be seen.
+     * @param action Callback receiving each client and account.
+     */
+    public void forEachAccount(BiConsumer<Client, BankAccount> action) {
+        forEachAccount(0, 1, action);
+    }
+
+    /**
+     * Returns the largest useful shard count for {@link #forEachAccount(int, int, BiConsumer)}.
+     * @return The number of independent segments of the account index.
+     */
+    public int getAccountShardCount() {
+        return accountIndex.getSegmentCount();
+    }
+
+    /**
+     * Visits the clients of one shard of the account index. Visiting every shard from 0 to shardCount - 1,
+     * possibly from different threads, visits every client exactly once.
+     * When loading lazily, dormant accounts are read from their data files without being cached.
+     * The clients of each index segment are copied out before the callback runs, so it holds no index lock:
+     * it may write files or add and remove clients without stalling or deadlocking other operations.
+     * @param shard Shard to visit, from 0 to shardCount - 1.
+     * @param shardCount Number of shards the index is split into.
+     * @param action Callback receiving each client and account.
+     */
+    public void forEachAccount(int shard, int shardCount, BiConsumer<Client, BankAccount> action) {
+        if (shardCount <= 0 || shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shard + " of " + shardCount);
+        }
+        List<AccountEntry> entries = new ArrayList<>();
+        for (int segment = shard; segment < accountIndex.getSegmentCount(); segment += shardCount) {
+            entries.clear();
+            accountIndex.forEachValueInSegment(segment, entries::add);
+            for (AccountEntry entry : entries) {
+                // Reading a dormant account takes its lock, which must not be taken inside the index's lock
+                action.accept(entry.client, accountCache == null ? entry.account : peekAccount(entry));
+            }
+        }
     }
 
     /**
      * Finds clients by their name.
-     * @param name Name to search for.
-     * @return A list of clients whose names match the given name.
+     * Looks the name up in the case-insensitive name index instead of scanning all clients.
+     * @param name Full name to search for, ignoring case.
+     * @return A list of clients whose names match the given name, ordered by account number.
      */
     public List<Client> findClientByName(String name) {
-        List<Client> foundClients = new ArrayList<>();
-        for (Client client : clients) {
-            if (client.getFullName().equalsIgnoreCase(name)) {
-                foundClients.add(client);
+        long[] accountNumbers = nameIndex.find(name);
+        List<Client> foundClients = new ArrayList<>(accountNumbers.length);
+        for (long accountNumber : accountNumbers) {
+            AccountEntry entry = accountIndex.get(accountNumber);
+            if (entry != null) {
+                foundClients.add(entry.client);
             }
         }
         return foundClients;
     }
 
+    /**
+     * Finds clients whose full name starts with the given prefix, ignoring case.
+     * @param prefix Start of the full name; an empty prefix matches every client.
+     * @param limit Maximum number of clients to return.
+     * @return The matching clients, ordered by name and then by account number.
+     */
+    public List<Client> findClientsByNamePrefix(String prefix, int limit) {
+        List<Client> foundClients = new ArrayList<>(Math.min(limit, 64));
+        nameIndex.forEachWithPrefix(prefix, limit, accountNumber -> {
+            AccountEntry entry = accountIndex.get(accountNumber);
+            if (entry != null) {
+                foundClients.add(entry.client);
+            }
+        });
+        return foundClients;
+    }
+
     /**
      * Finds a bank account by account number.
      * @param accountNumber The account number to search for.
      * @return An Optional containing the found BankAccount or an empty Optional if not found.
      */
     public Optional<BankAccount> findAccountByNumber(long accountNumber) {
-        return accounts.stream()
-                .filter(account -> account.getAccountNumber() == accountNumber)
-                .findFirst();
+        AccountEntry entry = accountIndex.get(accountNumber);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        accountLocks.lock(accountNumber);
+        try {
+            return isRegistered(entry) ? Optional.of(account(entry)) : Optional.empty();
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
     }
 
     /**
@@ -196,55 +1428,631 @@ public class BankManager {
      * @return An Optional containing the found Client or an empty Optional if not found.
      */
     public Optional<Client> findClientByAccountNumber(long accountNumber) {
-        return clients.stream()
-                .filter(client -> client.getAccountNumber() == accountNumber)
-                .findFirst();
+        AccountEntry entry = accountIndex.get(accountNumber);
+        return entry == null ? Optional.empty() : Optional.of(entry.client);
     }
 
     /**
      * Deposits a specified amount into a specified account.
      * @param accountNumber The account number to deposit into.
-     * @param amount The amount to deposit.
+     * @param amount The amount to deposit, in cents.
      * @return True if the deposit was successful, false otherwise.
      */
-    public boolean deposit(long accountNumber, double amount) {
-        Optional<BankAccount> account = findAccountByNumber(accountNumber);
-        if (account.isPresent()) {
-            boolean success = account.get().deposit(amount);
-            if (success) {
-                ioHandling.writeClientData(findClientByAccountNumber(accountNumber).get(), account.get().getBalance());
-                return true;
+    public boolean deposit(long accountNumber, long amount) {
+        return applyDeposit(null, accountNumber, amount).isSuccess();
+    }
+
+    /**
+     * Deposits a specified amount into a specified account at most once per idempotency key.
+     * The outcome is journaled with the new balance and kept in memory for a while, see
+     * {@link #setIdempotencyLimits(int, long)}; a retry with the same key then returns that outcome without
+     * executing again or touching disk, and a retry arriving while the first request is still executing waits for it.
+     * Outcomes survive restarts. Rejections are kept as well, so a retry of a refused request stays refused
+     * even if, for example, funds have arrived since.
+     * @param idempotencyKey Key identifying the request across retries, or null to always deposit.
+     * @param accountNumber The account number to deposit into.
+     * @param amount The amount to deposit, in cents.
+     * @return The outcome of the first request with the key.
+     * @throws IllegalArgumentException if the key is invalid or was used for a different request.
+     */
+    public TransactionResult deposit(String idempotencyKey, long accountNumber, long amount) {
+        return executeOnce(idempotencyKey, IdempotencyCache.fingerprint(TransactionCommand.Type.DEPOSIT,
+                accountNumber, 0, amount), request -> applyDeposit(request, accountNumber, amount));
+    }
+
+    private TransactionResult applyDeposit(IdempotencyCache.Request request, long accountNumber, long amount) {
+        BankMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        AccountEntry entry = accountIndex.get(accountNumber);
+        if (entry == null) {
+            return reject(metrics, BankMetrics.Operation.DEPOSIT, TransactionResult.ACCOUNT_NOT_FOUND);
+        }
+
+        accountLocks.lock(accountNumber);
+        try {
+            if (!isRegistered(entry)) {
+                return reject(metrics, BankMetrics.Operation.DEPOSIT, TransactionResult.ACCOUNT_NOT_FOUND);
             }
+            if (!account(entry).deposit(amount)) {
+                return reject(metrics, BankMetrics.Operation.DEPOSIT,
+                        amount <= 0 ? TransactionResult.INVALID_AMOUNT : TransactionResult.BALANCE_OVERFLOW);
+            }
+            journalBalances(request, entry, null);
+        } finally {
+            accountLocks.unlock(accountNumber);
         }
-        return false;
+        commitJournal(metrics, BankMetrics.Operation.DEPOSIT, start);
+        return TransactionResult.SUCCESS;
     }
 
     /**
      * Withdraws a specified amount from a specified account.
      * @param accountNumber The account number to withdraw from.
-     * @param amount The amount to withdraw.
+     * @param amount The amount to withdraw, in cents.
      * @return True if the withdrawal was successful, false otherwise.
      */
-    public boolean withdraw(long accountNumber, double amount) {
-        Optional<BankAccount> account = findAccountByNumber(accountNumber);
-        if (account.isPresent()) {
+    public boolean withdraw(long accountNumber, long amount) {
+        return applyWithdrawal(null, accountNumber, amount).isSuccess();
+    }
+
+    /**
+     * Withdraws a specified amount from a specified account, telling why the withdrawal was refused.
+     * A refusal is only counted, see {@link #getRejectionCounts()}; nothing is thrown or printed.
+     * @param accountNumber The account number to withdraw from.
+     * @param amount The amount to withdraw, in cents.
+     * @return {@link TransactionResult#SUCCESS}, or the reason the withdrawal was refused.
+     */
+    public TransactionResult tryWithdraw(long accountNumber, long amount) {
+        return applyWithdrawal(null, accountNumber, amount);
+    }
+
+    /**
+     * Withdraws a specified amount from a specified account at most once per idempotency key, as described for
+     * {@link #deposit(String, long, long)}.
+     * @param idempotencyKey Key identifying the request across retries, or null to always withdraw.
+     * @param accountNumber The account number to withdraw from.
+     * @param amount The amount to withdraw, in cents.
+     * @return The outcome of the first request with the key.
+     * @throws IllegalArgumentException if the key is invalid or was used for a different request.
+     */
+    public TransactionResult withdraw(String idempotencyKey, long accountNumber, long amount) {
+        return executeOnce(idempotencyKey, IdempotencyCache.fingerprint(TransactionCommand.Type.WITHDRAW,
+                accountNumber, 0, amount), request -> applyWithdrawal(request, accountNumber, amount));
+    }
+
+    private TransactionResult applyWithdrawal(IdempotencyCache.Request request, long accountNumber, long amount) {
+        BankMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        AccountEntry entry = accountIndex.get(accountNumber);
+        if (entry == null) {
+            return reject(metrics, BankMetrics.Operation.WITHDRAW, TransactionResult.ACCOUNT_NOT_FOUND);
+        }
+
+        accountLocks.lock(accountNumber);
+        try {
+            if (!isRegistered(entry)) {
+                return reject(metrics, BankMetrics.Operation.WITHDRAW, TransactionResult.ACCOUNT_NOT_FOUND);
+            }
+            TransactionResult result = account(entry).tryWithdraw(amount);
+            if (!result.isSuccess()) {
+                return reject(metrics, BankMetrics.Operation.WITHDRAW, result);
+            }
+            journalBalances(request, entry, null);
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
+        commitJournal(metrics, BankMetrics.Operation.WITHDRAW, start);
+        return TransactionResult.SUCCESS;
+    }
+
+    /**
+     * Takes out the amount of a transfer whose target account is kept by another bank, at most once per
+     * idempotency key. The amount is recorded in the ledger as an outgoing transfer to the target.
+     * @param idempotencyKey Key identifying this leg of the transfer.
+     * @param fromAccountNumber Source account number, kept by this bank.
+     * @param toAccountNumber Target account number, kept elsewhere.
+     * @param amount Amount to transfer, in cents.
+     * @return {@link TransactionResult#SUCCESS}, or the reason the source account refused the amount.
+     */
+    TransactionResult sendTransfer(String idempotencyKey, long fromAccountNumber, long toAccountNumber, long amount) {
+        return executeOnce(idempotencyKey, IdempotencyCache.fingerprint(TransactionCommand.Type.TRANSFER,
+                fromAccountNumber, toAccountNumber, amount),
+                request -> applyTransferLeg(request, fromAccountNumber, toAccountNumber, amount, true));
+    }
+
+    /**
+     * Adds the amount of a transfer whose source account is kept by another bank, at most once per
+     * idempotency key. The amount is recorded in the ledger as an incoming transfer from the source.
+     * @param idempotencyKey Key identifying this leg of the transfer.
+     * @param toAccountNumber Account receiving the amount, kept by this bank.
+     * @param fromAccountNumber Account the amount comes from.
+     * @param amount Amount to transfer, in cents.
+     * @return {@link TransactionResult#SUCCESS}, or the reason the receiving account refused the amount.
+     */
+    TransactionResult receiveTransfer(String idempotencyKey, long toAccountNumber, long fromAccountNumber, long amount) {
+        return executeOnce(idempotencyKey, IdempotencyCache.fingerprint(TransactionCommand.Type.TRANSFER,
+                toAccountNumber, fromAccountNumber, amount),
+                request -> applyTransferLeg(request, toAccountNumber, fromAccountNumber, amount, false));
+    }
+
+    /**
+     * Checks whether an account could receive an amount now, without reserving anything.
+     * Used to prepare a transfer whose source account is kept by another bank.
+     * @param accountNumber Account to receive the amount.
+     * @param amount Amount to receive, in cents.
+     * @return {@link TransactionResult#SUCCESS}, or the reason the account would refuse the amount.
+     */
+    TransactionResult checkReceive(long accountNumber, long amount) {
+        BankMetrics metrics = this.metrics;
+        AccountEntry entry = accountIndex.get(accountNumber);
+        if (entry == null) {
+            return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.ACCOUNT_NOT_FOUND);
+        }
+        if (amount <= 0) {
+            return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.INVALID_AMOUNT);
+        }
+        if (getAccountBalance(accountNumber) > Long.MAX_VALUE - amount) {
+            return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.BALANCE_OVERFLOW);
+        }
+        return TransactionResult.SUCCESS;
+    }
+
+    /**
+     * Returns the outcome recorded for an idempotency key, even if the key has expired,
+     * as long as it was journaled and is still held in memory.
+     * @param idempotencyKey The key.
+     * @return The outcome, or null if none is known.
+     */
+    TransactionResult getRecordedOutcome(String idempotencyKey) {
+        return idempotencyCache.getOutcome(idempotencyKey);
+    }
+
+    /**
+     * Forces every journaled change to disk regardless of the group commit size, e.g. before another bank
+     * records a decision that depends on them.
+     * @throws java.io.UncheckedIOException if the journal cannot be forced, or failed before.
+     */
+    void syncJournal() {
+        journal.sync();
+    }
+
+    private TransactionResult applyTransferLeg(IdempotencyCache.Request request, long accountNumber,
+                                               long counterparty, long amount, boolean outgoing) {
+        BankMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        AccountEntry entry = accountIndex.get(accountNumber);
+        if (entry == null) {
+            return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.ACCOUNT_NOT_FOUND);
+        }
+
+        accountLocks.lock(accountNumber);
+        try {
+            if (!isRegistered(entry)) {
+                return reject(metrics, BankMetrics.Operation.TRANSFER, TransactionResult.ACCOUNT_NOT_FOUND);
+            }
+            TransactionResult result;
+            if (outgoing) {
+                result = account(entry).sendTransfer(amount, counterparty);
+            } else if (account(entry).receiveTransfer(amount, counterparty)) {
+                result = TransactionResult.SUCCESS;
+            } else {
+                result = amount <= 0 ? TransactionResult.INVALID_AMOUNT : TransactionResult.BALANCE_OVERFLOW;
+            }
+            if (!result.isSuccess()) {
+                return reject(metrics, BankMetrics.Operation.TRANSFER, result);
+            }
+            journalBalances(request, entry, null);
+        } finally {
+            accountLocks.unlock(accountNumber);
+        }
+        commitJournal(metrics, BankMetrics.Operation.TRANSFER, start);
+        return TransactionResult.SUCCESS;
+    }
+
+    /**
+     * Executes a money movement unless a request with the same idempotency key was executed or is executing,
+     * in which case its outcome is returned. Rejections are journaled here; the outcome of a successful
+     * movement is journaled by the movement itself, in the record holding its balances.
+     * @param idempotencyKey The key, or null to execute without one.
+     * @param fingerprint Hash of what the request does.
+     * @param movement Executes the movement for a registered request.
+     * @return The outcome.
+     */
+    private TransactionResult executeOnce(String idempotencyKey, long fingerprint,
+                                          Function<IdempotencyCache.Request, TransactionResult> movement) {
+        if (idempotencyKey == null) {
+            return movement.apply(null);
+        }
+        IdempotencyCache.Request request = new IdempotencyCache.Request(idempotencyKey, fingerprint,
+                System.currentTimeMillis());
+        IdempotencyCache.Request earlier = idempotencyCache.register(request);
+        if (earlier != null) {
+            if (earlier.getFingerprint() != fingerprint) {
+                throw new IllegalArgumentException("Idempotency key was used for a different request: " + idempotencyKey);
+            }
+            return earlier.await();
+        }
+        TransactionResult result;
+        try {
+            result = movement.apply(request);
+            if (!result.isSuccess()) {
+                journal.appendRequestCompleted(idempotencyKey, fingerprint, result, request.getTimestamp(), null, null, 0);
+                commitJournal();
+            }
+        } catch (RuntimeException e) {
+            // Also when the outcome could not be journaled, so waiting retries fail instead of hanging
+            idempotencyCache.abandon(request, e);
+            throw e;
+        }
+        idempotencyCache.complete(request, result);
+        return result;
+    }
+
+    /**
+     * Commits the journal records of a successful operation, recording its apply and persistence times
+     * when metrics are enabled.
+     * @param metrics The metrics read at the start of the operation, or null.
+     * @param operation The operation.
+     * @param start The value of {@link System#nanoTime()} at the start of the operation.
+     */
+    private void commitJournal(BankMetrics metrics, BankMetrics.Operation operation, long start) {
+        if (metrics == null) {
+            commitJournal();
+            return;
+        }
+        long applied = System.nanoTime();
+        commitJournal();
+        metrics.recordSuccess(operation, applied - start, System.nanoTime() - applied);
+    }
+
+    /**
+     * Counts a rejected operation by reason, and by operation too when metrics are enabled.
+     * @return The reason, the result of the rejected operation.
+     */
+    private TransactionResult reject(BankMetrics metrics, BankMetrics.Operation operation, TransactionResult reason) {
+        rejectionCounts[reason.ordinal()].increment();
+        if (metrics != null) {
+            metrics.recordRejection(operation, reason);
+        }
+        return reason;
+    }
+
+    /**
+     * Returns how many deposits, withdrawals, transfers and batch commands were refused since the bank was opened,
+     * by reason. Counted whether or not metrics are enabled.
+     * @return The counts of the reasons that occurred.
+     */
+    public Map<TransactionResult, Long> getRejectionCounts() {
+        Map<TransactionResult, Long> counts = new EnumMap<>(TransactionResult.class);
+        for (TransactionResult result : TransactionResult.values()) {
+            long count = rejectionCounts[result.ordinal()].sum();
+            if (count > 0) {
+                counts.put(result, count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Validates and applies a batch of deposits, withdrawals and transfers.
+     * All commands are checked first; the valid ones are then applied in order while holding the locks
+     * of every account involved, and the resulting balances are forced to the journal in a single flush.
+     * @param commands The commands to apply, in order.
+     * @return One result per command, at the same index.
+     */
+    public TransactionResult[] executeBatch(List<TransactionCommand> commands) {
+        BankMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        TransactionResult[] results = new TransactionResult[commands.size()];
+        applyBatch(commands, results, 0);
+        syncBatch(metrics, start, results, results.length);
+        return results;
+    }
+
+    /**
+     * Validates and applies a stream of deposits, withdrawals and transfers, such as the lines of a settlement file.
+     * Commands are applied in order, in chunks that each take the locks of their accounts once,
+     * and the resulting balances are forced to the journal in a single flush at the end.
+     * @param commands The commands to apply, in order.
+     * @return One result per command, in stream order.
+     */
+    public TransactionResult[] executeBatch(Stream<TransactionCommand> commands) {
+        BankMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        TransactionResult[] results = new TransactionResult[0];
+        int count = 0;
+        List<TransactionCommand> chunk = new ArrayList<>();
+        Iterator<TransactionCommand> iterator = commands.iterator();
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == BATCH_CHUNK_SIZE || !iterator.hasNext()) {
+                if (results.length < count + chunk.size()) {
+                    results = Arrays.copyOf(results, Math.max(count + chunk.size(), results.length * 2));
+                }
+                applyBatch(chunk, results, count);
+                count += chunk.size();
+                chunk.clear();
+            }
+        }
+        syncBatch(metrics, start, results, count);
+        return results.length == count ? results : Arrays.copyOf(results, count);
+    }
+
+    /**
+     * Forces the journal records of a batch to disk, recording the batch's times and rejected commands
+     * when metrics are enabled. Apply time includes reading and validating the commands.
+     */
+    private void syncBatch(BankMetrics metrics, long start, TransactionResult[] results, int count) {
+        long applied = metrics != null ? System.nanoTime() : 0;
+        journal.sync();
+        snapshotIfDue();
+        for (int i = 0; i < count; i++) {
+            if (!results[i].isSuccess()) {
+                rejectionCounts[results[i].ordinal()].increment();
+                if (metrics != null) {
+                    metrics.recordBatchRejection(results[i]);
+                }
+            }
+        }
+        if (metrics != null) {
+            metrics.recordSuccess(BankMetrics.Operation.BATCH, applied - start, System.nanoTime() - applied);
+        }
+    }
+
+    /**
+     * Applies one locking pass of a batch. Journal records are appended but not committed.
+     * @param commands The commands to apply, in order.
+     * @param results Array receiving the result of each command.
+     * @param offset Index in the results array of the first command.
+     */
+    private void applyBatch(List<TransactionCommand> commands, TransactionResult[] results, int offset) {
+        int size = commands.size();
+        AccountEntry[] sources = new AccountEntry[size];
+        AccountEntry[] targets = new AccountEntry[size];
+        long[] involvedAccounts = new long[size * 2];
+        int involved = 0;
+        for (int i = 0; i < size; i++) {
+            TransactionCommand command = commands.get(i);
+            if (command.getAmount() <= 0) {
+                results[offset + i] = TransactionResult.INVALID_AMOUNT;
+                continue;
+            }
+            AccountEntry source = accountIndex.get(command.getAccountNumber());
+            AccountEntry target = command.getType() == TransactionCommand.Type.TRANSFER
+                    ? accountIndex.get(command.getTargetAccountNumber())
+                    : null;
+            if (source == null || (command.getType() == TransactionCommand.Type.TRANSFER && target == null)) {
+                results[offset + i] = TransactionResult.ACCOUNT_NOT_FOUND;
+                continue;
+            }
+            sources[i] = source;
+            targets[i] = target;
+            involvedAccounts[involved++] = command.getAccountNumber();
+            if (target != null) {
+                involvedAccounts[involved++] = command.getTargetAccountNumber();
+            }
+        }
+
+        int[] stripes = accountLocks.stripesOf(involvedAccounts, involved);
+        Set<AccountEntry> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        accountLocks.lockStripes(stripes);
+        try {
+            for (int i = 0; i < size; i++) {
+                if (sources[i] == null) {
+                    continue;
+                }
+                TransactionResult result = applyCommand(commands.get(i), sources[i], targets[i]);
+                results[offset + i] = result;
+                if (result.isSuccess()) {
+                    changed.add(sources[i]);
+                    if (targets[i] != null) {
+                        changed.add(targets[i]);
+                    }
+                }
+            }
+            // Balances are after-images, so one record per touched account covers the whole pass.
+            for (AccountEntry entry : changed) {
+                journalBalance(entry);
+            }
+        } finally {
+            accountLocks.unlockStripes(stripes);
+        }
+    }
+
+    /**
+     * Applies a validated command. Must be called while holding the locks of the accounts involved.
+     */
+    private TransactionResult applyCommand(TransactionCommand command, AccountEntry source, AccountEntry target) {
+        if (!isRegistered(source) || (target != null && !isRegistered(target))) {
+            return TransactionResult.ACCOUNT_NOT_FOUND;
+        }
+        long amount = command.getAmount();
+        switch (command.getType()) {
+            case DEPOSIT:
+                return account(source).deposit(amount) ? TransactionResult.SUCCESS : TransactionResult.BALANCE_OVERFLOW;
+            case WITHDRAW:
+                return account(source).tryWithdraw(amount);
+            default:
+                long previousBalance = account(source).getBalance();
+                TransactionResult debited = account(source).sendTransfer(amount, command.getTargetAccountNumber());
+                if (!debited.isSuccess()) {
+                    return debited;
+                }
+                if (!account(target).receiveTransfer(amount, command.getAccountNumber())) {
+                    account(source).restoreBalance(previousBalance);
+                    return TransactionResult.BALANCE_OVERFLOW;
+                }
+                return TransactionResult.SUCCESS;
+        }
+    }
+
+    /**
+     * Closes a month: adds a month of interest to every savings account and charges a month of the annual fees
+     * to every account, as described by {@link BankAccount#chargeFee(int)}.
+     * Accounts are processed in parallel, each thread holding one lock stripe at a time, so other operations only
+     * wait while the stripe of their account is being processed. The new balances of a stripe are journaled together,
+     * followed by a commit record; background snapshots are held back until the run ends with a single snapshot
+     * of all balances. If a run is interrupted, e.g. by a crash, running it again for the same month processes only
+     * the stripes that were not committed, so no account gets interest or fees twice.
+     * Accounts opened while the month is being closed may or may not be processed.
+     * @param period The month to close.
+     * @return The number of accounts processed and the amounts moved.
+     * @throws IllegalStateException if closing an earlier month was interrupted and has not been completed.
+     */
+    public MonthEndResult runMonthEnd(YearMonth period) {
+        maintenanceLock.lock();
+        try {
+            long periodNumber = MonthEndState.periodOf(period);
+            if (periodNumber <= monthEndState.getLastClosed()) {
+                return new MonthEndResult(period, true, 0, 0, 0, 0);
+            }
+            long pendingPeriod = monthEndState.getPendingPeriod();
+            if (pendingPeriod != MonthEndState.NONE && pendingPeriod != periodNumber) {
+                throw new IllegalStateException("Closing " + MonthEndState.monthOf(pendingPeriod)
+                        + " was interrupted and must be completed first.");
+            }
+            BitSet committed = monthEndState.getPendingStripes();
+            Set<Integer> done = ConcurrentHashMap.newKeySet();
+            holdSnapshots();
             try {
-                boolean success = account.get().withdraw(amount);
-                if (success) {
-                    ioHandling.writeClientData(findClientByAccountNumber(accountNumber).get(), account.get().getBalance());
-                    return true;
+                // Commit records written from here on stay in the journal until the month is closed or the run fails
+                if (!monthEndState.savePending(periodNumber, committed)) {
+                    throw new IllegalStateException("Cannot record the month-end run for " + period + ".");
+                }
+                int stripeCount = accountLocks.getStripeCount();
+                int[] stripeStarts = new int[stripeCount + 1];
+                AccountEntry[] entries = groupByStripe(stripeStarts);
+                LongAdder accounts = new LongAdder();
+                LongAdder interestPaid = new LongAdder();
+                LongAdder feesCharged = new LongAdder();
+                IntStream.range(0, stripeCount).parallel()
+                        .filter(stripe -> !committed.get(stripe))
+                        .forEach(stripe -> {
+                            long[] totals = closeStripe(periodNumber, stripe, entries,
+                                    stripeStarts[stripe], stripeStarts[stripe + 1]);
+                            done.add(stripe);
+                            accounts.add(totals[0]);
+                            interestPaid.add(totals[1]);
+                            feesCharged.add(totals[2]);
+                        });
+                journal.sync();
+                if (monthEndState.markClosed(periodNumber)) {
+                    // The commit records are no longer needed to resume, so the journal may be compacted past them
+                    writeSnapshot();
                 }
-            } catch (Exception e) {
-                System.err.println(e.getMessage());
+                return new MonthEndResult(period, false, accounts.sum(), interestPaid.sum(), feesCharged.sum(),
+                        committed.cardinality());
+            } catch (RuntimeException e) {
+                journal.sync();
+                BitSet finished = new BitSet();
+                done.forEach(finished::set);
+                monthEndState.savePending(periodNumber, finished);
+                throw e;
+            } finally {
+                snapshotInProgress.set(false);
             }
+        } finally {
+            maintenanceLock.unlock();
         }
-        return false;
     }
 
     /**
-     * Prints summaries for all accounts.
+     * Collects all entries, ordered by lock stripe, with a counting sort done in parallel per index segment.
+     * @param stripeStarts Array of stripe count + 1 elements receiving the index of each stripe's first entry,
+     *                     followed by the total number of entries.
+     * @return The entries, grouped by stripe.
+     */
+    private AccountEntry[] groupByStripe(int[] stripeStarts) {
+        int segments = accountIndex.getSegmentCount();
+        int stripeCount = stripeStarts.length - 1;
+        AccountEntry[][] segmentEntries = new AccountEntry[segments][];
+        int[][] positions = new int[segments][stripeCount]; // Entries per stripe, then where the next one goes
+        IntStream.range(0, segments).parallel().forEach(segment -> {
+            List<AccountEntry> list = new ArrayList<>();
+            accountIndex.forEachValueInSegment(segment, list::add);
+            segmentEntries[segment] = list.toArray(new AccountEntry[0]);
+            for (AccountEntry entry : segmentEntries[segment]) {
+                positions[segment][accountLocks.stripeOf(entry.client.getAccountNumber())]++;
+            }
+        });
+        int total = 0;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            stripeStarts[stripe] = total;
+            for (int segment = 0; segment < segments; segment++) {
+                int count = positions[segment][stripe];
+                positions[segment][stripe] = total;
+                total += count;
+            }
+        }
+        stripeStarts[stripeCount] = total;
+        AccountEntry[] grouped = new AccountEntry[total];
+        IntStream.range(0, segments).parallel().forEach(segment -> {
+            for (AccountEntry entry : segmentEntries[segment]) {
+                grouped[positions[segment][accountLocks.stripeOf(entry.client.getAccountNumber())]++] = entry;
+            }
+        });
+        return grouped;
+    }
+
+    /**
+     * Applies month-end interest and fees to the accounts of one lock stripe while holding it, then journals
+     * their new balances followed by the stripe's commit record.
+     * @return The number of accounts processed, the interest paid and the fees charged, in cents.
+     */
+    private long[] closeStripe(long period, int stripe, AccountEntry[] entries, int from, int to) {
+        long[] accountNumbers = new long[MONTH_END_RECORD_SIZE];
+        long[] balances = new long[MONTH_END_RECORD_SIZE];
+        long[] totals = new long[3];
+        int count = 0;
+        int[] stripes = {stripe};
+        accountLocks.lockStripes(stripes);
+        try {
+            for (int i = from; i < to; i++) {
+                AccountEntry entry = entries[i];
+                if (!isRegistered(entry)) {
+                    continue;
+                }
+                BankAccount account = account(entry);
+                long interest = account instanceof SavingsAccount
+                        ? ((SavingsAccount) account).addInterest(MONTHS_PER_YEAR)
+                        : 0;
+                long fee = account.chargeFee(MONTHS_PER_YEAR);
+                totals[0]++;
+                totals[1] += interest;
+                totals[2] += fee;
+                if (interest == 0 && fee == 0) {
+                    continue;
+                }
+                accountNumbers[count] = entry.client.getAccountNumber();
+                balances[count++] = account.getBalance();
+                markDirty(entry);
+                if (count == MONTH_END_RECORD_SIZE) {
+                    journal.appendMonthEndBalances(period, stripe, accountNumbers, balances, count);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                journal.appendMonthEndBalances(period, stripe, accountNumbers, balances, count);
+            }
+            journal.appendMonthEndCommitted(period, stripe);
+        } finally {
+            accountLocks.unlockStripes(stripes);
+        }
+        journal.commit();
+        return totals;
+    }
+
+    /**
+     * Prints summaries for all accounts, ordered by account number.
      */
     public void printAccountSummaries() {
-        accounts.forEach(BankAccount::accountSummary);
+        List<AccountEntry> allEntries = new ArrayList<>(accountIndex.size());
+        accountIndex.forEachValue(allEntries::add);
+        List<BankAccount> allAccounts = new ArrayList<>(allEntries.size());
+        for (AccountEntry entry : allEntries) {
+            allAccounts.add(peekAccount(entry));
+        }
+        allAccounts.sort(Comparator.comparingLong(BankAccount::getAccountNumber));
+        allAccounts.forEach(BankAccount::accountSummary);
     }
 }
@@ -0,0 +1,319 @@
+package oop.bank.system.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Operation counters and latency histograms of a {@link BankManager}, enabled with {@link BankManager#enableMetrics()}.
+ * Each operation's time is split into apply time, spent changing balances in memory under the account locks,
+ * and persistence time, spent committing the journal or writing files. Rejected money movements are counted
+ * by operation and reason.
+ * <p>
+ * Recording only increments striped counters and histogram buckets, so it does not serialize the threads being
+ * measured. The metrics can be read in code, from JMX once {@link #registerMBean()} is called, or from a text
+ * report appended to a file at a fixed interval by {@link #startReporting(String, long)}.
+ */
+public class BankMetrics implements BankMetricsMXBean, Closeable {
+    public static final String OBJECT_NAME = "oop.bank.system:type=BankMetrics"; // JMX name of the registered MBean
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * Operations timed by the metrics.
+     */
+    public enum Operation {
+        DEPOSIT,           // BankManager.deposit
+        WITHDRAW,          // BankManager.withdraw
+        TRANSFER,          // BankManager.transferFunds
+        BATCH,             // BankManager.executeBatch, one call per batch
+        CLIENT_DATA_WRITE, // IOHandling.writeClientData
+        CLIENT_LIST_WRITE; // IOHandling.writeClientList, with each snapshot
+
+        private String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final TransactionResult[] RESULTS = TransactionResult.values();
+
+    private final LongAdder[] calls;                  // Calls of each operation, including rejected ones
+    private final LongAdder[][] rejections;           // Rejected calls by operation and reason
+    private final LatencyHistogram[] applyTimes;      // Apply time of successful calls of each operation
+    private final LatencyHistogram[] persistTimes;    // Persistence time of successful calls of each operation
+    private volatile long since;                      // Time the metrics were created or last reset
+    private ScheduledExecutorService reporter;        // Thread appending the periodic report, null when not reporting
+    private ObjectName registeredName;                // Name under which the MBean is registered, null if it is not
+
+    public BankMetrics() {
+        this.calls = new LongAdder[OPERATIONS.length];
+        this.rejections = new LongAdder[OPERATIONS.length][RESULTS.length];
+        this.applyTimes = new LatencyHistogram[OPERATIONS.length];
+        this.persistTimes = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            calls[i] = new LongAdder();
+            for (int j = 0; j < RESULTS.length; j++) {
+                rejections[i][j] = new LongAdder();
+            }
+            applyTimes[i] = new LatencyHistogram();
+            persistTimes[i] = new LatencyHistogram();
+        }
+        this.since = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a successful call.
+     * @param operation The operation.
+     * @param applyNanos Time spent applying the change in memory, in nanoseconds.
+     * @param persistNanos Time spent making the change durable, in nanoseconds.
+     */
+    void recordSuccess(Operation operation, long applyNanos, long persistNanos) {
+        calls[operation.ordinal()].increment();
+        applyTimes[operation.ordinal()].record(applyNanos);
+        persistTimes[operation.ordinal()].record(persistNanos);
+    }
+
+    /**
+     * Records a call that was rejected without changing any balance.
+     * @param operation The operation.
+     * @param reason Why it was rejected.
+     */
+    void recordRejection(Operation operation, TransactionResult reason) {
+        calls[operation.ordinal()].increment();
+        rejections[operation.ordinal()][reason.ordinal()].increment();
+    }
+
+    /**
+     * Records a command of a batch that was rejected. The batch itself is counted once by {@link #recordSuccess}.
+     * @param reason Why the command was rejected.
+     */
+    void recordBatchRejection(TransactionResult reason) {
+        rejections[Operation.BATCH.ordinal()][reason.ordinal()].increment();
+    }
+
+    /**
+     * Records a call that only persists data, such as a file write.
+     * @param operation The operation.
+     * @param persistNanos Time spent in the call, in nanoseconds.
+     */
+    void recordPersistence(Operation operation, long persistNanos) {
+        calls[operation.ordinal()].increment();
+        persistTimes[operation.ordinal()].record(persistNanos);
+    }
+
+    public long getCount(Operation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    public long getRejections(Operation operation, TransactionResult reason) {
+        return rejections[operation.ordinal()][reason.ordinal()].sum();
+    }
+
+    public LatencyHistogram getApplyTimes(Operation operation) {
+        return applyTimes[operation.ordinal()];
+    }
+
+    public LatencyHistogram getPersistTimes(Operation operation) {
+        return persistTimes[operation.ordinal()];
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            counts.put(operation.key(), getCount(operation));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRejectionCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (TransactionResult reason : RESULTS) {
+            if (reason.isSuccess()) {
+                continue;
+            }
+            long total = 0;
+            for (Operation operation : OPERATIONS) {
+                total += getRejections(operation, reason);
+            }
+            counts.put(reason.name().toLowerCase(Locale.ROOT), total);
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getApplyLatencyMicros() {
+        return percentiles(applyTimes);
+    }
+
+    @Override
+    public Map<String, Double> getPersistLatencyMicros() {
+        return percentiles(persistTimes);
+    }
+
+    private static Map<String, Double> percentiles(LatencyHistogram[] histograms) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            LatencyHistogram histogram = histograms[operation.ordinal()];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            for (double percentile : PERCENTILES) {
+                values.put(operation.key() + ".p" + formatPercentile(percentile), micros(histogram.getValueAtPercentile(percentile)));
+            }
+            values.put(operation.key() + ".max", micros(histogram.getMax()));
+        }
+        return values;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("Bank metrics at ").append(Instant.now())
+                .append(", since ").append(Instant.ofEpochMilli(since)).append(System.lineSeparator());
+        report.append(String.format(Locale.ROOT, "%-18s %10s %10s  %-30s  %-30s%n", "operation", "calls", "rejected",
+                "apply us p50/p99/p99.9/max", "persist us p50/p99/p99.9/max"));
+        for (Operation operation : OPERATIONS) {
+            long rejected = 0;
+            for (TransactionResult reason : RESULTS) {
+                rejected += getRejections(operation, reason);
+            }
+            report.append(String.format(Locale.ROOT, "%-18s %10d %10d  %-30s  %-30s%n", operation.key(),
+                    getCount(operation), rejected, summary(applyTimes[operation.ordinal()]),
+                    summary(persistTimes[operation.ordinal()])));
+        }
+        report.append("rejections:");
+        for (Map.Entry<String, Long> rejection : getRejectionCounts().entrySet()) {
+            report.append(' ').append(rejection.getKey()).append('=').append(rejection.getValue());
+        }
+        return report.append(System.lineSeparator()).toString();
+    }
+
+    private static String summary(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%.1f/%.1f/%.1f/%.1f", micros(histogram.getValueAtPercentile(50)),
+                micros(histogram.getValueAtPercentile(99)), micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getMax()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            calls[i].reset();
+            for (LongAdder rejection : rejections[i]) {
+                rejection.reset();
+            }
+            applyTimes[i].reset();
+            persistTimes[i].reset();
+        }
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under {@link #OBJECT_NAME}.
+     * Failures are reported and leave the metrics usable without JMX.
+     */
+    public synchronized void registerMBean() {
+        if (registeredName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            System.out.println("An error occurred while registering the bank metrics MBean.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends the text report to a file at a fixed interval, on a daemon thread.
+     * Replaces any reporting started before.
+     * @param reportFilePath Path to the report file, created if needed.
+     * @param periodSeconds Seconds between two reports.
+     */
+    public synchronized void startReporting(String reportFilePath, long periodSeconds) {
+        if (periodSeconds <= 0) {
+            throw new IllegalArgumentException("Reporting period must be positive.");
+        }
+        stopReporting();
+        Path path = Paths.get(reportFilePath);
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bank-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> appendReport(path), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    private void appendReport(Path path) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(path, getReport().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the metrics report.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the periodic report, if started.
+     */
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Stops reporting and unregisters the MBean, if registered.
+     */
+    @Override
+    public synchronized void close() {
+        stopReporting();
+        if (registeredName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(registeredName);
+            } catch (JMException e) {
+                System.out.println("An error occurred while unregistering the bank metrics MBean.");
+                e.printStackTrace();
+            }
+            registeredName = null;
+        }
+    }
+}
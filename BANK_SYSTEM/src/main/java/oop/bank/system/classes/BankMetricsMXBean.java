@@ -0,0 +1,39 @@
+package oop.bank.system.classes;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link BankMetrics}, as seen from JMX clients such as JConsole.
+ * Map keys are lower-case operation and reason names; latencies are in microseconds.
+ */
+public interface BankMetricsMXBean {
+    /**
+     * @return The number of calls of each operation, including rejected ones.
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * @return The number of rejected money movements for each reason, e.g. "insufficient_funds".
+     */
+    Map<String, Long> getRejectionCounts();
+
+    /**
+     * @return Apply time percentiles of successful operations, keyed like "deposit.p99".
+     */
+    Map<String, Double> getApplyLatencyMicros();
+
+    /**
+     * @return Persistence time percentiles of successful operations and file writes, keyed like "deposit.p99".
+     */
+    Map<String, Double> getPersistLatencyMicros();
+
+    /**
+     * @return The counters and percentiles as a text table.
+     */
+    String getReport();
+
+    /**
+     * Clears all counters and histograms.
+     */
+    void reset();
+}
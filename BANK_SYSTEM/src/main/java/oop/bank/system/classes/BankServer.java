@@ -0,0 +1,289 @@
+package oop.bank.system.classes;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Network front-end serving {@link BankManager} operations over a line protocol, so many sessions can use one
+ * bank at the same time. Each connection is served by its own virtual thread, so thousands of mostly idle or
+ * blocked sessions cost little more than their buffers.
+ * <p>
+ * Requests and responses are CSV rows, one per line, parsed with {@link CsvParser} and quoted like
+ * {@link CsvWriter} does, so names may contain commas or quotes. Amounts are decimal, e.g. "12.50".
+ * <pre>
+ * PING                                        OK
+ * BALANCE,account                             OK,balance
+ * DEPOSIT,account,amount[,key]                OK
+ * WITHDRAW,account,amount[,key]               OK
+ * TRANSFER,from,to,amount[,key]               OK
+ * ADD,CHECKING|SAVINGS,first,last,email,phone OK,account
+ * GET,account                                 OK,account,first,last,email,phone,balance
+ * UPDATE,account,first,last,email,phone       OK
+ * REMOVE,account                              OK
+ * QUIT                                        OK, then the connection is closed
+ * </pre>
+ * Failures are answered with ERR and a reason, e.g. "ERR,NOT_FOUND" or "ERR,REJECTED" for a money movement
+ * the bank refused. A money movement sent with an idempotency key is applied at most once per key: a retry gets
+ * the response of the first request, with the reason of a refusal instead of REJECTED, e.g. "ERR,INSUFFICIENT_FUNDS",
+ * and "ERR,INVALID_KEY" if the key is malformed or was used for a different request. A request that fails
+ * unexpectedly, e.g. because the transaction journal cannot be written, is answered with "ERR,INTERNAL" and the
+ * connection stays open. Requests may be pipelined: a client can send many requests without waiting, and responses
+ * come back in request order. Responses are buffered while more requests are already waiting to be read, so a
+ * pipelined burst is answered with few writes.
+ */
+public class BankServer implements Closeable {
+    public static final int DEFAULT_PORT = 7070;
+
+    private final BankManager bankManager;
+    private final ServerSocket serverSocket;       // Socket accepting connections
+    private final ExecutorService sessions;        // Starts one virtual thread per connection
+    private final Set<Socket> connections;         // Open connections, closed when the server closes
+    private volatile boolean closed;               // True once close was called
+
+    /**
+     * Opens the server socket on the loopback interface. Connections are only accepted once {@link #serve()} runs.
+     * @param bankManager The bank to serve.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public BankServer(BankManager bankManager, int port) throws IOException {
+        this(bankManager, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Opens the server socket on the given address. Connections are only accepted once {@link #serve()} runs.
+     * @param bankManager The bank to serve.
+     * @param address The address and port to listen on.
+     * @throws IOException if the address cannot be bound.
+     */
+    public BankServer(BankManager bankManager, InetSocketAddress address) throws IOException {
+        this.bankManager = bankManager;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(address, 4096);
+        this.sessions = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bank-session-", 0).factory());
+        this.connections = ConcurrentHashMap.newKeySet();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed, serving each on a new virtual thread.
+     */
+    public void serve() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("An error occurred while accepting a connection.");
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            connections.add(socket);
+            try {
+                sessions.execute(() -> serveConnection(socket));
+            } catch (RuntimeException e) {
+                // Rejected because the server is closing
+                connections.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Reads requests from a connection and answers them in order until the client quits or disconnects.
+     */
+    private void serveConnection(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            CsvParser parser = new CsvParser();
+            StringBuilder response = new StringBuilder(128);
+            String line;
+            while ((line = in.readLine()) != null) {
+                response.setLength(0);
+                boolean quit = execute(parser, line, response);
+                out.append(response).append('\n');
+                // Pipelined requests already received are answered before the responses are sent
+                if (quit || !in.ready()) {
+                    out.flush();
+                }
+                if (quit) {
+                    break;
+                }
+            }
+        } catch (SocketException e) {
+            // The client disconnected or the server is closing
+        } catch (IOException e) {
+            System.out.println("An error occurred while serving a connection: " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Executes one request and writes its response, without line terminator.
+     * @param parser Parser for the request row.
+     * @param line The request.
+     * @param response Builder receiving the response.
+     * @return True if the client asked to close the connection.
+     */
+    private boolean execute(CsvParser parser, String line, StringBuilder response) {
+        int fields = parser.parse(line);
+        if (fields <= 0 || parser.isEmpty(0)) {
+            response.append("ERR,MALFORMED");
+            return false;
+        }
+        try {
+            if (parser.equalsIgnoreCase(0, "DEPOSIT") && fields == 3) {
+                reply(response, bankManager.deposit(parser.getLong(1), parser.getMoney(2)));
+            } else if (parser.equalsIgnoreCase(0, "DEPOSIT") && fields == 4) {
+                long accountNumber = parser.getLong(1);
+                long amount = parser.getMoney(2);
+                replyOnce(response, () -> bankManager.deposit(parser.getString(3), accountNumber, amount));
+            } else if (parser.equalsIgnoreCase(0, "WITHDRAW") && fields == 3) {
+                reply(response, bankManager.withdraw(parser.getLong(1), parser.getMoney(2)));
+            } else if (parser.equalsIgnoreCase(0, "WITHDRAW") && fields == 4) {
+                long accountNumber = parser.getLong(1);
+                long amount = parser.getMoney(2);
+                replyOnce(response, () -> bankManager.withdraw(parser.getString(3), accountNumber, amount));
+            } else if (parser.equalsIgnoreCase(0, "TRANSFER") && fields == 4) {
+                reply(response, bankManager.transferFunds(parser.getLong(1), parser.getLong(2), parser.getMoney(3)));
+            } else if (parser.equalsIgnoreCase(0, "TRANSFER") && fields == 5) {
+                long fromAccountNumber = parser.getLong(1);
+                long toAccountNumber = parser.getLong(2);
+                long amount = parser.getMoney(3);
+                replyOnce(response, () -> bankManager.transferFunds(parser.getString(4), fromAccountNumber,
+                        toAccountNumber, amount));
+            } else if (parser.equalsIgnoreCase(0, "BALANCE") && fields == 2) {
+                long accountNumber = parser.getLong(1);
+                if (bankManager.findClientByAccountNumber(accountNumber).isPresent()) {
+                    Money.appendTo(response.append("OK,"), bankManager.getAccountBalance(accountNumber));
+                } else {
+                    response.append("ERR,NOT_FOUND");
+                }
+            } else if (parser.equalsIgnoreCase(0, "ADD") && fields == 6) {
+                boolean isCheckingAccount = parser.equalsIgnoreCase(1, "CHECKING");
+                if (!isCheckingAccount && !parser.equalsIgnoreCase(1, "SAVINGS")) {
+                    response.append("ERR,UNKNOWN_ACCOUNT_TYPE");
+                } else {
+                    Client client = new Client(0, parser.getString(2), parser.getString(3),
+                            parser.getString(4), parser.getString(5));
+                    bankManager.addClient(client, isCheckingAccount);
+                    response.append("OK,").append(client.getAccountNumber());
+                }
+            } else if (parser.equalsIgnoreCase(0, "GET") && fields == 2) {
+                long accountNumber = parser.getLong(1);
+                Optional<Client> client = bankManager.findClientByAccountNumber(accountNumber);
+                if (client.isPresent()) {
+                    response.append("OK,").append(accountNumber).append(',');
+                    CsvWriter.appendField(response, client.get().getFirstName()).append(',');
+                    CsvWriter.appendField(response, client.get().getLastName()).append(',');
+                    CsvWriter.appendField(response, client.get().getEmail()).append(',');
+                    CsvWriter.appendField(response, client.get().getPhone()).append(',');
+                    Money.appendTo(response, bankManager.getAccountBalance(accountNumber));
+                } else {
+                    response.append("ERR,NOT_FOUND");
+                }
+            } else if (parser.equalsIgnoreCase(0, "UPDATE") && fields == 6) {
+                replyFound(response, bankManager.updateClient(parser.getLong(1), parser.getString(2),
+                        parser.getString(3), parser.getString(4), parser.getString(5)));
+            } else if (parser.equalsIgnoreCase(0, "REMOVE") && fields == 2) {
+                replyFound(response, bankManager.removeClient(parser.getLong(1)));
+            } else if (parser.equalsIgnoreCase(0, "PING") && fields == 1) {
+                response.append("OK");
+            } else if (parser.equalsIgnoreCase(0, "QUIT") && fields == 1) {
+                response.append("OK");
+                return true;
+            } else {
+                response.append("ERR,UNKNOWN_COMMAND");
+            }
+        } catch (NumberFormatException e) {
+            response.setLength(0);
+            response.append("ERR,INVALID_NUMBER");
+        } catch (RuntimeException e) {
+            // A failed request, e.g. one whose journal record could not be written, must not drop the session
+            System.out.println("An error occurred while executing a request.");
+            e.printStackTrace();
+            response.setLength(0);
+            response.append("ERR,INTERNAL");
+        }
+        return false;
+    }
+
+    private static void reply(StringBuilder response, boolean applied) {
+        response.append(applied ? "OK" : "ERR,REJECTED");
+    }
+
+    /**
+     * Executes a money movement with an idempotency key and writes its outcome.
+     */
+    private static void replyOnce(StringBuilder response, Supplier<TransactionResult> movement) {
+        TransactionResult result;
+        try {
+            result = movement.get();
+        } catch (IllegalArgumentException e) {
+            response.append("ERR,INVALID_KEY");
+            return;
+        }
+        if (result.isSuccess()) {
+            response.append("OK");
+        } else {
+            response.append("ERR,").append(result.name());
+        }
+    }
+
+    private static void replyFound(StringBuilder response, boolean found) {
+        response.append(found ? "OK" : "ERR,NOT_FOUND");
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and waits briefly for their sessions to end.
+     * The bank itself is left open.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeQuietly(serverSocket);
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+        sessions.shutdown();
+        try {
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package oop.bank.system.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared binary encoding of clients and accounts used by the journal and the snapshot file.
+ * Strings are written as a short length followed by UTF-8 bytes, with a length of -1 marking null.
+ */
+final class BinaryCodec {
+    static final byte CHECKING = 'C'; // Type code for checking accounts
+    static final byte SAVINGS = 'S';  // Type code for savings accounts
+    static final byte DORMANT = 'D';  // Type code for an account not loaded, whose state is in its client data file
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Returns the number of bytes needed to encode a client and their account.
+     * @param client Client to encode.
+     * @param account Account held by the client, or null for a dormant account.
+     * @return The encoded size in bytes.
+     */
+    static int encodedSize(Client client, BankAccount account) {
+        return clientSize(client) + (account == null ? 1 : 1 + 8 + 8 + 8);
+    }
+
+    static int clientSize(Client client) {
+        return 8 + stringSize(client.getFirstName()) + stringSize(client.getLastName())
+                + stringSize(client.getEmail()) + stringSize(client.getPhone());
+    }
+
+    static void putClient(ByteBuffer buffer, Client client) {
+        buffer.putLong(client.getAccountNumber());
+        putString(buffer, client.getFirstName());
+        putString(buffer, client.getLastName());
+        putString(buffer, client.getEmail());
+        putString(buffer, client.getPhone());
+    }
+
+    static Client getClient(ByteBuffer buffer) {
+        long accountNumber = buffer.getLong();
+        return new Client(accountNumber, getString(buffer), getString(buffer), getString(buffer), getString(buffer));
+    }
+
+    /**
+     * Writes the account type, its fee and type-specific parameter, and its balance, all as longs.
+     * The account number and holder are not written; they come from the client record.
+     * A null account is written as the dormant type code alone.
+     */
+    static void putAccount(ByteBuffer buffer, BankAccount account) {
+        if (account == null) {
+            buffer.put(DORMANT);
+            return;
+        }
+        if (account instanceof SavingsAccount) {
+            putAccount(buffer, SAVINGS, account.getAnnualFees(), ((SavingsAccount) account).getInterestRate(),
+                    account.getBalance());
+        } else {
+            putAccount(buffer, CHECKING, account.getAnnualFees(), ((CheckingAccount) account).getOverdraftLimit(),
+                    account.getBalance());
+        }
+    }
+
+    /**
+     * Writes an account from its individual values, in the format of {@link #putAccount(ByteBuffer, BankAccount)}.
+     */
+    static void putAccount(ByteBuffer buffer, byte type, long annualFee, long parameter, long balance) {
+        buffer.put(type);
+        buffer.putLong(annualFee);
+        buffer.putLong(parameter);
+        buffer.putLong(balance);
+    }
+
+    /**
+     * Reads an account written by {@link #putAccount(ByteBuffer, BankAccount)}.
+     * @return The account, or null for a dormant account.
+     */
+    static BankAccount getAccount(ByteBuffer buffer, Client client) {
+        byte type = buffer.get();
+        if (type == DORMANT) {
+            return null;
+        }
+        long annualFee = buffer.getLong();
+        long parameter = buffer.getLong();
+        long balance = buffer.getLong();
+        return newAccount(type, client, annualFee, parameter, balance);
+    }
+
+    static BankAccount newAccount(byte type, Client client, long annualFee, long parameter, long balance) {
+        if (type == SAVINGS) {
+            return new SavingsAccount(client.getAccountNumber(), client.getFullName(), parameter, annualFee, balance);
+        }
+        return new CheckingAccount(client.getAccountNumber(), client.getFullName(), parameter, annualFee, balance);
+    }
+
+    static int stringSize(String value) {
+        return 2 + (value == null ? 0 : utf8Length(value));
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String field too long to encode: " + bytes.length + " bytes.");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Counts the UTF-8 bytes of a string without encoding it.
+     */
+    static int utf8Length(CharSequence value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++; // Unpaired surrogates are encoded as '?'
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -4,18 +4,18 @@ package oop.bank.system.classes;
  * Represents a checking account type within the bank system.
  * This account type supports overdrafts and provides basic transaction notifications.
  */
-public class CheckingAccount extends BankAccount implements IArchive {
-    private double overdraftLimit;  // The limit to which the account can be overdrawn
+public class CheckingAccount extends BankAccount {
+    private long overdraftLimit;  // The limit to which the account can be overdrawn, in cents
 
     /**
      * Constructs a CheckingAccount with an overdraft limit and an initial balance.
      * @param accountNumber The unique identifier for the account.
      * @param accountHolder The name of the account holder.
-     * @param overdraftLimit The maximum amount the account can be overdrawn.
-     * @param annualFee The annual fee for the account.
-     * @param balance The starting balance of the account.
+     * @param overdraftLimit The maximum amount the account can be overdrawn, in cents.
+     * @param annualFee The annual fee for the account, in cents.
+     * @param balance The starting balance of the account, in cents.
      */
-    public CheckingAccount(long accountNumber, String accountHolder, double overdraftLimit, double annualFee, double balance) {
+    public CheckingAccount(long accountNumber, String accountHolder, long overdraftLimit, long annualFee, long balance) {
         super(accountNumber, accountHolder, "Checking", annualFee, balance);
         this.overdraftLimit = overdraftLimit;
     }
@@ -24,29 +24,26 @@ public class CheckingAccount extends BankAccount implements IArchive {
      * Constructs a CheckingAccount with an overdraft limit without an initial balance.
      * @param accountNumber The unique identifier for the account.
      * @param accountHolder The name of the account holder.
-     * @param overdraftLimit The maximum amount the account can be overdrawn.
-     * @param annualFee The annual fee for the account.
+     * @param overdraftLimit The maximum amount the account can be overdrawn, in cents.
+     * @param annualFee The annual fee for the account, in cents.
      */
-    public CheckingAccount(long accountNumber, String accountHolder, double overdraftLimit, double annualFee) {
+    public CheckingAccount(long accountNumber, String accountHolder, long overdraftLimit, long annualFee) {
         this(accountNumber, accountHolder, overdraftLimit, annualFee, 0);
     }
 
     /**
-     * Withdraws a specified amount from the account. Accounts can go into overdraft up to the overdraft limit.
-     * @param amount The amount to withdraw.
-     * @return True if the transaction was successful, false otherwise.
-     * @throws BankSystemException If the withdrawal amount exceeds the balance and overdraft limit.
+     * Withdrawals and outgoing transfers may take the account into overdraft, up to the overdraft limit.
+     * @param amount The positive amount to take out, in cents.
+     * @return {@link TransactionResult#SUCCESS} if the balance plus the overdraft limit covers the amount,
+     *         otherwise {@link TransactionResult#OVERDRAFT_EXCEEDED}, or {@link TransactionResult#INSUFFICIENT_FUNDS}
+     *         for an account without overdraft.
      */
     @Override
-    public boolean withdraw(double amount) throws Exception {
-        if (amount > 0 && balance + overdraftLimit >= amount) {
-            balance -= amount;
-            notifyAccountActivity("Withdrawal of " + amount + " made. New balance is " + balance);
-            archiveTransaction("Withdrawal: " + amount);
-            return true;
-        } else {
-            throw new BankSystemException("Insufficient balance or invalid amount.");
+    protected TransactionResult checkDebit(long amount) {
+        if (amount - overdraftLimit <= balance) {
+            return TransactionResult.SUCCESS;
         }
+        return overdraftLimit > 0 ? TransactionResult.OVERDRAFT_EXCEEDED : TransactionResult.INSUFFICIENT_FUNDS;
     }
 
     /**
@@ -56,24 +53,24 @@ public class CheckingAccount extends BankAccount implements IArchive {
     public void accountSummary() {
         System.out.println("Account Type: Checking\nAccount Number: " + getAccountNumber() +
                 "\nAccount Holder: " + getAccountHolder() +
-                "\nBalance: " + getBalance() + "\nOverdraft Limit: " + overdraftLimit);
+                "\nBalance: " + Money.format(getBalance()) + "\nOverdraft Limit: " + Money.format(overdraftLimit));
     }
 
     /**
-     * Notifies the account holder of activity via SMS.
-     * @param message The notification message.
+     * Checking account holders are notified of activity via SMS.
+     * @return {@link AccountEvent.Channel#SMS}.
      */
     @Override
-    public void notifyAccountActivity(String message) {
-        System.out.println("SMS Notification: " + message);
+    public AccountEvent.Channel getNotificationChannel() {
+        return AccountEvent.Channel.SMS;
     }
 
     /**
      * Calculates the annual fees for the account.
-     * @return The annual fees associated with the account.
+     * @return The annual fees associated with the account, in cents.
      */
     @Override
-    public double calculateAnnualFees() {
+    public long calculateAnnualFees() {
         return getAnnualFees();
     }
 
@@ -82,16 +79,11 @@ public class CheckingAccount extends BankAccount implements IArchive {
      * @return 0, indicating no minimum balance requirement.
      */
     @Override
-    public double minimumBalanceRequired() {
+    public long minimumBalanceRequired() {
         return 0;
     }
 
-    /**
-     * Archives a transaction detail to the system log or console.
-     * @param transactionDetails Details of the transaction to be archived.
-     */
-    @Override
-    public void archiveTransaction(String transactionDetails) {
-        System.out.println("Last transaction: " + transactionDetails);
+    public long getOverdraftLimit() {
+        return overdraftLimit;
     }
 }
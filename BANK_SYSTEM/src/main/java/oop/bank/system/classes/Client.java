@@ -5,6 +5,8 @@ package oop.bank.system.classes;
  * Holds personal and account information for a bank client.
  */
 public class Client {
+    private static final ThreadLocal<CsvParser> PARSERS = ThreadLocal.withInitial(CsvParser::new);
+
     private long accountNumber; // Unique account number
     private String firstName;   // Client's first name
     private String lastName;    // Client's last name
@@ -91,28 +93,36 @@ public class Client {
 
     /**
      * Provides a string representation of the client, formatted as a CSV line.
+     * Fields containing a comma, a quote or a line break are quoted, with embedded quotes doubled.
      * @return A CSV string representing the client.
      */
     @Override
     public String toString() {
-        return accountNumber + "," + firstName + "," + lastName + "," + email + "," + phone;
+        StringBuilder row = new StringBuilder(64).append(accountNumber);
+        CsvWriter.appendField(row.append(','), firstName);
+        CsvWriter.appendField(row.append(','), lastName);
+        CsvWriter.appendField(row.append(','), email);
+        CsvWriter.appendField(row.append(','), phone);
+        return row.toString();
     }
 
     /**
      * Static method to parse a client from a CSV string.
+     * The row is split by index with a per-thread {@link CsvParser}, so only the field values are allocated.
      * @param clientString The CSV string containing client data.
      * @return A new instance of Client created from the parsed data.
+     * @throws IllegalArgumentException if the string does not hold exactly five fields or the account number is invalid.
      */
     public static Client fromString(String clientString) {
-        String[] parts = clientString.split(",");
-        if (parts.length != 5) {
+        CsvParser parser = PARSERS.get();
+        if (parser.parse(clientString) != 5) {
             throw new IllegalArgumentException("Invalid client string: " + clientString);
         }
-        long accountNumber = Long.parseLong(parts[0]);
-        String firstName = parts[1];
-        String lastName = parts[2];
-        String email = parts[3];
-        String phone = parts[4];
+        long accountNumber = parser.getLong(0);
+        String firstName = parser.getString(1);
+        String lastName = parser.getString(2);
+        String email = parser.getString(3);
+        String phone = parser.getString(4);
         return new Client(accountNumber, firstName, lastName, email, phone);
     }
 }
@@ -0,0 +1,221 @@
+package oop.bank.system.classes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of the client list file.
+ * <p>
+ * Layout: magic, version and client count, then one record per client made of the account number as 8 bytes
+ * and the first name, last name, email and phone as short-length-prefixed UTF-8, followed by a CRC32 of all
+ * record bytes. Files written by older versions with Java serialization are still read, so they can be migrated.
+ */
+final class ClientListCodec {
+    private static final int MAGIC = 0x424B434C;                 // "BKCL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+    private static final int SERIALIZATION_MAGIC = 0xACED;       // First two bytes of a Java serialization stream
+    private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Format of a client list file, as detected from its first bytes.
+     */
+    enum Format {
+        EMPTY,      // New, empty file
+        BINARY,     // Current binary format
+        SERIALIZED, // Java-serialized list of CSV lines written by older versions
+        UNKNOWN
+    }
+
+    private ClientListCodec() {
+    }
+
+    /**
+     * Detects the format of a client list file.
+     * @param path The client list file.
+     * @return The detected format.
+     * @throws IOException if the file cannot be read.
+     */
+    static Format detect(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(4);
+            while (start.hasRemaining() && channel.read(start) >= 0) {
+                // Keep reading until four bytes are available or the file ends
+            }
+            start.flip();
+            if (start.remaining() == 0) {
+                return Format.EMPTY;
+            }
+            if (start.remaining() >= 2 && (start.getShort(0) & 0xFFFF) == SERIALIZATION_MAGIC) {
+                return Format.SERIALIZED;
+            }
+            if (start.remaining() == 4 && start.getInt(0) == MAGIC) {
+                return Format.BINARY;
+            }
+            return Format.UNKNOWN;
+        }
+    }
+
+    /**
+     * Reads a binary client list file.
+     * @param path The client list file.
+     * @return The clients, in file order.
+     * @throws IOException if the file cannot be read or is corrupt.
+     */
+    static List<Client> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            buffer.flip();
+            if (!fill(channel, buffer, HEADER_SIZE) || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a client list file: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported client list version " + version + ": " + path);
+            }
+            int count = buffer.getInt();
+            List<Client> clients = new ArrayList<>(count);
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < count; i++) {
+                int size = recordSize(channel, buffer);
+                if (size < 0) {
+                    throw new IOException("Truncated client list file: " + path);
+                }
+                ByteBuffer record = buffer.duplicate();
+                record.limit(buffer.position() + size);
+                crc.update(record);
+                clients.add(BinaryCodec.getClient(buffer));
+            }
+            if (!fill(channel, buffer, 8) || buffer.getLong() != crc.getValue()) {
+                throw new IOException("Client list checksum mismatch: " + path);
+            }
+            return clients;
+        }
+    }
+
+    /**
+     * Makes the next record fully readable and returns its size, or -1 if the file ends first.
+     * Fields are length-prefixed, so the size is found by walking the prefixes.
+     */
+    private static int recordSize(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int size = 8;
+        for (int field = 0; field < 4; field++) {
+            if (!fill(channel, buffer, size + 2)) {
+                return -1;
+            }
+            int length = buffer.getShort(buffer.position() + size);
+            size += 2 + Math.max(0, length);
+        }
+        return fill(channel, buffer, size) ? size : -1;
+    }
+
+    /**
+     * Reads a client list file written with Java serialization by older versions.
+     * @param path The client list file.
+     * @return The clients, in file order.
+     * @throws IOException if the file cannot be read or does not hold a list of client lines.
+     */
+    static List<Client> readSerialized(Path path) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            Object stored = ois.readObject();
+            if (!(stored instanceof List)) {
+                throw new IOException("Unexpected client list content: " + stored.getClass().getName());
+            }
+            List<?> lines = (List<?>) stored;
+            List<Client> clients = new ArrayList<>(lines.size());
+            for (Object line : lines) {
+                clients.add(Client.fromString(String.valueOf(line)));
+            }
+            return clients;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unexpected client list content.", e);
+        }
+    }
+
+    /**
+     * Writes a binary client list file through a temporary file that atomically replaces the old one.
+     * The clients are encoded as they are iterated, and counted, so they need not be collected first.
+     * @param path The client list file.
+     * @param clients The clients to write.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(Path path, Iterable<Client> clients) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(0);
+            int recordsStart = buffer.position();
+            int count = 0;
+            for (Client client : clients) {
+                int size = BinaryCodec.clientSize(client);
+                if (buffer.remaining() < size) {
+                    updateCrc(crc, buffer, recordsStart);
+                    drain(channel, buffer);
+                    recordsStart = 0;
+                }
+                BinaryCodec.putClient(buffer, client);
+                count++;
+            }
+            updateCrc(crc, buffer, recordsStart);
+            if (buffer.remaining() < 8) {
+                drain(channel, buffer);
+            }
+            buffer.putLong(crc.getValue());
+            drain(channel, buffer);
+            // The count is only known now; it follows the magic and version in the header
+            ByteBuffer countField = ByteBuffer.allocate(4).putInt(0, count);
+            while (countField.hasRemaining()) {
+                channel.write(countField, 8 + countField.position());
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void updateCrc(CRC32 crc, ByteBuffer buffer, int from) {
+        ByteBuffer records = buffer.duplicate();
+        records.flip();
+        records.position(from);
+        crc.update(records);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Ensures at least the requested number of bytes are readable, refilling the buffer from the channel if needed.
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        if (needed > buffer.capacity()) {
+            return false;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= needed;
+    }
+}
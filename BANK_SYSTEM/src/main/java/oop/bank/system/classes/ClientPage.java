@@ -0,0 +1,35 @@
+package oop.bank.system.classes;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of clients in account number order, as returned by {@link BankManager#listClients(long, int)}.
+ * The next page is requested with {@link #getNextCursor()}, so pages stay consistent while clients are added
+ * or removed in between: no client is skipped or repeated because of a shifting offset.
+ */
+public final class ClientPage {
+    private final List<Client> clients; // Clients of this page, by ascending account number
+    private final boolean hasMore;      // True if clients with larger account numbers exist
+
+    ClientPage(List<Client> clients, boolean hasMore) {
+        this.clients = Collections.unmodifiableList(clients);
+        this.hasMore = hasMore;
+    }
+
+    public List<Client> getClients() {
+        return clients;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Returns the cursor to pass to {@link BankManager#listClients(long, int)} for the next page.
+     * @return The account number of the last client on this page, or {@link BankManager#FIRST_PAGE} if the page is empty.
+     */
+    public long getNextCursor() {
+        return clients.isEmpty() ? BankManager.FIRST_PAGE : clients.get(clients.size() - 1).getAccountNumber();
+    }
+}
@@ -0,0 +1,72 @@
+package oop.bank.system.classes;
+
+/**
+ * Mutable holder for one client row, meant to be reused across rows during bulk scans.
+ * Text fields are kept in builders that are cleared and refilled for every row, so once they have grown to
+ * the longest value seen, reading a row allocates nothing. Call {@link #toClient()} only for the rows to keep.
+ */
+public final class ClientRecord {
+    private long accountNumber;            // Account number of the current row
+    private final StringBuilder firstName; // First name of the current row
+    private final StringBuilder lastName;  // Last name of the current row
+    private final StringBuilder email;     // Email of the current row
+    private final StringBuilder phone;     // Phone number of the current row
+
+    public ClientRecord() {
+        this.firstName = new StringBuilder(32);
+        this.lastName = new StringBuilder(32);
+        this.email = new StringBuilder(64);
+        this.phone = new StringBuilder(16);
+    }
+
+    /**
+     * Replaces the content of this record with the first five fields of a parsed row,
+     * in the order of {@link Client#toString()}. An empty account number is read as 0.
+     * @param parser Parser positioned on a row with at least five fields.
+     * @throws IllegalArgumentException if the row has fewer than five fields or the account number is invalid.
+     */
+    public void read(CsvParser parser) {
+        if (parser.getFieldCount() < 5) {
+            throw new IllegalArgumentException("Invalid client row with " + parser.getFieldCount() + " fields.");
+        }
+        accountNumber = parser.isEmpty(0) ? 0 : parser.getLong(0);
+        firstName.setLength(0);
+        lastName.setLength(0);
+        email.setLength(0);
+        phone.setLength(0);
+        parser.appendTo(1, firstName);
+        parser.appendTo(2, lastName);
+        parser.appendTo(3, email);
+        parser.appendTo(4, phone);
+    }
+
+    /**
+     * Creates a client holding a copy of this record's values.
+     * @return A new client.
+     */
+    public Client toClient() {
+        return new Client(accountNumber, firstName.toString(), lastName.toString(), email.toString(), phone.toString());
+    }
+
+    // Views of the current row; they change when the next row is read
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public CharSequence getFirstName() {
+        return firstName;
+    }
+
+    public CharSequence getLastName() {
+        return lastName;
+    }
+
+    public CharSequence getEmail() {
+        return email;
+    }
+
+    public CharSequence getPhone() {
+        return phone;
+    }
+}
@@ -0,0 +1,282 @@
+package oop.bank.system.classes;
+
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe map keyed by primitive long values.
+ * Keys are spread over independent segments, each a {@link LongHashMap} guarded by its own lock,
+ * so writers on different segments never wait for each other and readers only wait for writers on the same segment.
+ * @param <V> Type of the mapped values.
+ */
+public class ConcurrentLongHashMap<V> {
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+
+    private final LongHashMap<V>[] segments; // Independent hash tables
+    private final StampedLock[] locks;       // Lock guarding the segment with the same index
+
+    /**
+     * Creates an empty map.
+     */
+    public ConcurrentLongHashMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map sized to hold the expected number of entries without resizing.
+     * @param expectedSize Number of entries the map is expected to hold.
+     */
+    public ConcurrentLongHashMap(int expectedSize) {
+        segments = newSegments(SEGMENT_COUNT);
+        locks = new StampedLock[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new LongHashMap<>(expectedSize / SEGMENT_COUNT);
+            locks[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Creates the segment array; generic arrays cannot be created directly.
+     * @param count Number of segments.
+     * @return An array with room for the segments.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> LongHashMap<V>[] newSegments(int count) {
+        return (LongHashMap<V>[]) new LongHashMap<?>[count];
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     * @param key The key to look up.
+     * @return The mapped value, or null if the key is absent.
+     */
+    public V get(long key) {
+        int segment = segmentOf(key);
+        long stamp = locks[segment].readLock();
+        try {
+            return segments[segment].get(key);
+        } finally {
+            locks[segment].unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous mapping.
+     * @param key The key to map.
+     * @param value The value, which must not be null.
+     * @return The previous value, or null if there was none.
+     */
+    public V put(long key, V value) {
+        int segment = segmentOf(key);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].put(key, value);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Maps the key to the value only if the key is not mapped yet.
+     * @param key The key to map.
+     * @param value The value, which must not be null.
+     * @return The existing value, or null if the new mapping was stored.
+     */
+    public V putIfAbsent(long key, V value) {
+        int segment = segmentOf(key);
+        long stamp = locks[segment].writeLock();
+        try {
+            V existing = segments[segment].get(key);
+            if (existing == null) {
+                segments[segment].put(key, value);
+            }
+            return existing;
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the mapping for the key.
+     * @param key The key to remove.
+     * @return The removed value, or null if the key was absent.
+     */
+    public V remove(long key) {
+        int segment = segmentOf(key);
+        long stamp = locks[segment].writeLock();
+        try {
+            return segments[segment].remove(key);
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the mapping for the key only if it is currently mapped to the given value.
+     * @param key The key to remove.
+     * @param value The value expected to be mapped.
+     * @return True if the mapping was removed, false otherwise.
+     */
+    public boolean remove(long key, V value) {
+        int segment = segmentOf(key);
+        long stamp = locks[segment].writeLock();
+        try {
+            if (segments[segment].get(key) == value) {
+                segments[segment].remove(key);
+                return true;
+            }
+            return false;
+        } finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes every mapping.
+     */
+    public void clear() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            long stamp = locks[i].writeLock();
+            try {
+                segments[i].clear();
+            } finally {
+                locks[i].unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Visits every value, one segment at a time. Mappings changed concurrently in other segments
+     * may or may not be seen.
+     * @param action Callback receiving each value.
+     */
+    public void forEachValue(Consumer<? super V> action) {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            long stamp = locks[i].readLock();
+            try {
+                segments[i].forEachValue(action);
+            } finally {
+                locks[i].unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Visits every value of one segment. Segments partition the map, so visiting each segment
+     * once, possibly from different threads, visits every value exactly once.
+     * @param segment Index of the segment, from 0 to {@link #getSegmentCount()} - 1.
+     * @param action Callback receiving each value.
+     */
+    public void forEachValueInSegment(int segment, Consumer<? super V> action) {
+        long stamp = locks[segment].readLock();
+        try {
+            segments[segment].forEachValue(action);
+        } finally {
+            locks[segment].unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a spliterator over the values that splits along segment boundaries, so parallel streams
+     * work on independent segments. Values are copied out one segment at a time and handed over after the
+     * segment's lock is released, so the callback may modify the map. Mappings changed concurrently
+     * may or may not be seen.
+     * @return A spliterator over the values, in no particular order.
+     */
+    public Spliterator<V> valueSpliterator() {
+        return new ValueSpliterator(0, SEGMENT_COUNT);
+    }
+
+    public int getSegmentCount() {
+        return SEGMENT_COUNT;
+    }
+
+    /**
+     * Returns the number of mappings, summed over all segments.
+     * @return The number of mappings.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            long stamp = locks[i].readLock();
+            try {
+                size += segments[i].size();
+            } finally {
+                locks[i].unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Walks a range of segments, holding a copy of at most one segment at a time.
+     */
+    private final class ValueSpliterator implements Spliterator<V> {
+        private int segment;               // Next segment to copy
+        private final int end;             // Segment just past the range
+        private final ArrayList<V> buffer; // Values of the segment being handed out
+        private int index;                 // Next buffered value to hand out
+
+        ValueSpliterator(int segment, int end) {
+            this.segment = segment;
+            this.end = end;
+            this.buffer = new ArrayList<>();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (index == buffer.size()) {
+                if (segment == end) {
+                    return false;
+                }
+                buffer.clear();
+                index = 0;
+                forEachValueInSegment(segment++, buffer::add);
+            }
+            action.accept(buffer.get(index++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (end - segment < 2) {
+                return null;
+            }
+            int middle = (segment + end) >>> 1;
+            ValueSpliterator prefix = new ValueSpliterator(segment, middle);
+            segment = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            // Unlocked reads of the segment sizes; good enough for an estimate
+            long size = buffer.size() - index;
+            for (int i = segment; i < end; i++) {
+                size += segments[i].size();
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.CONCURRENT | Spliterator.NONNULL;
+        }
+    }
+
+    private static int segmentOf(long key) {
+        long h = key * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h >>> (64 - SEGMENT_BITS));
+    }
+}
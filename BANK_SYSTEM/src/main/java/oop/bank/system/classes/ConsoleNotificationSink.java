@@ -0,0 +1,12 @@
+package oop.bank.system.classes;
+
+/**
+ * Prints notifications to the console, prefixed with the channel the account holder is notified through.
+ */
+public class ConsoleNotificationSink implements NotificationSink {
+    @Override
+    public void deliver(AccountEvent event) {
+        String prefix = event.getChannel() == AccountEvent.Channel.SMS ? "SMS Notification: " : "Email Notification: ";
+        System.out.println(prefix + event.describe());
+    }
+}
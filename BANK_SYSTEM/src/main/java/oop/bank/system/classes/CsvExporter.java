@@ -0,0 +1,146 @@
+package oop.bank.system.classes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports clients with their account type and balance to CSV.
+ * Rows are streamed from the account index straight into a {@link CsvWriter}, so memory use stays constant
+ * however many clients are exported. Rows are written in index order, not sorted by account number.
+ * Balances are read without locking, so an export taken while money moves is a fuzzy snapshot.
+ */
+public class CsvExporter {
+    public static final String HEADER = "AccountNumber,FirstName,LastName,Email,Phone,AccountType,Balance";
+
+    private final BankManager bankManager; // Source of the exported clients
+
+    /**
+     * Creates an exporter reading from the given bank.
+     * @param bankManager The bank whose clients are exported.
+     */
+    public CsvExporter(BankManager bankManager) {
+        this.bankManager = bankManager;
+    }
+
+    /**
+     * Exports every client to a single CSV file with a header row.
+     * @param filePath The file to create or overwrite.
+     * @return The number of client rows written.
+     * @throws IOException if writing the file fails.
+     */
+    public long export(String filePath) throws IOException {
+        return exportShard(prepare(Paths.get(filePath)), 0, 1, true);
+    }
+
+    /**
+     * Exports every client to part files written in parallel, one per shard of the account index.
+     * Only the first part has a header row, so concatenating the parts in order yields a complete CSV file;
+     * see {@link #concatenate(List, Path)}.
+     * @param filePath Base name of the part files; part i is written to filePath.part-00i.
+     * @param shards Number of part files, capped at the number of index segments.
+     * @return The part files, in order.
+     * @throws IOException if writing any part fails.
+     */
+    public List<Path> exportParallel(String filePath, int shards) throws IOException {
+        Path target = prepare(Paths.get(filePath));
+        int shardCount = Math.max(1, Math.min(shards, bankManager.getAccountShardCount()));
+        List<Path> parts = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            parts.add(target.resolveSibling(target.getFileName() + String.format(".part-%03d", shard)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(shardCount, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Long>> results = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                final int current = shard;
+                results.add(executor.submit(() -> exportShard(parts.get(current), current, shardCount, current == 0)));
+            }
+            for (Future<Long> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Export failed.", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return parts;
+    }
+
+    /**
+     * Concatenates part files into one file using channel-to-channel transfers, then deletes the parts.
+     * @param parts The part files, in order.
+     * @param target The file to create or overwrite.
+     * @throws IOException if reading a part or writing the target fails.
+     */
+    public static void concatenate(List<Path> parts, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long position = 0; position < size; ) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+        for (Path part : parts) {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    private long exportShard(Path path, int shard, int shardCount, boolean withHeader) throws IOException {
+        long[] rows = {0};
+        try (CsvWriter writer = new CsvWriter(path)) {
+            if (withHeader) {
+                for (String column : HEADER.split(",")) {
+                    writer.field(column);
+                }
+                writer.endRow();
+            }
+            bankManager.forEachAccount(shard, shardCount, (client, account) -> {
+                try {
+                    writer.field(client.getAccountNumber())
+                            .field(client.getFirstName())
+                            .field(client.getLastName())
+                            .field(client.getEmail())
+                            .field(client.getPhone())
+                            .field(account.getAccountType())
+                            .money(account.getBalance())
+                            .endRow();
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return rows[0];
+    }
+
+    private static Path prepare(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return path;
+    }
+}
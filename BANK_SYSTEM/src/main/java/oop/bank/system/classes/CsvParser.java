@@ -0,0 +1,292 @@
+package oop.bank.system.classes;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits CSV rows into fields by index, without regular expressions or per-field substrings.
+ * A row is either a CharSequence or a slice of UTF-8 bytes in a ByteBuffer, read between its position and limit.
+ * Parsing only records where each field starts and ends; field values are produced on request, either as a
+ * String or appended to a reusable StringBuilder, and numbers are parsed in place. Fields may be quoted,
+ * with embedded quotes doubled, as written by {@link CsvWriter}.
+ * <p>
+ * The parser keeps a reference to the row until the next parse, so the row must not change in between.
+ * This class is not thread-safe; use one parser per thread.
+ */
+public class CsvParser {
+    private static final int INITIAL_FIELDS = 8;
+
+    private CharSequence chars; // Row being read when parsing characters
+    private ByteBuffer bytes;   // Row being read when parsing UTF-8 bytes
+    private int[] starts;       // Index of each field's first character, after an opening quote
+    private int[] ends;         // Index just past each field's last character, before a closing quote
+    private boolean[] quoted;   // True for quoted fields, whose doubled quotes must be collapsed
+    private int fieldCount;     // Fields found in the current row
+    private final StringBuilder scratch; // Reused to hold a field for number parsing
+
+    public CsvParser() {
+        this.starts = new int[INITIAL_FIELDS];
+        this.ends = new int[INITIAL_FIELDS];
+        this.quoted = new boolean[INITIAL_FIELDS];
+        this.scratch = new StringBuilder(32);
+    }
+
+    /**
+     * Parses a row of characters. A trailing carriage return is ignored.
+     * @param row The row, without its line terminator.
+     * @return The number of fields, or -1 if the row is malformed.
+     */
+    public int parse(CharSequence row) {
+        this.chars = row;
+        this.bytes = null;
+        return split(0, row.length());
+    }
+
+    /**
+     * Parses a row of UTF-8 bytes between the buffer's position and limit, leaving both unchanged.
+     * A trailing carriage return is ignored.
+     * @param row The row, without its line terminator.
+     * @return The number of fields, or -1 if the row is malformed.
+     */
+    public int parse(ByteBuffer row) {
+        this.chars = null;
+        this.bytes = row;
+        return split(row.position(), row.limit());
+    }
+
+    /**
+     * Returns the number of fields in the last parsed row.
+     * @return The field count, 0 if the last row was malformed.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Checks whether a field is empty.
+     * @param field Field index.
+     * @return True if the field has no characters.
+     */
+    public boolean isEmpty(int field) {
+        checkField(field);
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * Returns a field as a new String.
+     * @param field Field index.
+     * @return The field value, unquoted.
+     */
+    public String getString(int field) {
+        checkField(field);
+        if (chars != null && !quoted[field]) {
+            return chars.subSequence(starts[field], ends[field]).toString();
+        }
+        scratch.setLength(0);
+        return appendTo(field, scratch).toString();
+    }
+
+    /**
+     * Appends a field to a builder without allocating, apart from growing the builder.
+     * @param field Field index.
+     * @param target Builder to append to.
+     * @return The builder, for chaining.
+     */
+    public StringBuilder appendTo(int field, StringBuilder target) {
+        checkField(field);
+        int end = ends[field];
+        boolean collapse = quoted[field];
+        if (chars != null) {
+            for (int i = starts[field]; i < end; i++) {
+                char c = chars.charAt(i);
+                target.append(c);
+                if (c == '"' && collapse) {
+                    i++;
+                }
+            }
+            return target;
+        }
+        for (int i = starts[field]; i < end; ) {
+            int b = bytes.get(i) & 0xFF;
+            if (b < 0x80) {
+                target.append((char) b);
+                i += b == '"' && collapse ? 2 : 1;
+                continue;
+            }
+            int length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 0;
+            if (length == 0 || i + length > end) {
+                target.append('\uFFFD');
+                i++;
+                continue;
+            }
+            int codePoint = b & (0x3F >> (length - 1));
+            for (int k = 1; k < length; k++) {
+                codePoint = (codePoint << 6) | (bytes.get(i + k) & 0x3F);
+            }
+            target.appendCodePoint(Character.isValidCodePoint(codePoint) ? codePoint : '\uFFFD');
+            i += length;
+        }
+        return target;
+    }
+
+    /**
+     * Parses a field as a decimal integer in place.
+     * @param field Field index.
+     * @return The field value.
+     * @throws NumberFormatException if the field is not an integer or does not fit in a long.
+     */
+    public long getLong(int field) {
+        checkField(field);
+        int i = starts[field];
+        int end = ends[field];
+        if (i == end) {
+            throw new NumberFormatException("Empty number in field " + field);
+        }
+        boolean negative = charAt(i) == '-';
+        if (negative || charAt(i) == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Invalid number in field " + field);
+        }
+        long value = 0; // Accumulated negatively so Long.MIN_VALUE fits
+        for (; i < end; i++) {
+            int digit = charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("Invalid number in field " + field + ": " + getString(field));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw new NumberFormatException("Number out of range in field " + field);
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * Parses a field as a decimal amount, as accepted by {@link Money#parse(CharSequence)}.
+     * @param field Field index.
+     * @return The amount in cents.
+     * @throws NumberFormatException if the field is not a valid amount.
+     */
+    public long getMoney(int field) {
+        scratch.setLength(0);
+        return Money.parse(appendTo(field, scratch));
+    }
+
+    /**
+     * Compares a field with a value, ignoring case.
+     * @param field Field index.
+     * @param value Value to compare with.
+     * @return True if the field equals the value.
+     */
+    public boolean equalsIgnoreCase(int field, String value) {
+        checkField(field);
+        if (quoted[field]) {
+            return value.equalsIgnoreCase(getString(field));
+        }
+        int start = starts[field];
+        if (ends[field] - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            int a = charAt(start + i);
+            int b = value.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a row ends inside a quoted field, meaning the row continues on the next line.
+     * @param row The row read so far.
+     * @return True if the row has an unterminated quoted field.
+     */
+    public static boolean hasOpenQuote(CharSequence row) {
+        boolean open = false;
+        for (int i = 0; i < row.length(); i++) {
+            if (row.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Finds the field boundaries of the row between two indexes.
+     */
+    private int split(int from, int to) {
+        fieldCount = 0;
+        if (to > from && charAt(to - 1) == '\r') {
+            to--;
+        }
+        int i = from;
+        while (true) {
+            int start;
+            int end;
+            boolean isQuoted = i < to && charAt(i) == '"';
+            if (isQuoted) {
+                start = i + 1;
+                end = start;
+                while (true) {
+                    if (end >= to) {
+                        fieldCount = 0;
+                        return -1;
+                    }
+                    if (charAt(end) == '"') {
+                        if (end + 1 < to && charAt(end + 1) == '"') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                i = end + 1;
+                if (i < to && charAt(i) != ',') {
+                    fieldCount = 0;
+                    return -1;
+                }
+            } else {
+                start = i;
+                end = i;
+                while (end < to && charAt(end) != ',') {
+                    end++;
+                }
+                i = end;
+            }
+            addField(start, end, isQuoted);
+            if (i >= to) {
+                return fieldCount;
+            }
+            i++; // Skip the separator
+        }
+    }
+
+    private void addField(int start, int end, boolean isQuoted) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            quoted = Arrays.copyOf(quoted, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        quoted[fieldCount] = isQuoted;
+        fieldCount++;
+    }
+
+    /**
+     * Returns the character, or for byte rows the unsigned byte, at an index of the row.
+     */
+    private int charAt(int index) {
+        return chars != null ? chars.charAt(index) : bytes.get(index) & 0xFF;
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + field + " of " + fieldCount);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package oop.bank.system.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes CSV rows straight into a direct buffer that is drained to a FileChannel when full.
+ * Fields are encoded as UTF-8 character by character and numbers digit by digit,
+ * so writing a row allocates nothing and memory use stays constant regardless of the file size.
+ * Fields containing a comma, a quote or a line break are quoted, with embedded quotes doubled.
+ * This class is not thread-safe; use one writer per thread.
+ */
+public class CsvWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_CHAR_BYTES = 4; // Longest UTF-8 encoding of a code point
+    private static final String LONG_MIN_TEXT = Long.toString(Long.MIN_VALUE);
+
+    private final FileChannel channel; // Destination file
+    private final ByteBuffer buffer;   // Bytes not yet written to the channel
+    private boolean rowStarted;        // True once the current row has a field, so the next one needs a separator
+
+    /**
+     * Creates or truncates the file and opens it for writing.
+     * @param path The file to write.
+     * @throws IOException if the file cannot be opened.
+     */
+    public CsvWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Appends a text field, quoting it if needed. A null field is written empty.
+     * @param value The field value.
+     * @return This writer, for chaining.
+     * @throws IOException if writing to the file fails.
+     */
+    public CsvWriter field(CharSequence value) throws IOException {
+        separate();
+        if (value == null) {
+            return this;
+        }
+        int length = value.length();
+        boolean quoted = needsQuotes(value, length);
+        if (quoted) {
+            putAscii('"');
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                putAscii('"');
+            }
+            if (c < 0x80) {
+                putAscii(c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                putCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+            } else {
+                putCodePoint(Character.isSurrogate(c) ? '?' : c);
+            }
+        }
+        if (quoted) {
+            putAscii('"');
+        }
+        return this;
+    }
+
+    /**
+     * Appends an integer field.
+     * @param value The field value.
+     * @return This writer, for chaining.
+     * @throws IOException if writing to the file fails.
+     */
+    public CsvWriter field(long value) throws IOException {
+        separate();
+        putLong(value);
+        return this;
+    }
+
+    /**
+     * Appends an amount in cents as a decimal field with two decimals, e.g. "-12.05".
+     * @param cents The amount in cents.
+     * @return This writer, for chaining.
+     * @throws IOException if writing to the file fails.
+     */
+    public CsvWriter money(long cents) throws IOException {
+        separate();
+        if (cents < 0) {
+            putAscii('-');
+        }
+        long units = Math.abs(cents / Money.CENTS_PER_UNIT);
+        int fraction = (int) Math.abs(cents % Money.CENTS_PER_UNIT);
+        putLong(units);
+        putAscii('.');
+        putAscii((char) ('0' + fraction / 10));
+        putAscii((char) ('0' + fraction % 10));
+        return this;
+    }
+
+    /**
+     * Terminates the current row.
+     * @throws IOException if writing to the file fails.
+     */
+    public void endRow() throws IOException {
+        putAscii('\n');
+        rowStarted = false;
+    }
+
+    /**
+     * Writes buffered bytes to the file.
+     * @throws IOException if writing to the file fails.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes buffered bytes and closes the file.
+     * @throws IOException if writing to the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Appends a field to a row being built in memory, quoting it the same way this writer does.
+     * @param target Builder holding the row.
+     * @param value The field value; null is appended empty.
+     * @return The builder, for chaining.
+     */
+    public static StringBuilder appendField(StringBuilder target, CharSequence value) {
+        if (value == null) {
+            return target;
+        }
+        int length = value.length();
+        if (!needsQuotes(value, length)) {
+            return target.append(value);
+        }
+        target.append('"');
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                target.append('"');
+            }
+            target.append(c);
+        }
+        return target.append('"');
+    }
+
+    private void separate() throws IOException {
+        if (rowStarted) {
+            putAscii(',');
+        }
+        rowStarted = true;
+    }
+
+    private static boolean needsQuotes(CharSequence value, int length) {
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            // Cannot be negated; written from its constant form
+            for (int i = 0; i < LONG_MIN_TEXT.length(); i++) {
+                putAscii(LONG_MIN_TEXT.charAt(i));
+            }
+            return;
+        }
+        if (value < 0) {
+            putAscii('-');
+            value = -value;
+        }
+        ensureRoom(19);
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int index = end - 1; index >= buffer.position(); index--) {
+            buffer.put(index, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    private void putAscii(char c) throws IOException {
+        ensureRoom(1);
+        buffer.put((byte) c);
+    }
+
+    private void putCodePoint(int codePoint) throws IOException {
+        ensureRoom(MAX_CHAR_BYTES);
+        if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | (codePoint >> 6)));
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | (codePoint >> 12)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        } else {
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        }
+        buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
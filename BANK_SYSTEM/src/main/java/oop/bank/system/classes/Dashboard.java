@@ -1,6 +1,13 @@
 package oop.bank.system.classes;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -8,6 +15,9 @@ import java.util.Scanner;
  * The Dashboard class provides a text-based user interface for interacting with the banking system.
  */
 public class Dashboard {
+    private static final int CLIENT_PAGE_SIZE = 20;      // Clients listed before asking to continue
+    private static final int STATEMENT_RECENT_SIZE = 20; // Transactions shown when no statement period is given
+
     private BankManager bankManager;
     private Scanner scanner;
 
@@ -37,48 +47,75 @@ public class Dashboard {
             System.out.println("6. Deposit Funds");
             System.out.println("7. Withdraw Funds");
             System.out.println("8. Transfer Funds");
-            System.out.println("9. Export Data to CSV (Not Implemented)");
+            System.out.println("9. Export Data to CSV");
+            System.out.println("10. Import Clients from CSV");
+            System.out.println("11. Run Month-End Interest and Fees");
+            System.out.println("12. View Account Statement");
             System.out.println("0. Exit");
             System.out.print("Enter choice: ");
             choice = scanner.nextLine();
             clearScreen();
-            switch (choice) {
-                case "1":
-                    listAllClients();
-                    break;
-                case "2":
-                    addNewClient();
-                    break;
-                case "3":
-                    removeClient();
-                    break;
-                case "4":
-                    updateClientDetails();
-                    break;
-                case "5":
-                    printAccountSummaries();
-                    break;
-                case "6":
-                    depositFunds();
-                    break;
-                case "7":
-                    withdrawFunds();
-                    break;
-                case "8":
-                    transferFunds();
-                    break;
-                case "9":
-                    exportToCSV();
-                    break;
-                case "0":
-                    System.out.println("Exiting...");
-                    break;
-                default:
-                    System.out.println("Invalid choice, please try again.");
+            try {
+                handleChoice(choice);
+            } catch (UncheckedIOException e) {
+                System.out.println("An error occurred while saving the change; it was not completed.");
+                e.printStackTrace();
+                pressAnyKeyToContinue();
             }
         } while (!choice.equals("0"));
     }
 
+    /**
+     * Runs the menu option selected by the user.
+     * @param choice The option entered.
+     */
+    private void handleChoice(String choice) {
+        switch (choice) {
+            case "1":
+                listAllClients();
+                break;
+            case "2":
+                addNewClient();
+                break;
+            case "3":
+                removeClient();
+                break;
+            case "4":
+                updateClientDetails();
+                break;
+            case "5":
+                printAccountSummaries();
+                break;
+            case "6":
+                depositFunds();
+                break;
+            case "7":
+                withdrawFunds();
+                break;
+            case "8":
+                transferFunds();
+                break;
+            case "9":
+                exportToCSV();
+                break;
+            case "10":
+                importFromCSV();
+                break;
+            case "11":
+                runMonthEnd();
+                break;
+            case "12":
+                viewStatement();
+                break;
+            case "0":
+                System.out.println("Exiting...");
+                bankManager.close();
+                break;
+            default:
+                System.out.println("Invalid choice, please try again.");
+        }
+    }
+
     // Handlers methods, called inside the menu options
     private void addNewClient() {
         UserInput userInput = new UserInput(Arrays.asList("First Name", "Last Name", "Email", "Phone", "Account Type (1 for Checking, 2 for Savings)"));
@@ -128,7 +165,7 @@ public class Dashboard {
         userInput.askQuestions();
         Map<String, String> answers = userInput.getQuestionsAndAnswers();
         long accountNumber = Long.parseLong(answers.get("Account Number"));
-        double amount = Double.parseDouble(answers.get("Amount to Deposit"));
+        long amount = Money.parse(answers.get("Amount to Deposit"));
         if (bankManager.deposit(accountNumber, amount)) {
             System.out.println("Deposit successful.");
         } else {
@@ -142,15 +179,12 @@ public class Dashboard {
         userInput.askQuestions();
         Map<String, String> answers = userInput.getQuestionsAndAnswers();
         long accountNumber = Long.parseLong(answers.get("Account Number"));
-        double amount = Double.parseDouble(answers.get("Amount to Withdraw"));
-        try {
-            if (bankManager.withdraw(accountNumber, amount)) {
-                System.out.println("Withdrawal successful.");
-            } else {
-                System.out.println("Withdrawal failed.");
-            }
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
+        long amount = Money.parse(answers.get("Amount to Withdraw"));
+        TransactionResult result = bankManager.tryWithdraw(accountNumber, amount);
+        if (result.isSuccess()) {
+            System.out.println("Withdrawal successful.");
+        } else {
+            System.out.println("Withdrawal failed: " + result + ".");
         }
         pressAnyKeyToContinue();
     }
@@ -161,23 +195,102 @@ public class Dashboard {
         Map<String, String> answers = userInput.getQuestionsAndAnswers();
         long fromAccountNumber = Long.parseLong(answers.get("Source Account Number"));
         long toAccountNumber = Long.parseLong(answers.get("Destination Account Number"));
-        double amount = Double.parseDouble(answers.get("Amount to Transfer"));
-        if (bankManager.transferFunds(fromAccountNumber, toAccountNumber, amount)) {
+        long amount = Money.parse(answers.get("Amount to Transfer"));
+        TransactionResult result = bankManager.tryTransferFunds(fromAccountNumber, toAccountNumber, amount);
+        if (result.isSuccess()) {
             System.out.println("Transfer successful.");
         } else {
-            System.out.println("Transfer failed.");
+            System.out.println("Transfer failed: " + result + ".");
         }
         pressAnyKeyToContinue();
     }
 
     private void exportToCSV() {
-        System.out.println("Export to CSV feature not implemented yet.");
+        UserInput userInput = new UserInput(Arrays.asList("Export File Path"));
+        userInput.askQuestions();
+        String filePath = userInput.getQuestionsAndAnswers().get("Export File Path");
+        try {
+            long start = System.nanoTime();
+            long rows = new CsvExporter(bankManager).export(filePath);
+            System.out.println("Exported " + rows + " clients to " + filePath + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms.");
+        } catch (IOException e) {
+            System.out.println("An error occurred while exporting to CSV.");
+            e.printStackTrace();
+        }
+        pressAnyKeyToContinue();
+    }
+
+    private void importFromCSV() {
+        UserInput userInput = new UserInput(Arrays.asList("Import File Path"));
+        userInput.askQuestions();
+        String filePath = userInput.getQuestionsAndAnswers().get("Import File Path");
+        try {
+            long start = System.nanoTime();
+            ImportResult result = bankManager.importClients(filePath);
+            System.out.println(result + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+        } catch (IOException e) {
+            System.out.println("An error occurred while importing from CSV.");
+            e.printStackTrace();
+        }
+        pressAnyKeyToContinue();
+    }
+
+    private void runMonthEnd() {
+        UserInput userInput = new UserInput(Arrays.asList("Month to Close (YYYY-MM)"));
+        userInput.askQuestions();
+        try {
+            YearMonth month = YearMonth.parse(userInput.getQuestionsAndAnswers().get("Month to Close (YYYY-MM)").trim());
+            long start = System.nanoTime();
+            MonthEndResult result = bankManager.runMonthEnd(month);
+            System.out.println(result + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+        } catch (DateTimeParseException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+        pressAnyKeyToContinue();
+    }
+
+    private void viewStatement() {
+        String fromQuestion = "From Date (YYYY-MM-DD, empty for the latest " + STATEMENT_RECENT_SIZE + " transactions)";
+        String toQuestion = "To Date (YYYY-MM-DD, empty for today)";
+        UserInput userInput = new UserInput(Arrays.asList("Account Number", fromQuestion, toQuestion));
+        userInput.askQuestions();
+        Map<String, String> answers = userInput.getQuestionsAndAnswers();
+        try {
+            long accountNumber = Long.parseLong(answers.get("Account Number").trim());
+            String from = answers.get(fromQuestion).trim();
+            String to = answers.get(toQuestion).trim();
+            List<LedgerEntry> entries;
+            if (from.isEmpty()) {
+                entries = bankManager.getRecentTransactions(accountNumber, STATEMENT_RECENT_SIZE);
+            } else {
+                ZoneId zone = ZoneId.systemDefault();
+                LocalDate lastDay = to.isEmpty() ? LocalDate.now(zone) : LocalDate.parse(to);
+                entries = bankManager.getStatement(accountNumber,
+                        LocalDate.parse(from).atStartOfDay(zone).toInstant().toEpochMilli(),
+                        lastDay.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1);
+            }
+            System.out.println("\nStatement for account " + accountNumber + ":");
+            entries.forEach(entry -> System.out.println(entry));
+            System.out.println(entries.size() + " transaction(s).");
+        } catch (NumberFormatException | DateTimeParseException e) {
+            System.out.println("Invalid input: " + e.getMessage());
+        }
         pressAnyKeyToContinue();
     }
 
     private void listAllClients() {
         System.out.println("\nListing All Clients:");
-        bankManager.listAllClients().forEach(client -> System.out.println(client));
+        ClientPage page = bankManager.listClients(CLIENT_PAGE_SIZE);
+        page.getClients().forEach(client -> System.out.println(client));
+        while (page.hasMore()) {
+            System.out.print("Press Enter for more clients, or type q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                break;
+            }
+            page = bankManager.listClients(page.getNextCursor(), CLIENT_PAGE_SIZE);
+            page.getClients().forEach(client -> System.out.println(client));
+        }
         pressAnyKeyToContinue();
     }
 
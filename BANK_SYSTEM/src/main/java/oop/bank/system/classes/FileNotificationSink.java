@@ -0,0 +1,65 @@
+package oop.bank.system.classes;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends notifications to a text file, one line per event.
+ * Lines are buffered and flushed whenever the dispatcher's queue runs empty.
+ */
+public class FileNotificationSink implements NotificationSink, Closeable {
+    private final BufferedWriter writer; // Buffered writer appending to the notification file
+
+    /**
+     * Opens the notification file for appending, creating it if needed.
+     * @param notificationFilePath Path to the notification file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public FileNotificationSink(String notificationFilePath) throws IOException {
+        Path path = Paths.get(notificationFilePath);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void deliver(AccountEvent event) {
+        try {
+            writer.write(Long.toString(event.getTimestamp()));
+            writer.write(',');
+            writer.write(event.getChannel().name());
+            writer.write(',');
+            writer.write(Long.toString(event.getAccountNumber()));
+            writer.write(',');
+            writer.write(event.describe());
+            writer.newLine();
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing a notification to file.");
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.out.println("An error occurred while flushing the notification file.");
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
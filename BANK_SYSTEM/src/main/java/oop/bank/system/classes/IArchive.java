@@ -7,8 +7,12 @@ package oop.bank.system.classes;
  */
 public interface IArchive {
     /**
-     * Archives transaction details.
-     * @param transactionDetails String containing details of the transaction to be archived.
+     * Archives a structured transaction record durably, possibly involving another account, such as one side of a transfer.
+     * @param type Kind of transaction.
+     * @param amount Amount moved, in cents.
+     * @param counterparty Other account involved, or {@link AccountEvent#NO_COUNTERPARTY}.
+     * @param balance Balance after the transaction, in cents.
+     * @param timestamp Time of the transaction, in milliseconds since the epoch.
      */
-    void archiveTransaction(String transactionDetails);
+    void archiveTransaction(AccountEvent.Type type, long amount, long counterparty, long balance, long timestamp);
 }
@@ -13,7 +13,7 @@ import java.util.List;
 public class IOHandling {
     private String clientListFilePath; // Path to the file containing the list of clients.
     private String clientDataDirectory; // Directory where individual client data files are stored.
-    private List<String> clientList; // List storing loaded client data.
+    private List<Client> clientList; // List storing loaded client data.
 
     /**
      * Initializes paths for client data and creates necessary directories and files.
@@ -62,41 +62,78 @@ public class IOHandling {
 
     /**
      * Reads client data from the list file into memory.
+     * A list file written with Java serialization by an older version is converted to the binary format.
      */
-    public void readClientList() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(clientListFilePath))) {
-            clientList = (List<String>) ois.readObject();
-        } catch (FileNotFoundException e) {
+    public synchronized void readClientList() {
+        Path path = Paths.get(clientListFilePath);
+        if (!Files.exists(path)) {
             System.out.println("Client list file not found. Initializing empty list.");
             clientList = new ArrayList<>();
-        } catch (IOException | ClassNotFoundException e) {
+            return;
+        }
+        try {
+            switch (ClientListCodec.detect(path)) {
+                case EMPTY:
+                    clientList = new ArrayList<>();
+                    break;
+                case BINARY:
+                    clientList = ClientListCodec.read(path);
+                    break;
+                case SERIALIZED:
+                    clientList = ClientListCodec.readSerialized(path);
+                    writeClientList();
+                    System.out.println("Client list file migrated to the binary format: " + clientListFilePath);
+                    break;
+                default:
+                    System.out.println("Unrecognized client list file format. Initializing empty list.");
+                    clientList = new ArrayList<>();
+            }
+        } catch (IOException e) {
             System.out.println("An error occurred while reading the client list.");
             e.printStackTrace();
         }
     }
 
     /**
-     * Writes a client's data to the client list file.
-     * @param client Client whose data is to be written.
+     * Rewrites the client list file from the clients held in memory.
      */
-    public void writeClientToList(Client client) {
-        clientList.add(String.valueOf(client).toString());
-        writeClientList();
+    public synchronized void writeClientList() {
+        writeClientList(clientList);
     }
-    public void writeClientList() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(clientListFilePath))) {
-            oos.writeObject(clientList);
+
+    /**
+     * Replaces the client list file with the given clients, e.g. every client of the bank.
+     * The clients held in memory are left unchanged.
+     * @param clients All clients the file is to list, encoded as they are iterated.
+     * @return True if the file was written, false otherwise.
+     */
+    public synchronized boolean writeClientList(Iterable<Client> clients) {
+        try {
+            ClientListCodec.write(Paths.get(clientListFilePath), clients);
+            return true;
         } catch (IOException e) {
             System.out.println("An error occurred while writing the client list file.");
             e.printStackTrace();
+            return false;
         }
     }
     /**
      * Writes or updates client-specific data in their individual data file.
      * @param client Client whose data is to be written.
-     * @param balance Current balance of the client to be recorded.
+     * @param balance Current balance of the client to be recorded, in cents.
      */
-    public void writeClientData(Client client, double balance) {
+    public void writeClientData(Client client, long balance) {
+        writeClientData(client, null, balance);
+    }
+
+    /**
+     * Writes or updates client-specific data, including the account type, in their individual data file.
+     * @param client Client whose data is to be written.
+     * @param accountType Type of the client's account ("Checking" or "Savings"), or null to leave it out.
+     * @param balance Current balance of the client to be recorded, in cents.
+     * @return True if the file was written, false otherwise.
+     */
+    public boolean writeClientData(Client client, String accountType, long balance) {
         String clientFolderPath = clientDataDirectory + "/" + client.getAccountNumber();
         String clientFilePath = clientFolderPath + "/client-info.txt";
 
@@ -114,17 +151,24 @@ public class IOHandling {
                 writer.newLine();
                 writer.write("Phone: " + client.getPhone());
                 writer.newLine();
-                writer.write("Balance: " + balance);
+                if (accountType != null) {
+                    writer.write("Account Type: " + accountType);
+                    writer.newLine();
+                }
+                writer.write("Balance: " + Money.format(balance));
                 writer.newLine();
             }
+            return true;
         } catch (IOException e) {
             System.out.println("An error occurred while writing the client data to file.");
             e.printStackTrace();
+            return false;
         }
     }
 
     /**
      * Reads account data for a given client from their data file.
+     * Files without an account type, written by older versions, are read as checking accounts.
      * @param client Client whose account data is to be read.
      * @return BankAccount object containing the account details or null if no data is found.
      */
@@ -138,13 +182,21 @@ public class IOHandling {
 
         try (BufferedReader reader = new BufferedReader(new FileReader(clientFilePath))) {
             String line;
-            double balance = 0.0;
+            long balance = 0;
+            boolean savings = false;
             while ((line = reader.readLine()) != null) {
                 if (line.startsWith("Balance: ")) {
-                    balance = Double.parseDouble(line.split(": ")[1]);
+                    balance = Money.parse(line.substring("Balance: ".length()));
+                } else if (line.startsWith("Account Type: ")) {
+                    savings = line.regionMatches(true, "Account Type: ".length(), "Savings", 0, "Savings".length());
                 }
             }
-            return new CheckingAccount(client.getAccountNumber(), client.getFullName(), 200, 100, balance);
+            if (savings) {
+                return new SavingsAccount(client.getAccountNumber(), client.getFullName(),
+                        BankManager.SAVINGS_INTEREST_RATE, BankManager.SAVINGS_ANNUAL_FEE, balance);
+            }
+            return new CheckingAccount(client.getAccountNumber(), client.getFullName(),
+                    BankManager.CHECKING_OVERDRAFT_LIMIT, BankManager.CHECKING_ANNUAL_FEE, balance);
         } catch (IOException e) {
             System.out.println("An error occurred while reading the account data.");
             e.printStackTrace();
@@ -177,7 +229,7 @@ public class IOHandling {
 
     // Getter and setter methods for file paths
 
-    public List<String> getClientList() {
+    public List<Client> getClientList() {
         return clientList;
     }
 
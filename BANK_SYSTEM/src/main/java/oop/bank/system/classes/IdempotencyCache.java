@@ -0,0 +1,226 @@
+package oop.bank.system.classes;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, expiring record of money movements by idempotency key, so a retried request returns the outcome of
+ * its first execution instead of moving money again. A key is looked up in a concurrent hash map without locking;
+ * a request still executing is visible too, so concurrent retries wait for its outcome rather than racing it.
+ * Keys expire a fixed time after their request arrived; as that makes arrival order expiry order, expired keys and
+ * keys over capacity are evicted from the head of a queue, under the cache's lock, whenever a key is added.
+ * Outcomes are made durable by the journal records written with the balances; see {@link BankManager}.
+ */
+class IdempotencyCache {
+    static final int DEFAULT_CAPACITY = 262144;                   // Keys kept before the oldest are evicted
+    static final long DEFAULT_RETENTION_MILLIS = 15 * 60 * 1000L; // Time a key is kept after its request arrived
+    static final int MAX_KEY_LENGTH = 255;                        // Longest key accepted, in UTF-8 bytes
+
+    /**
+     * A request executed under an idempotency key, completed with its outcome once executed.
+     */
+    static final class Request {
+        private final String key;
+        private final long fingerprint; // Hash of the operation, accounts and amount the key was first used for
+        private final long timestamp;   // Arrival time of the request, in milliseconds since the epoch
+        private final CompletableFuture<TransactionResult> outcome;
+
+        /**
+         * @throws IllegalArgumentException if the key is empty or longer than {@link #MAX_KEY_LENGTH} bytes.
+         */
+        Request(String key, long fingerprint, long timestamp) {
+            if (key.isEmpty() || BinaryCodec.utf8Length(key) > MAX_KEY_LENGTH) {
+                throw new IllegalArgumentException("Idempotency keys must have 1 to " + MAX_KEY_LENGTH + " bytes.");
+            }
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.timestamp = timestamp;
+            this.outcome = new CompletableFuture<>();
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        long getFingerprint() {
+            return fingerprint;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the outcome of the request, waiting while it is still executing.
+         * @return The outcome.
+         * @throws RuntimeException the exception the request failed with, if it did not complete.
+         */
+        TransactionResult await() {
+            try {
+                return outcome.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Request> requests; // Live requests by key
+    private final ArrayDeque<Request> arrivals;                // Registered requests in arrival order
+    private final ReentrantLock lock;                          // Serializes registrations and evictions
+    private volatile int capacity;                             // Keys kept before the oldest are evicted
+    private volatile long retentionMillis;                     // Time a key is kept after its request arrived
+
+    /**
+     * Creates an empty cache.
+     * @param capacity Maximum number of keys kept.
+     * @param retentionMillis Time a key is kept after its request arrived, in milliseconds.
+     */
+    IdempotencyCache(int capacity, long retentionMillis) {
+        this.requests = new ConcurrentHashMap<>();
+        this.arrivals = new ArrayDeque<>();
+        this.lock = new ReentrantLock();
+        setLimits(capacity, retentionMillis);
+    }
+
+    /**
+     * Changes the number of keys kept and how long they are kept. Takes effect as keys are next added.
+     * @param capacity Maximum number of keys kept.
+     * @param retentionMillis Time a key is kept after its request arrived, in milliseconds.
+     */
+    void setLimits(int capacity, long retentionMillis) {
+        if (capacity <= 0 || retentionMillis <= 0) {
+            throw new IllegalArgumentException("Idempotency key capacity and retention must be positive.");
+        }
+        this.capacity = capacity;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Registers a request under its key unless a live request with the same key exists.
+     * @param request The new request.
+     * @return Null if the request was registered and must now be executed and completed,
+     *         otherwise the earlier request with the same key.
+     */
+    Request register(Request request) {
+        Request earlier = requests.get(request.key);
+        if (earlier != null && !isExpired(earlier, request.timestamp)) {
+            return earlier;
+        }
+        lock.lock();
+        try {
+            earlier = requests.get(request.key);
+            if (earlier != null && !isExpired(earlier, request.timestamp)) {
+                return earlier;
+            }
+            requests.put(request.key, request);
+            arrivals.addLast(request);
+            evict(request.timestamp - retentionMillis);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of a registered request, releasing retries waiting for it.
+     */
+    void complete(Request request, TransactionResult result) {
+        request.outcome.complete(result);
+    }
+
+    /**
+     * Forgets a registered request that failed without an outcome, so it may be retried.
+     * Retries already waiting for it fail with the same exception.
+     */
+    void abandon(Request request, RuntimeException failure) {
+        requests.remove(request.key, request);
+        request.outcome.completeExceptionally(failure);
+    }
+
+    /**
+     * Adds the recorded outcome of a request while recovering. Outcomes must be restored in the order their
+     * requests were journaled. Expired outcomes are kept, for {@link #getOutcome(String)}, until the next key is
+     * registered; only the capacity limit applies meanwhile.
+     */
+    void restore(String key, long fingerprint, TransactionResult result, long timestamp) {
+        Request request = new Request(key, fingerprint, timestamp);
+        request.outcome.complete(result);
+        lock.lock();
+        try {
+            requests.put(key, request);
+            arrivals.addLast(request);
+            evict(Long.MIN_VALUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the outcome held for a key, whether or not it has expired.
+     * @param key The idempotency key.
+     * @return The outcome, or null if the key is unknown or its request has not completed.
+     */
+    TransactionResult getOutcome(String key) {
+        Request request = requests.get(key);
+        if (request == null || !request.outcome.isDone() || request.outcome.isCompletedExceptionally()) {
+            return null;
+        }
+        return request.outcome.join();
+    }
+
+    /**
+     * Returns the arrival time before which keys have expired, as used for keeping their journal records.
+     * @return The time, in milliseconds since the epoch.
+     */
+    long getExpiryTime() {
+        return System.currentTimeMillis() - retentionMillis;
+    }
+
+    int size() {
+        return requests.size();
+    }
+
+    private boolean isExpired(Request request, long now) {
+        return request.outcome.isDone() && request.timestamp < now - retentionMillis;
+    }
+
+    /**
+     * Drops completed requests from the head of the arrival queue while they have expired or the cache is
+     * over capacity. Must be called while holding the lock.
+     * @param expiryTime Arrival time before which requests have expired.
+     */
+    private void evict(long expiryTime) {
+        int capacity = this.capacity;
+        while (!arrivals.isEmpty()) {
+            Request oldest = arrivals.peekFirst();
+            if (!oldest.outcome.isDone() || (arrivals.size() <= capacity && oldest.timestamp >= expiryTime)) {
+                break;
+            }
+            arrivals.pollFirst();
+            // The key may have been registered again by a newer request
+            requests.remove(oldest.key, oldest);
+        }
+    }
+
+    /**
+     * Hashes what a request does, to detect a key being reused for a different request.
+     * @param type The kind of money movement.
+     * @param accountNumber The account, or the source account of a transfer.
+     * @param targetAccountNumber The target account of a transfer, or 0.
+     * @param amount The amount, in cents.
+     * @return The fingerprint.
+     */
+    static long fingerprint(TransactionCommand.Type type, long accountNumber, long targetAccountNumber, long amount) {
+        long hash = type.ordinal() + 1;
+        hash = hash * 0x9E3779B97F4A7C15L + accountNumber;
+        hash = hash * 0x9E3779B97F4A7C15L + targetAccountNumber;
+        hash = hash * 0x9E3779B97F4A7C15L + amount;
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -0,0 +1,27 @@
+package oop.bank.system.classes;
+
+/**
+ * Outcome of a bulk client import through {@link BankManager#importClients(String)}.
+ */
+public final class ImportResult {
+    private final long imported; // Rows turned into new clients
+    private final long rejected; // Rows skipped as malformed or because their account number is taken
+
+    ImportResult(long imported, long rejected) {
+        this.imported = imported;
+        this.rejected = rejected;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return "Imported: " + imported + ", Rejected: " + rejected;
+    }
+}
@@ -0,0 +1,68 @@
+package oop.bank.system.classes;
+
+import java.time.Instant;
+
+/**
+ * One transaction in an account's ledger, as read from the {@link TransactionArchive}.
+ */
+public final class LedgerEntry {
+    private final long timestamp;     // Time of the transaction, in milliseconds since the epoch
+    private final long accountNumber; // Account the transaction happened on
+    private final AccountEvent.Type type;
+    private final long amount;        // Amount moved, in cents
+    private final long counterparty;  // Other account of a transfer, or AccountEvent.NO_COUNTERPARTY
+    private final long balance;       // Balance after the transaction, in cents
+
+    LedgerEntry(long timestamp, long accountNumber, AccountEvent.Type type, long amount, long counterparty, long balance) {
+        this.timestamp = timestamp;
+        this.accountNumber = accountNumber;
+        this.type = type;
+        this.amount = amount;
+        this.counterparty = counterparty;
+        this.balance = balance;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public AccountEvent.Type getType() {
+        return type;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * Returns the other account of a transfer.
+     * @return The account number, or {@link AccountEvent#NO_COUNTERPARTY} if the transaction was not a transfer.
+     */
+    public long getCounterparty() {
+        return counterparty;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    /**
+     * Formats the entry as a statement line.
+     * @return The line, e.g. "2024-05-01T10:15:30Z TRANSFER_OUT 25.00 to 1234567890, balance 75.00".
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(80);
+        line.append(Instant.ofEpochMilli(timestamp)).append(' ').append(type).append(' ');
+        Money.appendTo(line, amount);
+        if (counterparty != AccountEvent.NO_COUNTERPARTY) {
+            line.append(type == AccountEvent.Type.TRANSFER_IN ? " from " : " to ").append(counterparty);
+        }
+        line.append(", balance ");
+        return Money.appendTo(line, balance).toString();
+    }
+}
@@ -0,0 +1,197 @@
+package oop.bank.system.classes;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money helpers. Amounts are held as long values in cents everywhere inside the system;
+ * conversion from and to decimal strings only happens at the I/O edges.
+ */
+public final class Money {
+    public static final long CENTS_PER_UNIT = 100;
+    public static final long BASIS_POINTS_PER_UNIT = 10000; // Basis points in 100%
+
+    private Money() {
+    }
+
+    /**
+     * Converts a whole number of currency units to cents.
+     * @param units Amount in whole units.
+     * @return The amount in cents.
+     * @throws ArithmeticException if the result overflows.
+     */
+    public static long ofUnits(long units) {
+        return Math.multiplyExact(units, CENTS_PER_UNIT);
+    }
+
+    /**
+     * Parses a decimal amount such as "12", "12.5" or "-12.34" into cents.
+     * Plain amounts with up to two decimals are parsed without allocation; other notations,
+     * including values written by older versions such as "1.0E7", are rounded half-even to cents.
+     * @param text The decimal amount.
+     * @return The amount in cents.
+     * @throws NumberFormatException if the text is not a valid amount or does not fit in a long.
+     */
+    public static long parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        for (; i < length && isDigit(text.charAt(i)); i++, digits++) {
+            if (units > (Long.MAX_VALUE / CENTS_PER_UNIT - 9) / 10) {
+                return parseSlow(text);
+            }
+            units = units * 10 + (text.charAt(i) - '0');
+        }
+        long cents = 0;
+        int decimals = 0;
+        if (i < length && text.charAt(i) == '.') {
+            for (i++; i < length && isDigit(text.charAt(i)) && decimals < 2; i++, decimals++) {
+                cents = cents * 10 + (text.charAt(i) - '0');
+            }
+        }
+        if (i != length || digits + decimals == 0) {
+            return parseSlow(text);
+        }
+        for (; decimals < 2; decimals++) {
+            cents *= 10;
+        }
+        long value = units * CENTS_PER_UNIT + cents;
+        return negative ? -value : value;
+    }
+
+    private static long parseSlow(CharSequence text) {
+        try {
+            return new BigDecimal(text.toString().trim()).movePointRight(2)
+                    .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+
+    /**
+     * Converts a floating-point amount to cents, rounding half-even.
+     * The amount is taken at its shortest decimal representation, so 0.125 becomes 12 cents and 0.135 becomes 14.
+     * @param amount Amount in currency units.
+     * @return The amount in cents.
+     * @throws ArithmeticException if the amount is not finite or does not fit in a long.
+     */
+    public static long fromDouble(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Formats cents as a decimal string with exactly two decimals, e.g. "-12.05".
+     * @param cents The amount in cents.
+     * @return The formatted amount.
+     */
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    /**
+     * Appends cents as a decimal string with exactly two decimals.
+     * @param target Builder to append to.
+     * @param cents The amount in cents.
+     * @return The builder, for chaining.
+     */
+    public static StringBuilder appendTo(StringBuilder target, long cents) {
+        if (cents < 0) {
+            target.append('-');
+        }
+        long units = Math.abs(cents / CENTS_PER_UNIT);
+        int fraction = (int) Math.abs(cents % CENTS_PER_UNIT);
+        target.append(units).append('.');
+        if (fraction < 10) {
+            target.append('0');
+        }
+        return target.append(fraction);
+    }
+
+    /**
+     * Applies a rate expressed in basis points to an amount, e.g. 150 basis points of 100.00 is 1.50.
+     * The result is rounded to whole cents with the given rounding mode, without allocating.
+     * @param cents The amount in cents.
+     * @param basisPoints The rate in hundredths of a percent.
+     * @param rounding Rounding applied to the fractional cent; HALF_EVEN, HALF_UP, DOWN, UP, FLOOR and CEILING are supported.
+     * @return The rounded result in cents.
+     * @throws ArithmeticException if the intermediate product overflows.
+     */
+    public static long applyRate(long cents, long basisPoints, RoundingMode rounding) {
+        return divide(Math.multiplyExact(cents, basisPoints), BASIS_POINTS_PER_UNIT, rounding);
+    }
+
+    /**
+     * Applies an annual rate expressed in basis points for one of several equal periods of a year,
+     * e.g. 1200 basis points of 100.00 for one of 12 months is 1.00. The result is rounded once, to whole cents.
+     * @param cents The amount in cents.
+     * @param basisPoints The annual rate in hundredths of a percent.
+     * @param periodsPerYear Number of periods the year is split into, e.g. 12 for monthly.
+     * @param rounding Rounding applied to the fractional cent, as for {@link #applyRate(long, long, RoundingMode)}.
+     * @return The rounded result in cents.
+     * @throws ArithmeticException if the intermediate product overflows.
+     */
+    public static long applyRate(long cents, long basisPoints, int periodsPerYear, RoundingMode rounding) {
+        if (periodsPerYear <= 0) {
+            throw new IllegalArgumentException("Periods per year must be positive.");
+        }
+        return divide(Math.multiplyExact(cents, basisPoints), BASIS_POINTS_PER_UNIT * periodsPerYear, rounding);
+    }
+
+    /**
+     * Divides an amount into a number of equal shares, e.g. an annual fee into monthly charges.
+     * @param cents The amount in cents.
+     * @param divisor The number of shares, positive.
+     * @param rounding Rounding applied to the fractional cent, as for {@link #applyRate(long, long, RoundingMode)}.
+     * @return One share, rounded to whole cents.
+     */
+    public static long divide(long cents, long divisor, RoundingMode rounding) {
+        if (divisor <= 0) {
+            throw new IllegalArgumentException("Divisor must be positive.");
+        }
+        long quotient = cents / divisor;
+        long remainder = cents % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+        int sign = cents < 0 ? -1 : 1;
+        // Compared as remainder against divisor - remainder, which cannot overflow like doubling the remainder
+        long excess = Math.abs(remainder) - (divisor - Math.abs(remainder));
+        boolean awayFromZero;
+        switch (rounding) {
+            case HALF_EVEN:
+                awayFromZero = excess > 0 || (excess == 0 && (quotient & 1) != 0);
+                break;
+            case HALF_UP:
+                awayFromZero = excess >= 0;
+                break;
+            case HALF_DOWN:
+                awayFromZero = excess > 0;
+                break;
+            case UP:
+                awayFromZero = true;
+                break;
+            case DOWN:
+                awayFromZero = false;
+                break;
+            case CEILING:
+                awayFromZero = sign > 0;
+                break;
+            case FLOOR:
+                awayFromZero = sign < 0;
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary for " + cents + " divided by " + divisor + ".");
+        }
+        return awayFromZero ? quotient + sign : quotient;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,60 @@
+package oop.bank.system.classes;
+
+import java.time.YearMonth;
+
+/**
+ * Outcome of month-end processing through {@link BankManager#runMonthEnd(YearMonth)}.
+ * When an interrupted run is resumed, the totals only cover the accounts processed by the resumed run.
+ */
+public final class MonthEndResult {
+    private final YearMonth period;      // Month that was closed
+    private final boolean alreadyClosed; // True if the month had been closed before and nothing was done
+    private final long accounts;         // Accounts processed
+    private final long interestPaid;     // Interest added to savings accounts, in cents
+    private final long feesCharged;      // Fees charged to all accounts, in cents
+    private final int resumedStripes;    // Lock stripes skipped because an interrupted run completed them
+
+    MonthEndResult(YearMonth period, boolean alreadyClosed, long accounts, long interestPaid, long feesCharged,
+                   int resumedStripes) {
+        this.period = period;
+        this.alreadyClosed = alreadyClosed;
+        this.accounts = accounts;
+        this.interestPaid = interestPaid;
+        this.feesCharged = feesCharged;
+        this.resumedStripes = resumedStripes;
+    }
+
+    public YearMonth getPeriod() {
+        return period;
+    }
+
+    public boolean isAlreadyClosed() {
+        return alreadyClosed;
+    }
+
+    public long getAccounts() {
+        return accounts;
+    }
+
+    public long getInterestPaid() {
+        return interestPaid;
+    }
+
+    public long getFeesCharged() {
+        return feesCharged;
+    }
+
+    public int getResumedStripes() {
+        return resumedStripes;
+    }
+
+    @Override
+    public String toString() {
+        if (alreadyClosed) {
+            return period + " is already closed";
+        }
+        return period + ": Accounts: " + accounts + ", Interest paid: " + Money.format(interestPaid)
+                + ", Fees charged: " + Money.format(feesCharged)
+                + (resumedStripes > 0 ? ", Resumed after " + resumedStripes + " completed stripes" : "");
+    }
+}
@@ -0,0 +1,173 @@
+package oop.bank.system.classes;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable progress of month-end runs, kept in a small state file: the last closed month and, while a run is
+ * unfinished, the month being closed and the lock stripes already committed for it.
+ * Months are numbered consecutively, see {@link #periodOf(YearMonth)}.
+ * The state is guarded by a {@link ReentrantLock} rather than its monitor, as it is held while the file is forced.
+ */
+class MonthEndState {
+    static final long NONE = Long.MIN_VALUE; // No month closed yet, or no run unfinished
+
+    private static final int MAGIC = 0x424B4D45; // "BKME"
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 4; // Magic, last closed, unfinished month, stripe word count
+
+    private final Path statePath;       // File holding the state
+    private volatile long lastClosed;   // Last closed month, or NONE
+    private long pendingPeriod;         // Month of the unfinished run, or NONE
+    private BitSet pendingStripes;      // Lock stripes committed by the unfinished run
+    private final ReentrantLock lock;   // Guards the unfinished run and the state file writes
+
+    /**
+     * Reads the state file, if it exists.
+     * @param stateFilePath Path to the state file.
+     */
+    MonthEndState(String stateFilePath) {
+        this.statePath = Paths.get(stateFilePath);
+        this.lastClosed = NONE;
+        this.pendingPeriod = NONE;
+        this.pendingStripes = new BitSet();
+        this.lock = new ReentrantLock();
+        try {
+            if (Files.exists(statePath)) {
+                ByteBuffer state = ByteBuffer.wrap(Files.readAllBytes(statePath));
+                if (state.remaining() >= HEADER_SIZE && state.getInt() == MAGIC) {
+                    lastClosed = state.getLong();
+                    pendingPeriod = state.getLong();
+                    long[] words = new long[state.getInt()];
+                    state.asLongBuffer().get(words);
+                    pendingStripes = BitSet.valueOf(words);
+                } else {
+                    System.out.println("Ignoring unrecognized month-end state: " + statePath);
+                }
+            }
+        } catch (IOException | BufferUnderflowException | NegativeArraySizeException e) {
+            System.out.println("An error occurred while reading the month-end state.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Numbers a month so that consecutive months get consecutive numbers.
+     * @param month The month.
+     * @return The month's number.
+     */
+    static long periodOf(YearMonth month) {
+        return month.getYear() * 12L + month.getMonthValue() - 1;
+    }
+
+    static YearMonth monthOf(long period) {
+        return YearMonth.of((int) Math.floorDiv(period, 12), Math.floorMod(period, 12) + 1);
+    }
+
+    long getLastClosed() {
+        return lastClosed;
+    }
+
+    long getPendingPeriod() {
+        lock.lock();
+        try {
+            return pendingPeriod;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the stripes committed by the unfinished run.
+     * @return A copy of the committed stripes, empty if no run is unfinished.
+     */
+    BitSet getPendingStripes() {
+        lock.lock();
+        try {
+            return (BitSet) pendingStripes.clone();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Durably records the stripes committed by an unfinished run, adding to those already recorded for the same month.
+     * @param period Month being closed.
+     * @param stripes Lock stripes committed so far.
+     * @return True if the state file was written.
+     */
+    boolean savePending(long period, BitSet stripes) {
+        lock.lock();
+        try {
+            BitSet merged = period == pendingPeriod ? (BitSet) pendingStripes.clone() : new BitSet();
+            merged.or(stripes);
+            if (!write(lastClosed, period, merged)) {
+                return false;
+            }
+            pendingPeriod = period;
+            pendingStripes = merged;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Durably records a month as closed, ending its run.
+     * @param period The closed month.
+     * @return True if the state file was written.
+     */
+    boolean markClosed(long period) {
+        lock.lock();
+        try {
+            if (!write(period, NONE, new BitSet())) {
+                return false;
+            }
+            lastClosed = period;
+            pendingPeriod = NONE;
+            pendingStripes = new BitSet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean write(long closed, long pending, BitSet stripes) {
+        long[] words = stripes.toLongArray();
+        ByteBuffer state = ByteBuffer.allocate(HEADER_SIZE + words.length * 8)
+                .putInt(MAGIC).putLong(closed).putLong(pending).putInt(words.length);
+        for (long word : words) {
+            state.putLong(word);
+        }
+        state.flip();
+        Path tempPath = statePath.resolveSibling(statePath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (state.hasRemaining()) {
+                channel.write(state);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the month-end state.");
+            e.printStackTrace();
+            return false;
+        }
+        try {
+            Files.move(tempPath, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("An error occurred while replacing the month-end state.");
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,105 @@
+package oop.bank.system.classes;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Case-insensitive secondary index from client full name to account numbers.
+ * Names are kept in a concurrent skip list ordered by {@link String#CASE_INSENSITIVE_ORDER}, so exact lookups
+ * match {@link String#equalsIgnoreCase(String)} and prefix lookups walk a contiguous range, both without
+ * folding or copying the query. Each name maps to a sorted array of account numbers that is replaced, never
+ * modified, on update, so readers need no locking.
+ */
+class NameIndex {
+    private static final long[] NONE = new long[0];
+
+    private final ConcurrentSkipListMap<String, long[]> names; // Full name to sorted account numbers
+
+    NameIndex() {
+        this.names = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Adds an account under a name.
+     * @param fullName The client's full name.
+     * @param accountNumber The client's account number.
+     */
+    void add(String fullName, long accountNumber) {
+        names.compute(fullName, (name, accounts) -> {
+            if (accounts == null) {
+                return new long[]{accountNumber};
+            }
+            int position = Arrays.binarySearch(accounts, accountNumber);
+            if (position >= 0) {
+                return accounts;
+            }
+            position = -position - 1;
+            long[] updated = new long[accounts.length + 1];
+            System.arraycopy(accounts, 0, updated, 0, position);
+            updated[position] = accountNumber;
+            System.arraycopy(accounts, position, updated, position + 1, accounts.length - position);
+            return updated;
+        });
+    }
+
+    /**
+     * Removes an account from a name, dropping the name once no account is left under it.
+     * @param fullName The full name the account was added under.
+     * @param accountNumber The client's account number.
+     */
+    void remove(String fullName, long accountNumber) {
+        names.computeIfPresent(fullName, (name, accounts) -> {
+            int position = Arrays.binarySearch(accounts, accountNumber);
+            if (position < 0) {
+                return accounts;
+            }
+            if (accounts.length == 1) {
+                return null;
+            }
+            long[] updated = new long[accounts.length - 1];
+            System.arraycopy(accounts, 0, updated, 0, position);
+            System.arraycopy(accounts, position + 1, updated, position, updated.length - position);
+            return updated;
+        });
+    }
+
+    /**
+     * Returns the accounts held under a name, ignoring case.
+     * @param fullName The full name to look up.
+     * @return The account numbers in ascending order; the array is shared and must not be modified.
+     */
+    long[] find(String fullName) {
+        long[] accounts = names.get(fullName);
+        return accounts == null ? NONE : accounts;
+    }
+
+    /**
+     * Visits the accounts whose name starts with a prefix, ignoring case, in name order.
+     * @param prefix The name prefix; an empty prefix matches every name.
+     * @param limit Maximum number of accounts to visit.
+     * @param action Callback receiving each account number.
+     * @return The number of accounts visited.
+     */
+    int forEachWithPrefix(String prefix, int limit, LongConsumer action) {
+        int visited = 0;
+        for (Map.Entry<String, long[]> entry : names.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            for (long accountNumber : entry.getValue()) {
+                if (visited == limit) {
+                    return visited;
+                }
+                action.accept(accountNumber);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    void clear() {
+        names.clear();
+    }
+}
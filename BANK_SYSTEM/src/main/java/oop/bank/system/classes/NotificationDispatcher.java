@@ -0,0 +1,135 @@
+package oop.bank.system.classes;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers account notifications asynchronously.
+ * Events are placed on a bounded queue by the threads moving money and handed to the current sink
+ * by a single background thread, so money movement never waits on notification I/O.
+ */
+public class NotificationDispatcher {
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    /**
+     * What happens when an event is published while the queue is full.
+     */
+    public enum OverflowPolicy {
+        DROP,  // Discard the event and count it as dropped
+        BLOCK  // Wait for the dispatcher to make room
+    }
+
+    private final BlockingQueue<AccountEvent> queue; // Events waiting for delivery
+    private final Thread worker;                     // Background thread delivering events
+    private final AtomicLong dropped;                // Events discarded because the queue was full
+    private volatile NotificationSink sink;          // Current destination, null discards events without building them
+    private volatile OverflowPolicy overflowPolicy;  // Behaviour when the queue is full
+    private volatile boolean running;                // False once the dispatcher is closed
+
+    /**
+     * Creates and starts a dispatcher.
+     * @param sink Destination of the notifications, or null to discard them.
+     * @param queueCapacity Maximum number of events waiting for delivery.
+     * @param overflowPolicy Behaviour when the queue is full.
+     */
+    public NotificationDispatcher(NotificationSink sink, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dropped = new AtomicLong();
+        this.sink = sink;
+        this.overflowPolicy = overflowPolicy;
+        this.running = true;
+        this.worker = new Thread(this::dispatchLoop, "notification-dispatcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Returns whether published events would currently reach a sink.
+     * Callers can check this before creating an event at all.
+     * @return True if a sink is installed and the dispatcher is running.
+     */
+    public boolean isActive() {
+        return running && sink != null;
+    }
+
+    /**
+     * Queues an event for delivery. Returns immediately unless the queue is full and the policy is BLOCK.
+     * @param event The event to deliver.
+     */
+    public void publish(AccountEvent event) {
+        if (!isActive()) {
+            return;
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(event);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        dropped.incrementAndGet();
+    }
+
+    private void dispatchLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                AccountEvent event = queue.poll(100, TimeUnit.MILLISECONDS);
+                NotificationSink current = sink;
+                if (event != null && current != null) {
+                    current.deliver(event);
+                }
+                if (current != null && (event == null || queue.isEmpty())) {
+                    current.flush();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                System.out.println("An error occurred while delivering a notification.");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting events and waits for the queued ones to be delivered.
+     * @param timeoutMillis Maximum time to wait for the queue to drain.
+     */
+    public void close(long timeoutMillis) {
+        running = false;
+        try {
+            worker.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void setSink(NotificationSink sink) {
+        this.sink = sink;
+    }
+
+    public NotificationSink getSink() {
+        return sink;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+}
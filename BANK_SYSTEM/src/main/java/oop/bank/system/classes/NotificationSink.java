@@ -0,0 +1,19 @@
+package oop.bank.system.classes;
+
+/**
+ * Destination of account notifications, such as an SMS gateway, an email service or a file.
+ * Sinks are called from the dispatcher's background thread only, one event at a time.
+ */
+public interface NotificationSink {
+    /**
+     * Delivers one event to the account holder.
+     * @param event The event to deliver.
+     */
+    void deliver(AccountEvent event);
+
+    /**
+     * Called when the dispatcher's queue runs empty, so buffered sinks can flush.
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,168 @@
+package oop.bank.system.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Account state kept outside the Java heap, one row per account, in struct-of-arrays columns:
+ * account number, balance, annual fees and the type-specific term (overdraft limit or interest rate) as longs,
+ * and the account type as a byte, using the type codes of {@link BinaryCodec}.
+ * Columns are direct ByteBuffers allocated in chunks of {@link #CHUNK_ROWS} rows, so the store grows without
+ * copying and the garbage collector never scans or moves account state. A {@link BankAccount} for a row is only
+ * created on demand by {@link #view(int, Client)}, and written back with {@link #write(int, BankAccount)}.
+ * <p>
+ * Rows are handed out and released under the store's monitor. Reading and writing a row is not synchronized;
+ * callers serialize access to each row, e.g. with the lock stripe of its account number.
+ */
+class OffHeapAccountStore {
+    static final int CHUNK_ROWS = 1 << 16; // Rows per chunk of every column
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int ROW_MASK = CHUNK_ROWS - 1;
+
+    /**
+     * Columns of one chunk of rows.
+     */
+    private static final class Chunk {
+        final ByteBuffer accountNumbers = column(8); // Account number of each row, 0 for a free row
+        final ByteBuffer balances = column(8);       // Balance in cents
+        final ByteBuffer annualFees = column(8);     // Annual fees in cents
+        final ByteBuffer terms = column(8);          // Overdraft limit in cents or interest rate in basis points
+        final ByteBuffer types = column(1);          // Account type code
+
+        private static ByteBuffer column(int width) {
+            return ByteBuffer.allocateDirect(CHUNK_ROWS * width).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private volatile Chunk[] chunks; // Allocated chunks, replaced by a longer copy when the store grows
+    private int highWaterMark;       // Rows handed out at least once
+    private int[] freeRows;          // Released rows, reused before new ones
+    private int freeCount;           // Number of released rows
+    private int liveRows;            // Rows currently in use
+
+    OffHeapAccountStore() {
+        this.chunks = new Chunk[0];
+        this.freeRows = new int[64];
+    }
+
+    /**
+     * Stores an account in a new row.
+     * @param account The account to store.
+     * @return The row holding the account.
+     */
+    int add(BankAccount account) {
+        int row = allocate();
+        write(row, account);
+        return row;
+    }
+
+    /**
+     * Releases a row so it can be reused for another account.
+     * @param row A row returned by {@link #add(BankAccount)} and not released yet.
+     */
+    synchronized void free(int row) {
+        chunk(row).accountNumbers.putLong((row & ROW_MASK) * 8, 0);
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+        liveRows--;
+    }
+
+    /**
+     * Overwrites a row with the state of an account.
+     * @param row The row to write.
+     * @param account The account, whose state replaces the row's content.
+     */
+    void write(int row, BankAccount account) {
+        Chunk chunk = chunk(row);
+        int index = row & ROW_MASK;
+        chunk.accountNumbers.putLong(index * 8, account.getAccountNumber());
+        chunk.balances.putLong(index * 8, account.getBalance());
+        chunk.annualFees.putLong(index * 8, account.getAnnualFees());
+        if (account instanceof SavingsAccount) {
+            chunk.types.put(index, BinaryCodec.SAVINGS);
+            chunk.terms.putLong(index * 8, ((SavingsAccount) account).getInterestRate());
+        } else {
+            chunk.types.put(index, BinaryCodec.CHECKING);
+            chunk.terms.putLong(index * 8, ((CheckingAccount) account).getOverdraftLimit());
+        }
+    }
+
+    /**
+     * Creates an account object holding a copy of a row. Changes to the object reach the row only
+     * when it is written back.
+     * @param row The row to read.
+     * @param client The client owning the account, providing the account holder's name.
+     * @return A new account with the row's state.
+     */
+    BankAccount view(int row, Client client) {
+        Chunk chunk = chunk(row);
+        int index = row & ROW_MASK;
+        return BinaryCodec.newAccount(chunk.types.get(index), client, chunk.annualFees.getLong(index * 8),
+                chunk.terms.getLong(index * 8), chunk.balances.getLong(index * 8));
+    }
+
+    /**
+     * Appends a client and the account held in a row to a snapshot, without creating an account object.
+     * @param snapshot The snapshot being written.
+     * @param client The client owning the account.
+     * @param row The row holding the account.
+     */
+    void addTo(SnapshotStore.Writer snapshot, Client client, int row) {
+        Chunk chunk = chunk(row);
+        int index = row & ROW_MASK;
+        snapshot.add(client, chunk.types.get(index), chunk.annualFees.getLong(index * 8),
+                chunk.terms.getLong(index * 8), chunk.balances.getLong(index * 8));
+    }
+
+    long getBalance(int row) {
+        return chunk(row).balances.getLong((row & ROW_MASK) * 8);
+    }
+
+    long getAccountNumber(int row) {
+        return chunk(row).accountNumbers.getLong((row & ROW_MASK) * 8);
+    }
+
+    /**
+     * Returns the number of rows in use.
+     * @return The number of stored accounts.
+     */
+    synchronized int size() {
+        return liveRows;
+    }
+
+    /**
+     * Returns the off-heap memory held by the columns, including free rows.
+     * @return The allocated size in bytes.
+     */
+    long getAllocatedBytes() {
+        return (long) chunks.length * CHUNK_ROWS * (4 * 8 + 1);
+    }
+
+    private synchronized int allocate() {
+        liveRows++;
+        if (freeCount > 0) {
+            return freeRows[--freeCount];
+        }
+        int row = highWaterMark;
+        if (row < 0) {
+            liveRows--;
+            throw new IllegalStateException("Off-heap account store is full.");
+        }
+        int chunkIndex = row >>> CHUNK_SHIFT;
+        if (chunkIndex == chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunkIndex + 1);
+            grown[chunkIndex] = new Chunk();
+            chunks = grown;
+        }
+        highWaterMark++;
+        return row;
+    }
+
+    private Chunk chunk(int row) {
+        return chunks[row >>> CHUNK_SHIFT];
+    }
+}
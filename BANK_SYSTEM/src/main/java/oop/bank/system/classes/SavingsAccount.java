@@ -1,32 +1,74 @@
 package oop.bank.system.classes;
 
+import java.math.RoundingMode;
+
 /**
  * Represents a savings account in the banking system.
  * This account type accrues interest and has specific annual fees and minimum balance requirements.
  */
 public class SavingsAccount extends BankAccount {
-    private double interestRate; // Interest rate for the savings account
+    // Interest is rounded to whole cents with banker's rounding, so rounding errors do not drift in one direction
+    public static final RoundingMode INTEREST_ROUNDING = RoundingMode.HALF_EVEN;
+
+    private long interestRate; // Interest rate for the savings account, in basis points (150 = 1.5%)
 
     /**
      * Constructs a SavingsAccount with specified parameters.
      * @param accountNumber Unique identifier for the account.
      * @param accountHolder Name of the account holder.
-     * @param interestRate Annual interest rate percentage.
-     * @param annualFee Annual maintenance fee for the account.
+     * @param interestRate Annual interest rate in basis points, e.g. 150 for 1.5%.
+     * @param annualFee Annual maintenance fee for the account, in cents.
+     */
+    public SavingsAccount(long accountNumber, String accountHolder, long interestRate, long annualFee) {
+        this(accountNumber, accountHolder, interestRate, annualFee, 0);
+    }
+
+    /**
+     * Constructs a SavingsAccount with an initial balance.
+     * @param accountNumber Unique identifier for the account.
+     * @param accountHolder Name of the account holder.
+     * @param interestRate Annual interest rate in basis points, e.g. 150 for 1.5%.
+     * @param annualFee Annual maintenance fee for the account, in cents.
+     * @param balance The starting balance of the account, in cents.
      */
-    public SavingsAccount(long accountNumber, String accountHolder, double interestRate, double annualFee) {
-        super(accountNumber, accountHolder, "Savings", annualFee);
+    public SavingsAccount(long accountNumber, String accountHolder, long interestRate, long annualFee, long balance) {
+        super(accountNumber, accountHolder, "Savings", annualFee, balance);
         this.interestRate = interestRate;
     }
 
     /**
      * Applies interest to the balance based on the current interest rate.
-     * Interest is added to the balance and a notification is sent.
+     * Interest is rounded to whole cents using {@link #INTEREST_ROUNDING}, added to the balance and a single
+     * interest notification is sent.
+     * @return The interest added, in cents, or 0 if none was added.
+     */
+    public long addInterest() {
+        return addInterest(1);
+    }
+
+    /**
+     * Applies the interest earned over one of several equal periods of a year, e.g. one month at month-end.
+     * Interest is rounded to whole cents using {@link #INTEREST_ROUNDING}, added to the balance and a single
+     * interest notification is sent.
+     * @param periodsPerYear Number of interest periods in a year, e.g. 12 for monthly.
+     * @return The interest added, in cents, or 0 if none was added.
+     */
+    public long addInterest(int periodsPerYear) {
+        long interest = Money.applyRate(balance, interestRate, periodsPerYear, INTEREST_ROUNDING);
+        if (interest <= 0 || balance > Long.MAX_VALUE - interest) {
+            return 0;
+        }
+        balance += interest;
+        notifyAccountActivity(AccountEvent.Type.INTEREST, interest);
+        return interest;
+    }
+
+    /**
+     * Returns the annual interest rate.
+     * @return The rate in basis points, e.g. 150 for 1.5%.
      */
-    public void addInterest() {
-        double interest = getBalance() * (interestRate / 100);
-        deposit(interest);
-        notifyAccountActivity("Interest added: " + interest);
+    public long getInterestRate() {
+        return interestRate;
     }
 
     /**
@@ -37,34 +79,35 @@ public class SavingsAccount extends BankAccount {
         System.out.println("Account Type: " + getAccountType() +
                 "\nAccount Number: " + getAccountNumber() +
                 "\nAccount Holder: " + getAccountHolder() +
-                "\nBalance: " + getBalance() +
-                "\nInterest Rate: " + interestRate + "%");
+                "\nBalance: " + Money.format(getBalance()) +
+                // Basis points format like cents: 150 prints as 1.50
+                "\nInterest Rate: " + Money.format(interestRate) + "%");
     }
 
     /**
-     * Notifies the account holder of any account activity via email.
-     * @param message The message detailing the account activity.
+     * Savings account holders are notified of activity via email.
+     * @return {@link AccountEvent.Channel#EMAIL}.
      */
     @Override
-    public void notifyAccountActivity(String message) {
-        System.out.println("Email Notification: " + message);
+    public AccountEvent.Channel getNotificationChannel() {
+        return AccountEvent.Channel.EMAIL;
     }
 
     /**
      * Calculates and returns the annual fees for the savings account.
-     * @return Annual fees as defined in the superclass.
+     * @return Annual fees as defined in the superclass, in cents.
      */
     @Override
-    public double calculateAnnualFees() {
+    public long calculateAnnualFees() {
         return getAnnualFees();
     }
 
     /**
      * Defines the minimum balance required to maintain the savings account.
-     * @return The required minimum balance.
+     * @return The required minimum balance, in cents.
      */
     @Override
-    public double minimumBalanceRequired() {
-        return 500; // Specific to savings accounts
+    public long minimumBalanceRequired() {
+        return 50000; // 500.00, specific to savings accounts
     }
 }
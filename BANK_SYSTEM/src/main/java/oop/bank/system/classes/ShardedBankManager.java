@@ -0,0 +1,425 @@
+package oop.bank.system.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Bank partitioned into shards by account number. Each shard is a {@link BankManager} with its own client list,
+ * client data directory, journal, snapshot and archive in a directory of its own, and its own writer thread that
+ * applies every change to the shard, one at a time, so shards never contend with each other. Operations are routed
+ * by a hash of the account number; new accounts are opened on the shards in turn and are given numbers that route
+ * to their shard. Reads go to the shard directly.
+ * <p>
+ * A transfer within a shard runs on its writer like any other change. A transfer between shards is coordinated
+ * by a two-phase protocol with presumed abort, recorded in a {@link TransferLog}: the target shard checks that the
+ * target can receive the amount, the transfer is begun, the source shard prepares by debiting the source, the
+ * transfer is committed, the target shard credits the target and the transfer is ended. A transfer that fails before
+ * it is committed, or whose target refuses the credit after all, is rolled back by crediting the source again.
+ * If the source refuses that refund too, e.g. because it was removed meanwhile, the transfer is reported as
+ * {@link TransactionResult#REFUND_FAILED} and is not ended, so the debited amount stays recorded in the log.
+ * Each shard step is journaled with an idempotency key derived from the transfer, so after a crash the transfers
+ * left unfinished are finished from what the shards recorded, without applying any step twice. Recovery relies on
+ * every record being durable before the next one is written, so the shard journal is forced after each step
+ * regardless of its group commit size, and the transfer log forces each of its records. If either cannot be written,
+ * the transfer throws {@link java.io.UncheckedIOException} and is left to recovery when the bank is opened again.
+ * <p>
+ * Shards are opened, recovered and closed in parallel, so restart time follows the largest shard rather than the
+ * whole bank. The number of shards is recorded when the data directory is created and cannot change afterwards.
+ */
+public final class ShardedBankManager implements Closeable {
+    private static final int MAGIC = 0x424B5348; // "BKSH"
+
+    private final int shardCount;
+    private final BankManager[] shards;        // Shard banks, by shard index
+    private final ExecutorService[] writers;   // Single thread applying the changes of each shard
+    private final TransferLog transferLog;     // Coordinator log of transfers between shards
+    private final AtomicInteger nextShard;     // Shard receiving the next new account, modulo the shard count
+    private Map<String, TransactionResult> recoveredOutcomes; // Step outcomes read before recovery, null afterwards
+
+    /**
+     * Opens or creates a sharded bank in a data directory, recovering each shard and finishing any transfer between
+     * shards that a crash left unfinished.
+     * @param dataDirectory Directory holding one subdirectory per shard and the transfer log.
+     * @param shardCount Number of shards; must match the number the directory was created with.
+     * @throws IllegalStateException if the directory was created with a different number of shards.
+     * @throws UncheckedIOException if the recorded number of shards cannot be read or written.
+     */
+    public ShardedBankManager(String dataDirectory, int shardCount) {
+        this(dataDirectory, shardCount, BankManager.DEFAULT_GROUP_COMMIT_SIZE);
+    }
+
+    /**
+     * Opens or creates a sharded bank in a data directory, recovering each shard and finishing any transfer between
+     * shards that a crash left unfinished.
+     * @param dataDirectory Directory holding one subdirectory per shard and the transfer log.
+     * @param shardCount Number of shards; must match the number the directory was created with.
+     * @param groupCommitSize Records written between two fsync calls in each shard journal; steps of transfers between
+     *                        shards are forced to disk on their own.
+     * @throws IllegalStateException if the directory was created with a different number of shards.
+     * @throws UncheckedIOException if the recorded number of shards cannot be read or written.
+     */
+    public ShardedBankManager(String dataDirectory, int shardCount, int groupCommitSize) {
+        this(dataDirectory, shardCount, groupCommitSize, IdempotencyCache.DEFAULT_RETENTION_MILLIS);
+    }
+
+    /**
+     * Opens or creates a sharded bank in a data directory, recovering each shard and finishing any transfer between
+     * shards that a crash left unfinished.
+     * @param dataDirectory Directory holding one subdirectory per shard and the transfer log.
+     * @param shardCount Number of shards; must match the number the directory was created with.
+     * @param groupCommitSize Records written between two fsync calls in each shard journal; steps of transfers between
+     *                        shards are forced to disk on their own.
+     * @param idempotencyRetentionMillis Time each shard keeps an idempotency key after its request arrived,
+     *                                   in milliseconds; see {@link BankManager#setIdempotencyLimits(int, long)}.
+     * @throws IllegalStateException if the directory was created with a different number of shards.
+     * @throws UncheckedIOException if the recorded number of shards cannot be read or written.
+     */
+    public ShardedBankManager(String dataDirectory, int shardCount, int groupCommitSize, long idempotencyRetentionMillis) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive.");
+        }
+        Path base = Paths.get(dataDirectory);
+        checkShardCount(base.resolve("shards.state"), shardCount);
+        this.shardCount = shardCount;
+        this.shards = new BankManager[shardCount];
+        this.writers = new ExecutorService[shardCount];
+        CompletableFuture<?>[] opened = new CompletableFuture<?>[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            writers[shard] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "shard-" + shard + "-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            opened[shard] = CompletableFuture.runAsync(() -> {
+                Path directory = base.resolve("shard-" + shard);
+                BankManager bank = new BankManager(directory.resolve("client-list.bin").toString(),
+                        directory.resolve("clientData").toString(),
+                        directory.resolve("transactions.journal").toString(), groupCommitSize);
+                bank.setOwnedAccountNumbers(accountNumber -> shardOf(accountNumber) == shard);
+                bank.setIdempotencyLimits(IdempotencyCache.DEFAULT_CAPACITY, idempotencyRetentionMillis);
+                shards[shard] = bank;
+            }, writers[shard]);
+        }
+        CompletableFuture.allOf(opened).join();
+        this.transferLog = new TransferLog(base.resolve("transfers.log").toString());
+        this.nextShard = new AtomicInteger();
+        recoverTransfers();
+    }
+
+    /**
+     * Records the shard count of a new data directory, or checks it against the recorded one.
+     * Accounts are routed by the shard count, so the bank must not open without it being checked.
+     */
+    private static void checkShardCount(Path statePath, int shardCount) {
+        try {
+            if (Files.exists(statePath)) {
+                ByteBuffer state = ByteBuffer.wrap(Files.readAllBytes(statePath));
+                if (state.remaining() != 8 || state.getInt() != MAGIC) {
+                    throw new IllegalStateException("Unrecognized shard state: " + statePath);
+                }
+                int recorded = state.getInt();
+                if (recorded != shardCount) {
+                    throw new IllegalStateException("The bank was created with " + recorded + " shards, not " + shardCount + ".");
+                }
+                return;
+            }
+            Files.createDirectories(statePath.toAbsolutePath().getParent());
+            Files.write(statePath, ByteBuffer.allocate(8).putInt(MAGIC).putInt(shardCount).array());
+        } catch (IOException e) {
+            throw new UncheckedIOException("The shard state cannot be read or written: " + statePath, e);
+        }
+    }
+
+    /**
+     * Finishes the transfers between shards left unfinished by a crash: committed ones are completed,
+     * the others are rolled back if their source was debited. A transfer whose source refuses the refund is not ended,
+     * so it stays in the transfer log and is reported again at the next start.
+     * <p>
+     * The outcomes the shards recorded for the steps of every unfinished transfer are read before any step runs.
+     * Each step applied here registers a new idempotency key, which evicts expired keys; after a downtime longer
+     * than the retention time, that would drop the restored outcomes of the transfers not finished yet.
+     */
+    private void recoverTransfers() {
+        List<TransferLog.Transfer> unfinished = transferLog.getUnfinished();
+        recoveredOutcomes = new HashMap<>();
+        for (TransferLog.Transfer transfer : unfinished) {
+            int source = shardOf(transfer.fromAccountNumber);
+            readRecordedOutcome(source, debitKey(transfer.id));
+            readRecordedOutcome(source, refundKey(transfer.id));
+            readRecordedOutcome(shardOf(transfer.toAccountNumber), creditKey(transfer.id));
+        }
+        int unsettled = 0;
+        try {
+            for (TransferLog.Transfer transfer : unfinished) {
+                if (recoveredOutcomes.get(debitKey(transfer.id)) == TransactionResult.SUCCESS) {
+                    if (transfer.isCommitted()) {
+                        if (complete(transfer.id, transfer.fromAccountNumber, transfer.toAccountNumber,
+                                transfer.amount) == TransactionResult.REFUND_FAILED) {
+                            unsettled++;
+                        }
+                        continue;
+                    }
+                    if (!rollBack(transfer.id, transfer.fromAccountNumber, transfer.toAccountNumber, transfer.amount)) {
+                        unsettled++;
+                        continue;
+                    }
+                }
+                transferLog.end(transfer.id);
+            }
+        } finally {
+            recoveredOutcomes = null;
+        }
+        if (unfinished.size() > unsettled) {
+            System.out.println("Finished " + (unfinished.size() - unsettled) + " interrupted transfers between shards.");
+        }
+        if (unsettled > 0) {
+            System.out.println(unsettled + " transfers between shards could not be refunded and stay in the transfer log.");
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    private void readRecordedOutcome(int shard, String key) {
+        TransactionResult recorded = shards[shard].getRecordedOutcome(key);
+        if (recorded != null) {
+            recoveredOutcomes.put(key, recorded);
+        }
+    }
+
+    /**
+     * Returns the shard an account belongs to. The mapping must never change, as accounts are stored by it.
+     * @param accountNumber The account number.
+     * @return The shard index.
+     */
+    public int shardOf(long accountNumber) {
+        long h = accountNumber * 0xD6E8FEB86659FD93L;
+        return (int) Math.floorMod(h ^ (h >>> 32), (long) shardCount);
+    }
+
+    /**
+     * Runs an operation on a shard's writer thread and waits for its result.
+     */
+    private <T> T onWriter(int shard, Function<BankManager, T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(() -> operation.apply(shards[shard]), writers[shard]).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a step of a transfer between shards on a shard's writer unless the shard recorded its outcome before,
+     * even under an expired key, or recovery read it before running any step. The shard journal is forced before
+     * the outcome is returned, so the transfer log never records a decision that depends on a step lost in a crash.
+     */
+    private TransactionResult applyOnce(int shard, String key, Function<BankManager, TransactionResult> step) {
+        Map<String, TransactionResult> recovered = recoveredOutcomes;
+        TransactionResult known = recovered != null ? recovered.get(key) : null;
+        if (known != null) {
+            return known;
+        }
+        return onWriter(shard, bank -> {
+            TransactionResult recorded = bank.getRecordedOutcome(key);
+            TransactionResult outcome = recorded != null ? recorded : step.apply(bank);
+            bank.syncJournal();
+            return outcome;
+        });
+    }
+
+    /**
+     * Adds a new client with an account on the next shard in turn; the client's account number is set.
+     * @param client The client to add.
+     * @param isCheckingAccount True for a checking account, false for a savings account.
+     */
+    public void addClient(Client client, boolean isCheckingAccount) {
+        int shard = Math.floorMod(nextShard.getAndIncrement(), shardCount);
+        onWriter(shard, bank -> {
+            bank.addClient(client, isCheckingAccount);
+            return null;
+        });
+    }
+
+    public boolean removeClient(long accountNumber) {
+        return onWriter(shardOf(accountNumber), bank -> bank.removeClient(accountNumber));
+    }
+
+    public boolean updateClient(long accountNumber, String firstName, String lastName, String email, String phone) {
+        return onWriter(shardOf(accountNumber),
+                bank -> bank.updateClient(accountNumber, firstName, lastName, email, phone));
+    }
+
+    public boolean deposit(long accountNumber, long amount) {
+        return onWriter(shardOf(accountNumber), bank -> bank.deposit(accountNumber, amount));
+    }
+
+    public boolean withdraw(long accountNumber, long amount) {
+        return tryWithdraw(accountNumber, amount).isSuccess();
+    }
+
+    public TransactionResult tryWithdraw(long accountNumber, long amount) {
+        return onWriter(shardOf(accountNumber), bank -> bank.tryWithdraw(accountNumber, amount));
+    }
+
+    public boolean transferFunds(long fromAccountNumber, long toAccountNumber, long amount) {
+        return tryTransferFunds(fromAccountNumber, toAccountNumber, amount).isSuccess();
+    }
+
+    /**
+     * Transfers funds between two accounts, on their shard's writer if both are on one shard,
+     * otherwise with the two-phase protocol described for this class.
+     * @param fromAccountNumber Source account number.
+     * @param toAccountNumber Destination account number.
+     * @param amount Amount to transfer, in cents.
+     * @return {@link TransactionResult#SUCCESS}, or the reason the transfer was refused; for a transfer between
+     *         shards, {@link TransactionResult#REFUND_FAILED} if the target refused the credit and the source refused
+     *         the refund, in which case the transfer stays unfinished in the transfer log.
+     */
+    public TransactionResult tryTransferFunds(long fromAccountNumber, long toAccountNumber, long amount) {
+        int source = shardOf(fromAccountNumber);
+        int target = shardOf(toAccountNumber);
+        if (source == target) {
+            return onWriter(source, bank -> bank.tryTransferFunds(fromAccountNumber, toAccountNumber, amount));
+        }
+        // Prepare the target first, so most refusals need no log records
+        TransactionResult prepared = onWriter(target, bank -> bank.checkReceive(toAccountNumber, amount));
+        if (!prepared.isSuccess()) {
+            return prepared;
+        }
+        long id = transferLog.begin(fromAccountNumber, toAccountNumber, amount);
+        prepared = applyOnce(source, debitKey(id),
+                bank -> bank.sendTransfer(debitKey(id), fromAccountNumber, toAccountNumber, amount));
+        if (!prepared.isSuccess()) {
+            transferLog.end(id);
+            return prepared;
+        }
+        transferLog.commit(id);
+        return complete(id, fromAccountNumber, toAccountNumber, amount);
+    }
+
+    /**
+     * Credits the target of a committed transfer, rolling the transfer back if the target refuses, and ends it.
+     * A transfer whose rollback fails is not ended, so the debited amount stays recorded in the transfer log.
+     * @return {@link TransactionResult#SUCCESS}, the reason the target refused the credit,
+     *         or {@link TransactionResult#REFUND_FAILED} if the rollback failed too.
+     */
+    private TransactionResult complete(long id, long fromAccountNumber, long toAccountNumber, long amount) {
+        TransactionResult credited = applyOnce(shardOf(toAccountNumber), creditKey(id),
+                bank -> bank.receiveTransfer(creditKey(id), toAccountNumber, fromAccountNumber, amount));
+        // The target was removed or filled up since it was checked
+        if (!credited.isSuccess() && !rollBack(id, fromAccountNumber, toAccountNumber, amount)) {
+            return TransactionResult.REFUND_FAILED;
+        }
+        transferLog.end(id);
+        return credited;
+    }
+
+    /**
+     * Returns the amount of a transfer to its debited source.
+     * @return True if the source was credited, false if it refused the amount, e.g. because it was removed.
+     */
+    private boolean rollBack(long id, long fromAccountNumber, long toAccountNumber, long amount) {
+        TransactionResult refunded = applyOnce(shardOf(fromAccountNumber), refundKey(id),
+                bank -> bank.receiveTransfer(refundKey(id), fromAccountNumber, toAccountNumber, amount));
+        if (!refunded.isSuccess()) {
+            System.out.println("An error occurred while rolling back transfer " + id + " of " + Money.format(amount)
+                    + " from account " + fromAccountNumber + ": " + refunded + "; it stays in the transfer log.");
+            return false;
+        }
+        return true;
+    }
+
+    static String debitKey(long id) {
+        return "transfer:" + id + ":debit";
+    }
+
+    static String creditKey(long id) {
+        return "transfer:" + id + ":credit";
+    }
+
+    static String refundKey(long id) {
+        return "transfer:" + id + ":refund";
+    }
+
+    public long getAccountBalance(long accountNumber) {
+        return shards[shardOf(accountNumber)].getAccountBalance(accountNumber);
+    }
+
+    public Optional<Client> findClientByAccountNumber(long accountNumber) {
+        return shards[shardOf(accountNumber)].findClientByAccountNumber(accountNumber);
+    }
+
+    public List<LedgerEntry> getStatement(long accountNumber, long fromTimestamp, long toTimestamp) {
+        return shards[shardOf(accountNumber)].getStatement(accountNumber, fromTimestamp, toTimestamp);
+    }
+
+    /**
+     * Lists the clients of all shards, shard by shard.
+     * @return The clients.
+     */
+    public List<Client> listAllClients() {
+        List<Client> clients = new ArrayList<>();
+        for (BankManager shard : shards) {
+            clients.addAll(shard.listAllClients());
+        }
+        return clients;
+    }
+
+    /**
+     * Returns how many money movements the shards refused, by reason; see {@link BankManager#getRejectionCounts()}.
+     * A refused transfer between shards is counted once, by the shard that refused it.
+     * @return The counts of the reasons that occurred.
+     */
+    public Map<TransactionResult, Long> getRejectionCounts() {
+        Map<TransactionResult, Long> counts = new EnumMap<>(TransactionResult.class);
+        for (BankManager shard : shards) {
+            shard.getRejectionCounts().forEach((reason, count) -> counts.merge(reason, count, Long::sum));
+        }
+        return counts;
+    }
+
+    /**
+     * Closes every shard on its writer, after the changes already queued there, and then the transfer log.
+     * Transfers between shards still running may be left unfinished; they are finished when the bank is opened again.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<?>[] closed = new CompletableFuture<?>[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            closed[i] = CompletableFuture.runAsync(shards[i]::close, writers[i]);
+        }
+        CompletableFuture.allOf(closed).join();
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        transferLog.close();
+    }
+}
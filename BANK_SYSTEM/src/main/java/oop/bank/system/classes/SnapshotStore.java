@@ -0,0 +1,290 @@
+package oop.bank.system.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Stores all clients and balances in one sequential binary image.
+ * The snapshot records the journal sequence number it covers, so recovery loads the snapshot
+ * and replays only the journal records written after it.
+ * When accounts are loaded lazily, accounts that are not in memory are stored as dormant records without
+ * their state, which is then held by their client data file.
+ * <p>
+ * Layout: magic, version, journal sequence, record count, then one length-prefixed record per client,
+ * followed by a CRC32 of all record bytes.
+ */
+public class SnapshotStore {
+    private static final int MAGIC = 0x424B534E; // "BKSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Receives each client and account while a snapshot is loaded.
+     * The account is null for a dormant account, whose state is kept in its client data file.
+     */
+    public interface EntryHandler {
+        void onEntry(Client client, BankAccount account);
+    }
+
+    /**
+     * Writes a snapshot as its records are added, so no image of the whole bank is held in memory.
+     * Records go through one buffer to a temporary file, which replaces the current snapshot on {@link #commit()}.
+     * An I/O error is kept and reported by {@link #commit()}; records added after it are discarded.
+     */
+    public class Writer implements Closeable {
+        private final long journalSequence; // Journal records up to this sequence number are reflected in the snapshot
+        private final Path tempPath;        // File receiving the records until the snapshot is committed
+        private final ByteBuffer buffer;    // Encoded records not yet written to the file
+        private final CRC32 crc;            // Checksum of the records written so far
+        private FileChannel channel;        // Open temporary file, null once closed
+        private int recordsStart;           // Buffer position where the records not yet checksummed start
+        private int count;                  // Number of records
+        private IOException failure;        // First error while writing, after which records are discarded
+
+        private Writer(long journalSequence) {
+            this.journalSequence = journalSequence;
+            this.tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            this.buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+            this.crc = new CRC32();
+            try {
+                Path parent = snapshotPath.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                failure = e;
+            }
+            // The count is only known at the end; it is patched into the header before the snapshot is committed
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(journalSequence).putInt(0);
+            recordsStart = buffer.position();
+        }
+
+        /**
+         * Appends a client and their account to the snapshot.
+         * @param client Client to include.
+         * @param account Account held by the client, or null if it is dormant.
+         */
+        public void add(Client client, BankAccount account) {
+            int size = BinaryCodec.encodedSize(client, account);
+            if (reserve(size)) {
+                buffer.putInt(size);
+                BinaryCodec.putClient(buffer, client);
+                BinaryCodec.putAccount(buffer, account);
+                count++;
+            }
+        }
+
+        /**
+         * Appends a client and an account given by its values, e.g. read from off-heap columns.
+         * @param client Client to include.
+         * @param type Account type code of {@link BinaryCodec}.
+         * @param annualFee Annual fees in cents.
+         * @param parameter Overdraft limit in cents or interest rate in basis points.
+         * @param balance Balance in cents.
+         */
+        void add(Client client, byte type, long annualFee, long parameter, long balance) {
+            int size = BinaryCodec.clientSize(client) + 1 + 8 + 8 + 8;
+            if (reserve(size)) {
+                buffer.putInt(size);
+                BinaryCodec.putClient(buffer, client);
+                BinaryCodec.putAccount(buffer, type, annualFee, parameter, balance);
+                count++;
+            }
+        }
+
+        /**
+         * Makes room for a record, writing the buffered records to the file if needed.
+         * @return False if the snapshot has already failed and the record is to be discarded.
+         */
+        private boolean reserve(int size) {
+            if (failure == null && buffer.remaining() < 4 + size) {
+                drain();
+            }
+            return failure == null;
+        }
+
+        private void drain() {
+            ByteBuffer records = buffer.duplicate();
+            records.flip();
+            records.position(recordsStart);
+            crc.update(records);
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            buffer.clear();
+            recordsStart = 0;
+        }
+
+        public long getJournalSequence() {
+            return journalSequence;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Completes the snapshot, forces it to disk and atomically replaces the current snapshot with it.
+         * @return True if the snapshot was written, false otherwise.
+         */
+        public boolean commit() {
+            if (failure == null) {
+                drain();
+            }
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                ByteBuffer trailer = ByteBuffer.allocate(8).putLong(0, crc.getValue());
+                while (trailer.hasRemaining()) {
+                    channel.write(trailer);
+                }
+                ByteBuffer countField = ByteBuffer.allocate(4).putInt(0, count);
+                while (countField.hasRemaining()) {
+                    channel.write(countField, HEADER_SIZE - 4 + countField.position());
+                }
+                channel.force(true);
+                channel.close();
+                channel = null;
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (IOException e) {
+                System.out.println("An error occurred while writing the snapshot file.");
+                e.printStackTrace();
+                return false;
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Discards the snapshot unless it has been committed, leaving the current snapshot in place.
+         */
+        @Override
+        public void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(tempPath);
+            } catch (IOException e) {
+                System.out.println("An error occurred while discarding the snapshot file.");
+                e.printStackTrace();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    private final Path snapshotPath; // Location of the current snapshot
+
+    /**
+     * Creates a store writing the snapshot to the given path.
+     * @param snapshotFilePath Path to the snapshot file.
+     */
+    public SnapshotStore(String snapshotFilePath) {
+        this.snapshotPath = Paths.get(snapshotFilePath);
+    }
+
+    public boolean exists() {
+        return Files.exists(snapshotPath);
+    }
+
+    /**
+     * Starts writing a new snapshot. The current snapshot stays in place until the writer is committed.
+     * @param journalSequence Last journal sequence number whose effects are included in the snapshot.
+     * @return The writer receiving the snapshot's records.
+     */
+    public Writer open(long journalSequence) {
+        return new Writer(journalSequence);
+    }
+
+    /**
+     * Streams the snapshot from disk, handing every entry to the handler.
+     * @param handler Callback receiving each client and account.
+     * @return The journal sequence number covered by the snapshot, or -1 if no valid snapshot exists.
+     *         When the snapshot is found to be corrupt part-way, -1 is returned after some entries may have been delivered.
+     */
+    public long load(EntryHandler handler) {
+        if (!exists()) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+            buffer.flip();
+            if (!fill(channel, buffer, HEADER_SIZE)) {
+                return corrupt("truncated header");
+            }
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            if (magic != MAGIC || version != VERSION) {
+                return corrupt("unknown format");
+            }
+            long journalSequence = buffer.getLong();
+            int count = buffer.getInt();
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < count; i++) {
+                if (!fill(channel, buffer, 4)) {
+                    return corrupt("truncated record");
+                }
+                int size = buffer.getInt(buffer.position());
+                if (size <= 0 || size > IO_BUFFER_SIZE - 4 || !fill(channel, buffer, 4 + size)) {
+                    return corrupt("truncated record");
+                }
+                ByteBuffer record = buffer.duplicate();
+                record.limit(buffer.position() + 4 + size);
+                crc.update(record);
+                buffer.position(buffer.position() + 4);
+                Client client = BinaryCodec.getClient(buffer);
+                handler.onEntry(client, BinaryCodec.getAccount(buffer, client));
+            }
+            if (!fill(channel, buffer, 8) || buffer.getLong() != crc.getValue()) {
+                return corrupt("checksum mismatch");
+            }
+            return journalSequence;
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the snapshot file.");
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Ensures at least the requested number of bytes are readable, refilling the buffer from the channel if needed.
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= needed;
+    }
+
+    private static long corrupt(String reason) {
+        System.out.println("Ignoring snapshot file: " + reason + ".");
+        return -1;
+    }
+}
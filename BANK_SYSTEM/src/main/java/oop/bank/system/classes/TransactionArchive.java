@@ -0,0 +1,708 @@
+package oop.bank.system.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Durable archive of account transactions, kept in rolling segment files of fixed-size binary records.
+ * Segments are written and read through memory-mapped buffers, so appending costs no system call and
+ * range scans read records in place without loading whole files onto the heap.
+ * Records are stored in timestamp order; each segment header carries a filter of the account numbers it contains,
+ * so scans for one account skip segments that cannot hold it.
+ * <p>
+ * Each record also links to the previous record of the same account, so every account has a ledger: a chain of its
+ * records, newest first, that is read without touching other accounts' records. Each record additionally holds a
+ * jump link to an earlier record of the account, chosen by the skew-binary scheme, so the newest record at or before
+ * any time is found in O(log n) steps for an account with n records. A statement over a time range therefore costs
+ * O(log n + k) for k returned entries, and the last k entries O(k), however long the account's history is.
+ * The newest record of each account is kept in memory, saved next to the segments on close and brought up to date
+ * from the records appended after the save when the archive is opened.
+ * <p>
+ * Segments written before ledgers existed (version 1) are still read, by {@link #scan} and for the part of a
+ * statement older than an account's ledger, but receive no appends.
+ */
+public class TransactionArchive implements Closeable {
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20; // Records per segment file, 64 MB each
+
+    private static final int MAGIC = 0x424B4152;             // "BKAR"
+    private static final int VERSION = 2;                    // Records linked into per-account ledgers
+    private static final int LEGACY_VERSION = 1;             // Records without counterparty or ledger links
+    private static final int HEADER_SIZE = 4096;             // Magic, version, capacity and the account filter
+    private static final int FILTER_OFFSET = 64;             // Start of the account filter within the header
+    private static final int FILTER_BITS = (HEADER_SIZE - FILTER_OFFSET) * 8;
+    private static final int RECORD_SIZE = 64;               // Timestamp, account, amount, balance, counterparty, links, type
+    private static final int LEGACY_RECORD_SIZE = 40;        // Timestamp, account, amount, balance, type
+    private static final int COUNTERPARTY_OFFSET = 32;       // Other account of a transfer
+    private static final int PREVIOUS_OFFSET = 40;           // Position of the account's previous record, or NONE
+    private static final int JUMP_OFFSET = 48;               // Position of an earlier record of the account, for seeking
+    private static final int DEPTH_OFFSET = 56;              // Number of earlier records in the account's ledger
+    private static final int TYPE_OFFSET = 60;               // Written last; 0 marks a slot that was never filled
+    private static final int LEGACY_TYPE_OFFSET = 32;
+    private static final long NONE = -1;                     // Position of no record
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String HEADS_FILE = "ledger.heads";
+    private static final int HEADS_MAGIC = 0x424B4C48;       // "BKLH"
+    private static final int HEADS_HEADER_SIZE = 4 + 8 + 4;  // Magic, indexed position, account count
+
+    private static final AccountEvent.Type[] TYPES = AccountEvent.Type.values();
+
+    /**
+     * Receives archived records during a scan.
+     */
+    public interface RecordHandler {
+        void onRecord(long timestamp, long accountNumber, AccountEvent.Type type, long amount, long balance);
+    }
+
+    /**
+     * One mapped segment file.
+     */
+    private static final class Segment {
+        final int index;               // Position of the segment in the archive, part of its file name
+        final MappedByteBuffer buffer; // Whole file, header included
+        final int capacity;            // Record slots in the segment
+        final boolean legacy;          // True for a version 1 segment, without ledger links
+        final int recordSize;          // Bytes per record slot
+        final int typeOffset;          // Offset of the type within a record
+        volatile int count;            // Filled slots; published after the record is complete
+
+        Segment(int index, MappedByteBuffer buffer, int capacity, boolean legacy) {
+            this.index = index;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.legacy = legacy;
+            this.recordSize = legacy ? LEGACY_RECORD_SIZE : RECORD_SIZE;
+            this.typeOffset = legacy ? LEGACY_TYPE_OFFSET : TYPE_OFFSET;
+        }
+
+        int offset(int slot) {
+            return HEADER_SIZE + slot * recordSize;
+        }
+
+        long timestampAt(int slot) {
+            return buffer.getLong(offset(slot));
+        }
+
+        boolean mayContain(long accountNumber) {
+            int bit = filterBit(accountNumber);
+            return (buffer.get(FILTER_OFFSET + (bit >>> 3)) & (1 << (bit & 7))) != 0;
+        }
+    }
+
+    private final Path directory;                  // Directory holding the segment files
+    private final int segmentRecords;              // Record slots per newly created segment
+    private final List<Segment> segments;          // All segments in order; guarded by lock
+    private volatile Segment[] readableSegments;   // Copy of the segment list for lock-free scans
+    private Segment active;                        // Segment receiving appends
+    private long lastTimestamp;                    // Timestamp of the last appended record
+    private final LongHashMap<long[]> heads;       // Position of each account's newest record; guarded by lock
+    private boolean hasLegacySegments;             // True if version 1 segments precede the ledgers
+    private final ReentrantLock lock;              // Serializes appends, segment creation, syncs and the close
+
+    /**
+     * Opens or creates an archive with the default segment size.
+     * @param archiveDirectory Directory holding the segment files.
+     */
+    public TransactionArchive(String archiveDirectory) {
+        this(archiveDirectory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Opens or creates an archive, resuming appends after the last filled record.
+     * @param archiveDirectory Directory holding the segment files.
+     * @param segmentRecords Number of records per newly created segment file.
+     */
+    public TransactionArchive(String archiveDirectory, int segmentRecords) {
+        if (segmentRecords <= 0 || (long) segmentRecords * RECORD_SIZE + HEADER_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size out of range: " + segmentRecords);
+        }
+        this.directory = Paths.get(archiveDirectory);
+        this.segmentRecords = segmentRecords;
+        this.segments = new ArrayList<>();
+        this.heads = new LongHashMap<>();
+        this.lock = new ReentrantLock();
+        open();
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+            files.sort(null); // Zero-padded indexes sort in segment order
+            for (Path file : files) {
+                Segment segment = mapExisting(file);
+                if (segment != null) {
+                    segments.add(segment);
+                    hasLegacySegments |= segment.legacy;
+                }
+            }
+            for (int i = segments.size() - 1; i >= 0 && lastTimestamp == 0; i--) {
+                Segment segment = segments.get(i);
+                if (segment.count > 0) {
+                    lastTimestamp = segment.timestampAt(segment.count - 1);
+                }
+            }
+            if (segments.isEmpty()) {
+                segments.add(createSegment(0));
+            } else if (segments.get(segments.size() - 1).legacy) {
+                segments.add(createSegment(segments.get(segments.size() - 1).index + 1));
+            }
+            active = segments.get(segments.size() - 1);
+            readableSegments = segments.toArray(new Segment[0]);
+            loadHeads();
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening the transaction archive.");
+            e.printStackTrace();
+        }
+    }
+
+    private Segment mapExisting(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        int index = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_SIZE) {
+                System.out.println("Ignoring truncated archive segment: " + file);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int version = buffer.getInt(4);
+            int capacity = buffer.getInt(8);
+            int recordSize = version == LEGACY_VERSION ? LEGACY_RECORD_SIZE : RECORD_SIZE;
+            if (buffer.getInt(0) != MAGIC || (version != VERSION && version != LEGACY_VERSION)
+                    || (long) capacity * recordSize + HEADER_SIZE != channel.size()) {
+                System.out.println("Ignoring unrecognized archive segment: " + file);
+                return null;
+            }
+            Segment segment = new Segment(index, buffer, capacity, version == LEGACY_VERSION);
+            segment.count = countFilled(segment);
+            return segment;
+        }
+    }
+
+    /**
+     * Finds the number of filled slots. Slots are filled in order, so the first empty one is found by binary search.
+     */
+    private static int countFilled(Segment segment) {
+        int low = 0;
+        int high = segment.capacity;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segment.buffer.getInt(segment.offset(mid) + segment.typeOffset) != 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Segment createSegment(int index) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) segmentRecords * RECORD_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, segmentRecords);
+            return new Segment(index, buffer, segmentRecords, false);
+        }
+    }
+
+    /**
+     * Appends a transaction record that has no counterparty.
+     * @param accountNumber Account the transaction happened on.
+     * @param type Kind of transaction.
+     * @param amount Amount moved, in cents.
+     * @param balance Balance after the transaction, in cents.
+     * @param timestamp Time of the transaction, in milliseconds since the epoch.
+     */
+    public void append(long accountNumber, AccountEvent.Type type, long amount, long balance, long timestamp) {
+        append(accountNumber, type, amount, AccountEvent.NO_COUNTERPARTY, balance, timestamp);
+    }
+
+    /**
+     * Appends a transaction record to the archive and to the account's ledger. Timestamps are kept non-decreasing
+     * so segments and ledgers stay sorted by time; a timestamp earlier than the previous record is archived with
+     * the previous record's timestamp.
+     * @param accountNumber Account the transaction happened on.
+     * @param type Kind of transaction.
+     * @param amount Amount moved, in cents.
+     * @param counterparty Other account of a transfer, or {@link AccountEvent#NO_COUNTERPARTY}.
+     * @param balance Balance after the transaction, in cents.
+     * @param timestamp Time of the transaction, in milliseconds since the epoch.
+     */
+    public void append(long accountNumber, AccountEvent.Type type, long amount, long counterparty,
+                       long balance, long timestamp) {
+        lock.lock();
+        try {
+            if (active == null) {
+                return;
+            }
+            if (active.count == active.capacity && !roll()) {
+                return;
+            }
+            Segment segment = active;
+            if (timestamp < lastTimestamp) {
+                timestamp = lastTimestamp;
+            }
+            lastTimestamp = timestamp;
+            long position = positionOf(segment, segment.count);
+            long[] head = heads.get(accountNumber);
+            long previous = head == null ? NONE : head[0];
+            long jump = position; // The first record of a ledger jumps to itself
+            int depth = 0;
+            Segment[] readable = readableSegments;
+            Segment previousSegment = previous == NONE ? null : segmentOf(readable, previous);
+            if (previousSegment != null) {
+                int previousOffset = previousSegment.offset((int) previous);
+                int previousDepth = previousSegment.buffer.getInt(previousOffset + DEPTH_OFFSET);
+                long previousJump = previousSegment.buffer.getLong(previousOffset + JUMP_OFFSET);
+                Segment jumpSegment = segmentOf(readable, previousJump);
+                jump = previous;
+                if (jumpSegment != null) {
+                    int jumpOffset = jumpSegment.offset((int) previousJump);
+                    int jumpDepth = jumpSegment.buffer.getInt(jumpOffset + DEPTH_OFFSET);
+                    long secondJump = jumpSegment.buffer.getLong(jumpOffset + JUMP_OFFSET);
+                    Segment secondJumpSegment = segmentOf(readable, secondJump);
+                    // Two equal-length jumps in a row are merged into one twice as long
+                    if (secondJumpSegment != null && previousDepth - jumpDepth
+                            == jumpDepth - secondJumpSegment.buffer.getInt(secondJumpSegment.offset((int) secondJump) + DEPTH_OFFSET)) {
+                        jump = secondJump;
+                    }
+                }
+                depth = previousDepth + 1;
+            } else {
+                previous = NONE;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int bit = filterBit(accountNumber);
+            int filterByte = FILTER_OFFSET + (bit >>> 3);
+            buffer.put(filterByte, (byte) (buffer.get(filterByte) | (1 << (bit & 7))));
+            int offset = segment.offset(segment.count);
+            buffer.putLong(offset, timestamp);
+            buffer.putLong(offset + 8, accountNumber);
+            buffer.putLong(offset + 16, amount);
+            buffer.putLong(offset + 24, balance);
+            buffer.putLong(offset + COUNTERPARTY_OFFSET, counterparty);
+            buffer.putLong(offset + PREVIOUS_OFFSET, previous);
+            buffer.putLong(offset + JUMP_OFFSET, jump);
+            buffer.putInt(offset + DEPTH_OFFSET, depth);
+            buffer.putInt(offset + TYPE_OFFSET, type.ordinal() + 1);
+            segment.count++;
+            if (head == null) {
+                heads.put(accountNumber, new long[] {position});
+            } else {
+                head[0] = position;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean roll() {
+        try {
+            active.buffer.force();
+            active = createSegment(active.index + 1);
+            segments.add(active);
+            readableSegments = segments.toArray(new Segment[0]);
+            return true;
+        } catch (IOException e) {
+            System.out.println("An error occurred while creating a transaction archive segment.");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Returns an account's transactions within a time range, oldest first.
+     * The newest entry of the range is found through the ledger's jump links, and the range is then read
+     * backwards through the account's own records only.
+     * @param accountNumber Account whose transactions are wanted.
+     * @param fromTimestamp Start of the range, inclusive.
+     * @param toTimestamp End of the range, inclusive.
+     * @return The entries in the range, oldest first.
+     */
+    public List<LedgerEntry> statement(long accountNumber, long fromTimestamp, long toTimestamp) {
+        Segment[] readable = readableSegments;
+        List<LedgerEntry> entries = new ArrayList<>();
+        long position = seekAtOrBefore(readable, headOf(accountNumber), toTimestamp);
+        while (position != NONE) {
+            Segment segment = segmentOf(readable, position);
+            if (segment == null) {
+                break;
+            }
+            int offset = segment.offset((int) position);
+            if (segment.buffer.getLong(offset) < fromTimestamp) {
+                break;
+            }
+            entries.add(entryAt(segment, offset));
+            position = segment.buffer.getLong(offset + PREVIOUS_OFFSET);
+        }
+        Collections.reverse(entries);
+        // The ledger ended inside the range, so older entries may be in segments written before ledgers existed
+        if (position == NONE && hasLegacySegments) {
+            List<LedgerEntry> older = new ArrayList<>();
+            long ledgerStart = entries.isEmpty() ? toTimestamp : entries.get(0).getTimestamp();
+            scanLegacy(readable, accountNumber, fromTimestamp, ledgerStart, older::add);
+            older.addAll(entries);
+            return older;
+        }
+        return entries;
+    }
+
+    /**
+     * Returns an account's most recent transactions, oldest first, reading only the account's own records.
+     * @param accountNumber Account whose transactions are wanted.
+     * @param limit Maximum number of entries.
+     * @return Up to limit entries, the newest last.
+     */
+    public List<LedgerEntry> recent(long accountNumber, int limit) {
+        Segment[] readable = readableSegments;
+        List<LedgerEntry> entries = new ArrayList<>(Math.min(limit, 1024));
+        long position = headOf(accountNumber);
+        while (position != NONE && entries.size() < limit) {
+            Segment segment = segmentOf(readable, position);
+            if (segment == null) {
+                break;
+            }
+            int offset = segment.offset((int) position);
+            entries.add(entryAt(segment, offset));
+            position = segment.buffer.getLong(offset + PREVIOUS_OFFSET);
+        }
+        Collections.reverse(entries);
+        if (position == NONE && entries.size() < limit && hasLegacySegments) {
+            ArrayDeque<LedgerEntry> older = new ArrayDeque<>();
+            int wanted = limit - entries.size();
+            scanLegacy(readable, accountNumber, Long.MIN_VALUE, Long.MAX_VALUE, entry -> {
+                if (older.size() == wanted) {
+                    older.pollFirst();
+                }
+                older.addLast(entry);
+            });
+            List<LedgerEntry> combined = new ArrayList<>(older);
+            combined.addAll(entries);
+            return combined;
+        }
+        return entries;
+    }
+
+    /**
+     * Follows an account's ledger from a record back to the newest record at or before a time.
+     * A jump link is taken whenever its target is still after the time, which skips over O(n) records
+     * in O(log n) steps; otherwise the walk moves to the previous record.
+     * @return The position of the record, or NONE if the ledger has no record at or before the time.
+     */
+    private static long seekAtOrBefore(Segment[] readable, long position, long timestamp) {
+        while (position != NONE) {
+            Segment segment = segmentOf(readable, position);
+            if (segment == null) {
+                return NONE;
+            }
+            int offset = segment.offset((int) position);
+            if (segment.buffer.getLong(offset) <= timestamp) {
+                return position;
+            }
+            long jump = segment.buffer.getLong(offset + JUMP_OFFSET);
+            Segment jumpSegment = jump == position ? null : segmentOf(readable, jump);
+            position = jumpSegment != null && jumpSegment.timestampAt((int) jump) > timestamp
+                    ? jump
+                    : segment.buffer.getLong(offset + PREVIOUS_OFFSET);
+        }
+        return NONE;
+    }
+
+    private static LedgerEntry entryAt(Segment segment, int offset) {
+        MappedByteBuffer buffer = segment.buffer;
+        return new LedgerEntry(buffer.getLong(offset), buffer.getLong(offset + 8),
+                TYPES[buffer.getInt(offset + TYPE_OFFSET) - 1], buffer.getLong(offset + 16),
+                buffer.getLong(offset + COUNTERPARTY_OFFSET), buffer.getLong(offset + 24));
+    }
+
+    private void scanLegacy(Segment[] readable, long accountNumber, long fromTimestamp, long toTimestamp,
+                            Consumer<LedgerEntry> action) {
+        for (Segment segment : readable) {
+            if (segment.legacy) {
+                scanSegment(segment, accountNumber, fromTimestamp, toTimestamp, (timestamp, account, type, amount, balance) ->
+                        action.accept(new LedgerEntry(timestamp, account, type, amount, AccountEvent.NO_COUNTERPARTY, balance)));
+            }
+        }
+    }
+
+    private long headOf(long accountNumber) {
+        lock.lock();
+        try {
+            long[] head = heads.get(accountNumber);
+            return head == null ? NONE : head[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Visits the archived transactions of one account within a time range, oldest first, by scanning every
+     * record of the range; {@link #statement(long, long, long)} reads the account's ledger instead.
+     * Segments whose filter rules out the account are skipped, and scanning within a segment starts
+     * at the first record of the range, found by binary search.
+     * @param accountNumber Account whose transactions are wanted.
+     * @param fromTimestamp Start of the range, inclusive.
+     * @param toTimestamp End of the range, inclusive.
+     * @param handler Callback receiving each matching record.
+     * @return The number of records passed to the handler.
+     */
+    public int scan(long accountNumber, long fromTimestamp, long toTimestamp, RecordHandler handler) {
+        int matched = 0;
+        for (Segment segment : readableSegments) {
+            int count = segment.count;
+            if (count > 0 && segment.timestampAt(0) > toTimestamp) {
+                break;
+            }
+            matched += scanSegment(segment, accountNumber, fromTimestamp, toTimestamp, handler);
+        }
+        return matched;
+    }
+
+    private static int scanSegment(Segment segment, long accountNumber, long fromTimestamp, long toTimestamp,
+                                   RecordHandler handler) {
+        int count = segment.count;
+        if (count == 0 || segment.timestampAt(count - 1) < fromTimestamp || !segment.mayContain(accountNumber)) {
+            return 0;
+        }
+        int matched = 0;
+        MappedByteBuffer buffer = segment.buffer;
+        for (int slot = firstAtOrAfter(segment, count, fromTimestamp); slot < count; slot++) {
+            int offset = segment.offset(slot);
+            long timestamp = buffer.getLong(offset);
+            if (timestamp > toTimestamp) {
+                break;
+            }
+            if (buffer.getLong(offset + 8) == accountNumber) {
+                handler.onRecord(timestamp, accountNumber, TYPES[buffer.getInt(offset + segment.typeOffset) - 1],
+                        buffer.getLong(offset + 16), buffer.getLong(offset + 24));
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static int firstAtOrAfter(Segment segment, int count, long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segment.timestampAt(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the total number of archived records.
+     * @return The record count over all segments.
+     */
+    public long getRecordCount() {
+        long total = 0;
+        for (Segment segment : readableSegments) {
+            total += segment.count;
+        }
+        return total;
+    }
+
+    /**
+     * Forces the records appended to the active segment to disk.
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            if (active != null) {
+                active.buffer.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces outstanding records to disk, saves the ledger heads and stops accepting appends.
+     * The mappings themselves are released once the archive is garbage collected.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            sync();
+            if (active != null) {
+                saveHeads(positionOf(active, active.count));
+            }
+            active = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads the saved ledger heads, then indexes the records appended after they were saved.
+     * Without a usable saved file, the heads are rebuilt from all ledger records.
+     */
+    private void loadHeads() {
+        Path headsPath = directory.resolve(HEADS_FILE);
+        long indexed = NONE;
+        try {
+            if (Files.exists(headsPath)) {
+                ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(headsPath));
+                if (saved.remaining() >= HEADS_HEADER_SIZE && saved.getInt() == HEADS_MAGIC) {
+                    long position = saved.getLong();
+                    Segment segment = segmentOf(readableSegments, position);
+                    // Records up to the saved position must still be there, e.g. after a crash lost unsynced pages
+                    if (segment != null && (int) position <= segment.count) {
+                        for (int accounts = saved.getInt(); accounts > 0; accounts--) {
+                            heads.put(saved.getLong(), new long[] {saved.getLong()});
+                        }
+                        indexed = position;
+                    }
+                }
+                if (indexed == NONE) {
+                    System.out.println("Ignoring outdated ledger heads: " + headsPath);
+                }
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            System.out.println("An error occurred while reading the ledger heads.");
+            e.printStackTrace();
+            heads.clear();
+            indexed = NONE;
+        }
+        for (Segment segment : readableSegments) {
+            if (segment.legacy || (indexed != NONE && segment.index < (int) (indexed >>> 32))) {
+                continue;
+            }
+            int slot = indexed != NONE && segment.index == (int) (indexed >>> 32) ? (int) indexed : 0;
+            for (int count = segment.count; slot < count; slot++) {
+                long accountNumber = segment.buffer.getLong(segment.offset(slot) + 8);
+                long[] head = heads.get(accountNumber);
+                if (head == null) {
+                    heads.put(accountNumber, new long[] {positionOf(segment, slot)});
+                } else {
+                    head[0] = positionOf(segment, slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the ledger heads to a temporary file and moves it over the previous one.
+     * @param indexed Position of the first record not covered by the heads.
+     */
+    private void saveHeads(long indexed) {
+        Path headsPath = directory.resolve(HEADS_FILE);
+        Path tempPath = headsPath.resolveSibling(HEADS_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(HEADS_MAGIC).putLong(indexed).putInt(heads.size());
+            IOException[] failure = new IOException[1];
+            heads.forEach((accountNumber, head) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                if (buffer.remaining() < 16) {
+                    failure[0] = drain(channel, buffer);
+                }
+                buffer.putLong(accountNumber).putLong(head[0]);
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            IOException last = drain(channel, buffer);
+            if (last != null) {
+                throw last;
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the ledger heads.");
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tempPath, headsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("An error occurred while replacing the ledger heads.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a buffer's content to a channel and clears it.
+     * @return The failure, or null if the content was written.
+     */
+    private static IOException drain(FileChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return null;
+        } catch (IOException e) {
+            return e;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private static long positionOf(Segment segment, int slot) {
+        return ((long) segment.index << 32) | slot;
+    }
+
+    /**
+     * Finds the segment holding a position, by binary search over segment indexes.
+     * @return The segment, or null if it was not mapped, e.g. because its file was unreadable.
+     */
+    private static Segment segmentOf(Segment[] readable, long position) {
+        if (position < 0) {
+            return null;
+        }
+        int index = (int) (position >>> 32);
+        int low = 0;
+        int high = readable.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midIndex = readable[mid].index;
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return readable[mid];
+            }
+        }
+        return null;
+    }
+
+    private static int filterBit(long accountNumber) {
+        long h = accountNumber * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) % FILTER_BITS);
+    }
+}
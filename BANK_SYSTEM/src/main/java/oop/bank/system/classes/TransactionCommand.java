@@ -0,0 +1,82 @@
+package oop.bank.system.classes;
+
+/**
+ * A single money movement submitted to {@link BankManager#executeBatch(java.util.List)}.
+ * Commands are immutable and created through the static factory methods.
+ */
+public final class TransactionCommand {
+    /**
+     * Kind of money movement.
+     */
+    public enum Type {
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER
+    }
+
+    private final Type type;                 // Kind of movement
+    private final long accountNumber;        // Account deposited to, withdrawn from or transferred from
+    private final long targetAccountNumber;  // Destination of a transfer, 0 otherwise
+    private final long amount;               // Amount in cents
+
+    private TransactionCommand(Type type, long accountNumber, long targetAccountNumber, long amount) {
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.targetAccountNumber = targetAccountNumber;
+        this.amount = amount;
+    }
+
+    /**
+     * Creates a deposit command.
+     * @param accountNumber The account to deposit into.
+     * @param amount The amount to deposit, in cents.
+     * @return The command.
+     */
+    public static TransactionCommand deposit(long accountNumber, long amount) {
+        return new TransactionCommand(Type.DEPOSIT, accountNumber, 0, amount);
+    }
+
+    /**
+     * Creates a withdrawal command.
+     * @param accountNumber The account to withdraw from.
+     * @param amount The amount to withdraw, in cents.
+     * @return The command.
+     */
+    public static TransactionCommand withdraw(long accountNumber, long amount) {
+        return new TransactionCommand(Type.WITHDRAW, accountNumber, 0, amount);
+    }
+
+    /**
+     * Creates a transfer command.
+     * @param fromAccountNumber Source account number.
+     * @param toAccountNumber Destination account number.
+     * @param amount The amount to transfer, in cents.
+     * @return The command.
+     */
+    public static TransactionCommand transfer(long fromAccountNumber, long toAccountNumber, long amount) {
+        return new TransactionCommand(Type.TRANSFER, fromAccountNumber, toAccountNumber, amount);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public long getTargetAccountNumber() {
+        return targetAccountNumber;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.TRANSFER
+                ? type + " " + Money.format(amount) + " from " + accountNumber + " to " + targetAccountNumber
+                : type + " " + Money.format(amount) + " on " + accountNumber;
+    }
+}
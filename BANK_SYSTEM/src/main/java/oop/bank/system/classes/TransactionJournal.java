@@ -0,0 +1,641 @@
+package oop.bank.system.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of balance mutations and client changes.
+ * Each record is length-prefixed and checksummed. Balance records hold the balance of an account after the mutation,
+ * so replaying the journal in order restores the latest balances regardless of where a previous replay stopped.
+ * Records are written through a single FileChannel and forced to disk in groups of a configurable size.
+ * A committed record is written to the file at once, but only durable against a power loss or an operating system
+ * crash once its group is forced: with a group commit size of n, up to n - 1 committed records may be lost that way.
+ * A crash of the process alone loses none of them. A group commit size of 1 forces every commit.
+ * If opening, writing or forcing the journal fails, it stops accepting records: the failed call and every later
+ * append, commit or sync throw {@link UncheckedIOException}, so no operation is acknowledged once records are lost.
+ * The journal is guarded by a {@link ReentrantLock} rather than its monitor, so virtual threads blocked in file I/O
+ * while holding it do not pin their carrier thread.
+ */
+public class TransactionJournal implements Closeable {
+    public static final byte CLIENT_UPDATED = 3; // New contact details of a client
+    public static final byte CLIENT_REMOVED = 4; // Client and account removed
+    public static final byte BALANCE_UPDATE = 5; // Balance of an account after a mutation, in cents
+    public static final byte CLIENT_ADDED = 6;   // New client together with their account, amounts in cents
+    public static final byte MONTH_END_BALANCES = 7;  // Balances after month-end processing, pending until committed
+    public static final byte MONTH_END_COMMITTED = 8; // Month-end processing of one lock stripe completed
+    public static final byte REQUEST_COMPLETED = 9;   // Outcome of a request with an idempotency key, with its balances
+
+    private static final int HEADER_SIZE = 8;                      // Payload length plus CRC32 of the payload
+    private static final int RECORD_PREFIX_SIZE = 1 + 8;           // Record type and sequence number
+    private static final int BALANCE_PAYLOAD_SIZE = RECORD_PREFIX_SIZE + 8 + 8; // Prefix, account number, balance
+    private static final int MONTH_END_PREFIX_SIZE = RECORD_PREFIX_SIZE + 8 + 4; // Prefix, period, stripe
+    private static final int REQUEST_PREFIX_SIZE = RECORD_PREFIX_SIZE + 8 + 8 + 1; // Prefix, timestamp, fingerprint, result
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Receives records while the journal is replayed.
+     */
+    public interface RecordHandler {
+        void onBalanceUpdate(long sequence, long accountNumber, long balance);
+
+        void onClientAdded(long sequence, Client client, BankAccount account);
+
+        void onClientUpdated(long sequence, Client client);
+
+        void onClientRemoved(long sequence, long accountNumber);
+
+        void onMonthEndBalance(long sequence, long period, int stripe, long accountNumber, long balance);
+
+        void onMonthEndCommitted(long sequence, long period, int stripe);
+
+        /**
+         * Receives the outcome of a request with an idempotency key. Called for records written before the
+         * replayed range too, as outcomes outlive the snapshots covering their balances;
+         * the balances of the request are then not replayed.
+         */
+        void onRequestCompleted(long sequence, String key, long fingerprint, TransactionResult result, long timestamp);
+    }
+
+    /**
+     * Receives the raw payload of each valid record while the journal file is scanned.
+     */
+    private interface PayloadVisitor {
+        void visit(ByteBuffer payload, long sequence) throws IOException;
+    }
+
+    private final Path journalPath;    // Location of the journal file
+    private final int groupCommitSize; // Records written between two fsync calls, 0 leaves flushing to the OS
+    private final ByteBuffer buffer;   // Records appended since the last commit
+    private final CRC32 crc;           // Reused checksum calculator
+    private FileChannel channel;       // Channel positioned at the end of the valid journal data
+    private long lastSequence;         // Sequence number of the last appended record
+    private int bufferedRecords;       // Records held in the buffer
+    private int unsyncedRecords;       // Records written since the last fsync
+    private IOException failure;       // Error that stopped the journal, null while it is usable
+    private final ReentrantLock lock;  // Guards the buffer, the channel and the counters
+
+    /**
+     * Opens or creates the journal, discarding any partially written record at its tail.
+     * @param journalFilePath Path to the journal file.
+     * @param groupCommitSize Number of records to write before forcing them to disk;
+     *                        1 syncs every commit and 0 never syncs explicitly.
+     */
+    public TransactionJournal(String journalFilePath, int groupCommitSize) {
+        if (groupCommitSize < 0) {
+            throw new IllegalArgumentException("Group commit size cannot be negative.");
+        }
+        this.journalPath = Paths.get(journalFilePath);
+        this.groupCommitSize = groupCommitSize;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.crc = new CRC32();
+        this.lock = new ReentrantLock();
+        open();
+    }
+
+    private void open() {
+        try {
+            Path parent = journalPath.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validEnd = scan(channel, (payload, sequence) -> lastSequence = Math.max(lastSequence, sequence));
+            if (validEnd < channel.size()) {
+                System.out.println("Discarding incomplete journal tail at offset " + validEnd + ".");
+                channel.truncate(validEnd);
+            }
+            channel.position(validEnd);
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening the transaction journal.");
+            e.printStackTrace();
+            failure = e;
+        }
+    }
+
+    /**
+     * Buffers a balance record. The record reaches the file on the next {@link #commit()}.
+     * @param accountNumber Account whose balance changed.
+     * @param balance Balance of the account after the mutation, in cents.
+     * @return The sequence number assigned to the record.
+     */
+    public long appendBalance(long accountNumber, long balance) {
+        lock.lock();
+        try {
+            int start = beginRecord(BALANCE_UPDATE, BALANCE_PAYLOAD_SIZE);
+            buffer.putLong(accountNumber);
+            buffer.putLong(balance);
+            return finishRecord(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers the balances of accounts changed by month-end processing of one lock stripe, in a single record.
+     * They only take effect on replay once the stripe's {@link #appendMonthEndCommitted(long, int)} record follows.
+     * @param period Month-end period being processed.
+     * @param stripe Lock stripe the accounts belong to.
+     * @param accountNumbers Accounts whose balance changed.
+     * @param balances Balance of each account after processing, in cents.
+     * @param count Number of leading entries of the arrays to record.
+     * @return The sequence number assigned to the record.
+     */
+    public long appendMonthEndBalances(long period, int stripe, long[] accountNumbers, long[] balances,
+                                       int count) {
+        lock.lock();
+        try {
+            int start = beginRecord(MONTH_END_BALANCES, MONTH_END_PREFIX_SIZE + 4 + count * 16);
+            buffer.putLong(period);
+            buffer.putInt(stripe);
+            buffer.putInt(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(accountNumbers[i]);
+                buffer.putLong(balances[i]);
+            }
+            return finishRecord(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers the record completing month-end processing of one lock stripe.
+     * @param period Month-end period being processed.
+     * @param stripe Lock stripe whose accounts were all processed.
+     * @return The sequence number assigned to the record.
+     */
+    public long appendMonthEndCommitted(long period, int stripe) {
+        lock.lock();
+        try {
+            int start = beginRecord(MONTH_END_COMMITTED, MONTH_END_PREFIX_SIZE);
+            buffer.putLong(period);
+            buffer.putInt(stripe);
+            return finishRecord(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers the outcome of a request with an idempotency key together with the balances it changed, in a single
+     * record, so after a crash either both or neither are recovered.
+     * @param key Idempotency key of the request.
+     * @param fingerprint Hash of what the request does.
+     * @param result Outcome of the request.
+     * @param timestamp Arrival time of the request, in milliseconds since the epoch.
+     * @param accountNumbers Accounts whose balance changed.
+     * @param balances Balance of each account after the request, in cents.
+     * @param count Number of leading entries of the arrays to record; 0 for a rejected request.
+     * @return The sequence number assigned to the record.
+     */
+    public long appendRequestCompleted(String key, long fingerprint, TransactionResult result, long timestamp,
+                                       long[] accountNumbers, long[] balances, int count) {
+        lock.lock();
+        try {
+            int start = beginRecord(REQUEST_COMPLETED, REQUEST_PREFIX_SIZE + BinaryCodec.stringSize(key) + 4 + count * 16);
+            buffer.putLong(timestamp);
+            buffer.putLong(fingerprint);
+            buffer.put((byte) result.ordinal());
+            BinaryCodec.putString(buffer, key);
+            buffer.putInt(count);
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(accountNumbers[i]);
+                buffer.putLong(balances[i]);
+            }
+            return finishRecord(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers a record of a newly added client and their account.
+     * @param client The new client.
+     * @param account The account opened for the client.
+     * @return The sequence number assigned to the record.
+     */
+    public long appendClientAdded(Client client, BankAccount account) {
+        lock.lock();
+        try {
+            int start = beginRecord(CLIENT_ADDED, RECORD_PREFIX_SIZE + BinaryCodec.encodedSize(client, account));
+            BinaryCodec.putClient(buffer, client);
+            BinaryCodec.putAccount(buffer, account);
+            return finishRecord(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers a record of updated client details.
+     * @param client The client after the update.
+     * @return The sequence number assigned to the record.
+     */
+    public long appendClientUpdated(Client client) {
+        lock.lock();
+        try {
+            int start = beginRecord(CLIENT_UPDATED, RECORD_PREFIX_SIZE + BinaryCodec.clientSize(client));
+            BinaryCodec.putClient(buffer, client);
+            return finishRecord(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers a record of a removed client.
+     * @param accountNumber Account number of the removed client.
+     * @return The sequence number assigned to the record.
+     */
+    public long appendClientRemoved(long accountNumber) {
+        lock.lock();
+        try {
+            int start = beginRecord(CLIENT_REMOVED, RECORD_PREFIX_SIZE + 8);
+            buffer.putLong(accountNumber);
+            return finishRecord(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes all buffered records to the journal file and forces them to disk once the group commit size is reached.
+     * The records of a commit that does not reach it are not forced yet; see the class description.
+     * The fsync runs outside the journal's lock, so other threads keep appending while it is in progress
+     * and their records are covered by the next group commit.
+     * @throws UncheckedIOException if the records cannot be written or forced, or the journal failed before.
+     */
+    public void commit() {
+        FileChannel syncChannel;
+        lock.lock();
+        try {
+            writeBuffer();
+            if (groupCommitSize == 0 || unsyncedRecords < groupCommitSize) {
+                return;
+            }
+            unsyncedRecords = 0;
+            syncChannel = channel;
+        } finally {
+            lock.unlock();
+        }
+        force(syncChannel);
+    }
+
+    /**
+     * Writes buffered records and forces the journal to disk regardless of the group commit size.
+     * @throws UncheckedIOException if the records cannot be written or forced, or the journal failed before.
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            writeBuffer();
+            unsyncedRecords = 0;
+            force(channel);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void force(FileChannel target) {
+        try {
+            target.force(false);
+        } catch (ClosedChannelException e) {
+            // The journal was compacted or closed meanwhile; both force the data to disk themselves.
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                throw fail("syncing", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops the journal after a write or sync error. Records buffered but not written are dropped.
+     * Must be called while holding the journal's lock.
+     * @return The exception to throw.
+     */
+    private UncheckedIOException fail(String action, IOException e) {
+        System.out.println("An error occurred while " + action + " the transaction journal.");
+        e.printStackTrace();
+        if (failure == null) {
+            failure = e;
+        }
+        buffer.clear();
+        bufferedRecords = 0;
+        return new UncheckedIOException("The transaction journal failed while " + action + " records.", e);
+    }
+
+    /**
+     * Throws if a write or sync error stopped the journal. Must be called while holding the journal's lock.
+     */
+    private void checkUsable() {
+        if (failure != null) {
+            throw new UncheckedIOException("The transaction journal failed earlier and accepts no more records.", failure);
+        }
+    }
+
+    /**
+     * Replays the complete records written after the given sequence number, in the order they were written.
+     * @param afterSequence Records with this sequence number or lower are skipped.
+     * @param handler Callback receiving each record.
+     * @return Number of records replayed.
+     */
+    public int replay(long afterSequence, RecordHandler handler) {
+        lock.lock();
+        try {
+            writeBuffer();
+            int[] replayed = new int[1];
+            try {
+                scan(channel, (payload, sequence) -> {
+                    if (sequence > afterSequence) {
+                        dispatch(payload, sequence, handler);
+                        replayed[0]++;
+                    } else if (payload.get(0) == REQUEST_COMPLETED) {
+                        dispatchRequest(payload, sequence, handler, false);
+                    }
+                });
+            } catch (IOException e) {
+                System.out.println("An error occurred while replaying the transaction journal.");
+                e.printStackTrace();
+            }
+            return replayed[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the records already contained in a snapshot, keeping the journal tail written after it.
+     * The remaining records are copied to a new file that atomically replaces the journal.
+     * @param watermark Sequence number up to which records are covered by the snapshot.
+     */
+    public void compact(long watermark) {
+        compact(watermark, Long.MAX_VALUE);
+    }
+
+    /**
+     * Drops the records already contained in a snapshot, keeping the journal tail written after it and the
+     * outcomes of requests with an idempotency key that arrived from a given time on. Such outcomes are kept
+     * without their balances, which the snapshot holds.
+     * The remaining records are copied to a new file that atomically replaces the journal.
+     * @param watermark Sequence number up to which records are covered by the snapshot.
+     * @param keepRequestsSince Arrival time, in milliseconds since the epoch, from which request outcomes are kept.
+     */
+    public void compact(long watermark, long keepRequestsSince) {
+        lock.lock();
+        try {
+            writeBuffer();
+            Path compactPath = journalPath.resolveSibling(journalPath.getFileName() + ".compact");
+            try (FileChannel target = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                scan(channel, (payload, sequence) -> {
+                    if (sequence > watermark) {
+                        writeRecord(target, header, payload);
+                    } else if (payload.get(0) == REQUEST_COMPLETED
+                            && payload.getLong(RECORD_PREFIX_SIZE) >= keepRequestsSince) {
+                        // Cut the record after the key and set its balance count to 0
+                        int countOffset = REQUEST_PREFIX_SIZE + 2 + Math.max(0, payload.getShort(REQUEST_PREFIX_SIZE));
+                        payload.limit(countOffset + 4);
+                        payload.putInt(countOffset, 0);
+                        writeRecord(target, header, payload);
+                    }
+                });
+                target.force(true);
+            } catch (IOException e) {
+                System.out.println("An error occurred while compacting the transaction journal.");
+                e.printStackTrace();
+                return;
+            }
+            try {
+                channel.close();
+                Files.move(compactPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.out.println("An error occurred while replacing the transaction journal.");
+                e.printStackTrace();
+            }
+            open();
+            unsyncedRecords = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeRecord(FileChannel target, ByteBuffer header, ByteBuffer payload) throws IOException {
+        crc.reset();
+        crc.update(payload.duplicate());
+        header.clear();
+        header.putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] record = {header, payload};
+        while (payload.hasRemaining()) {
+            target.write(record);
+        }
+    }
+
+    /**
+     * Makes sure new records are numbered after the given sequence number, e.g. the watermark of a loaded snapshot.
+     * @param sequence The lowest sequence number that must not be reused.
+     */
+    public void advanceSequence(long sequence) {
+        lock.lock();
+        try {
+            lastSequence = Math.max(lastSequence, sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Syncs outstanding records and closes the journal file. A failed journal is closed without syncing.
+     * @throws UncheckedIOException if outstanding records cannot be written or forced.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (failure == null) {
+                sync();
+            }
+        } finally {
+            closeChannel();
+            lock.unlock();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("An error occurred while closing the transaction journal.");
+            e.printStackTrace();
+        }
+    }
+
+    private int beginRecord(byte type, int payloadSize) {
+        checkUsable();
+        if (HEADER_SIZE + payloadSize > buffer.capacity()) {
+            throw new IllegalArgumentException("Journal record too large: " + payloadSize + " bytes.");
+        }
+        if (buffer.remaining() < HEADER_SIZE + payloadSize) {
+            writeBuffer();
+        }
+        int start = buffer.position();
+        buffer.position(start + HEADER_SIZE);
+        buffer.put(type);
+        buffer.putLong(++lastSequence);
+        return start;
+    }
+
+    private long finishRecord(int start) {
+        int end = buffer.position();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + HEADER_SIZE).limit(end);
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(start, end - start - HEADER_SIZE);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        bufferedRecords++;
+        return lastSequence;
+    }
+
+    /**
+     * Writes the buffered records to the channel.
+     * @throws UncheckedIOException if the records cannot be written, or the journal failed before.
+     */
+    private void writeBuffer() {
+        checkUsable();
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw fail("writing", e);
+        }
+        unsyncedRecords += bufferedRecords;
+        bufferedRecords = 0;
+        buffer.clear();
+    }
+
+    private static void dispatch(ByteBuffer payload, long sequence, RecordHandler handler) {
+        byte type = payload.get(0);
+        payload.position(RECORD_PREFIX_SIZE);
+        switch (type) {
+            case BALANCE_UPDATE:
+                handler.onBalanceUpdate(sequence, payload.getLong(), payload.getLong());
+                break;
+            case CLIENT_ADDED:
+                Client client = BinaryCodec.getClient(payload);
+                handler.onClientAdded(sequence, client, BinaryCodec.getAccount(payload, client));
+                break;
+            case CLIENT_UPDATED:
+                handler.onClientUpdated(sequence, BinaryCodec.getClient(payload));
+                break;
+            case CLIENT_REMOVED:
+                handler.onClientRemoved(sequence, payload.getLong());
+                break;
+            case MONTH_END_BALANCES:
+                long period = payload.getLong();
+                int stripe = payload.getInt();
+                for (int count = payload.getInt(); count > 0; count--) {
+                    handler.onMonthEndBalance(sequence, period, stripe, payload.getLong(), payload.getLong());
+                }
+                break;
+            case MONTH_END_COMMITTED:
+                handler.onMonthEndCommitted(sequence, payload.getLong(), payload.getInt());
+                break;
+            case REQUEST_COMPLETED:
+                dispatchRequest(payload, sequence, handler, true);
+                break;
+            default:
+                System.out.println("Skipping unknown journal record type " + type + ".");
+        }
+    }
+
+    private static void dispatchRequest(ByteBuffer payload, long sequence, RecordHandler handler, boolean withBalances) {
+        payload.position(RECORD_PREFIX_SIZE);
+        long timestamp = payload.getLong();
+        long fingerprint = payload.getLong();
+        int result = payload.get();
+        String key = BinaryCodec.getString(payload);
+        TransactionResult[] results = TransactionResult.values();
+        if (key != null && result >= 0 && result < results.length) {
+            handler.onRequestCompleted(sequence, key, fingerprint, results[result], timestamp);
+        }
+        if (withBalances) {
+            for (int count = payload.getInt(); count > 0; count--) {
+                handler.onBalanceUpdate(sequence, payload.getLong(), payload.getLong());
+            }
+        }
+    }
+
+    /**
+     * Reads a journal file from the start, validating each record.
+     * @param source Channel to read from using absolute positions.
+     * @param visitor Callback for each valid record, receiving its payload.
+     * @return Offset just past the last complete, valid record.
+     */
+    private static long scan(FileChannel source, PayloadVisitor visitor) throws IOException {
+        ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 readCrc = new CRC32();
+        long offset = 0;
+        long fileSize = source.size();
+        while (offset + HEADER_SIZE <= fileSize) {
+            readBuffer.clear().limit(HEADER_SIZE);
+            readFully(source, readBuffer, offset);
+            int payloadSize = readBuffer.getInt(0);
+            int checksum = readBuffer.getInt(4);
+            if (payloadSize < RECORD_PREFIX_SIZE || payloadSize > readBuffer.capacity()
+                    || offset + HEADER_SIZE + payloadSize > fileSize) {
+                break;
+            }
+            readBuffer.clear().limit(payloadSize);
+            readFully(source, readBuffer, offset + HEADER_SIZE);
+            readBuffer.flip();
+            readCrc.reset();
+            readCrc.update(readBuffer.duplicate());
+            if ((int) readCrc.getValue() != checksum) {
+                break;
+            }
+            visitor.visit(readBuffer, readBuffer.getLong(1));
+            offset += HEADER_SIZE + payloadSize;
+        }
+        return offset;
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (source.read(target, position + target.position()) < 0) {
+                break;
+            }
+        }
+    }
+}
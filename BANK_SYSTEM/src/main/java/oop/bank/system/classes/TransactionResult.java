@@ -0,0 +1,20 @@
+package oop.bank.system.classes;
+
+/**
+ * Outcome of a money movement processed by {@link BankManager}.
+ * Outcomes of requests with an idempotency key are journaled by ordinal, so new outcomes go at the end.
+ */
+public enum TransactionResult {
+    SUCCESS,               // The movement was applied
+    ACCOUNT_NOT_FOUND,     // The account, or either account of a transfer, does not exist
+    INVALID_AMOUNT,        // The amount is zero or negative
+    INSUFFICIENT_FUNDS,    // The balance does not cover the amount
+    BALANCE_OVERFLOW,      // The destination balance would exceed the representable range
+    OVERDRAFT_EXCEEDED,    // The balance plus the overdraft limit does not cover the amount
+    BELOW_MINIMUM_BALANCE, // The balance would fall below the account's minimum balance
+    REFUND_FAILED;         // A transfer refused after its source was debited could not be returned to the source
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+}
@@ -0,0 +1,308 @@
+package oop.bank.system.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Coordinator log of the transfers a {@link ShardedBankManager} runs between accounts of different shards.
+ * A transfer is begun before its source is debited, committed once both shards are prepared and ended once it is
+ * settled either way, so after a crash the transfers that were begun but not ended can be finished: committed ones
+ * are completed, the others are rolled back. Records have a fixed size and a CRC32, and each is forced to disk before
+ * the call that writes it returns, as the next step of the transfer depends on it. If writing or forcing a record
+ * fails, the log stops accepting records and every later call throws {@link UncheckedIOException}, like
+ * {@link TransactionJournal}; the transfers it holds are then settled by recovery when the bank is reopened.
+ * The log is rewritten with only the unfinished transfers when it grows large.
+ */
+class TransferLog implements Closeable {
+    private static final byte BEGIN = 1;  // Transfer begun; the source may have been debited
+    private static final byte COMMIT = 2; // Both shards prepared; the target is to be credited
+    private static final byte END = 3;    // Transfer settled, committed or rolled back
+    private static final int RECORD_SIZE = 1 + 8 + 8 + 8 + 8 + 4; // Type, transfer id, from, to, amount, CRC32
+    private static final long COMPACTION_SIZE = 16L << 20;          // Log size above which it is rewritten
+
+    /**
+     * A transfer that was begun and not yet ended.
+     */
+    static final class Transfer {
+        final long id;
+        final long fromAccountNumber;
+        final long toAccountNumber;
+        final long amount;            // Amount transferred, in cents
+        private boolean committed;    // True once the commit decision is logged
+
+        private Transfer(long id, long fromAccountNumber, long toAccountNumber, long amount) {
+            this.id = id;
+            this.fromAccountNumber = fromAccountNumber;
+            this.toAccountNumber = toAccountNumber;
+            this.amount = amount;
+        }
+
+        boolean isCommitted() {
+            return committed;
+        }
+    }
+
+    private final Path logPath;                   // Location of the log file
+    private final ByteBuffer record;              // Reused record buffer
+    private final CRC32 crc;                      // Reused checksum calculator
+    private final Map<Long, Transfer> unfinished; // Transfers begun and not ended, in the order they began
+    private FileChannel channel;                  // Channel positioned at the end of the valid log data
+    private long nextId;                          // Id of the next transfer
+    private IOException failure;                  // Error that stopped the log, null while it is usable
+    private final ReentrantLock lock;             // Serializes records, compaction and the close
+
+    /**
+     * Opens or creates the log, reading the transfers left unfinished, and discarding any partially written tail.
+     * @param logFilePath Path to the log file.
+     */
+    TransferLog(String logFilePath) {
+        this.logPath = Paths.get(logFilePath);
+        this.record = ByteBuffer.allocate(RECORD_SIZE);
+        this.crc = new CRC32();
+        this.unfinished = new LinkedHashMap<>();
+        this.lock = new ReentrantLock();
+        // Ids grow with the clock, so ids of a previous run are not reused while their idempotency keys are remembered
+        this.nextId = System.currentTimeMillis() << 20;
+        try {
+            Path parent = logPath.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validEnd = read();
+            if (validEnd < channel.size()) {
+                System.out.println("Discarding incomplete transfer log tail at offset " + validEnd + ".");
+                channel.truncate(validEnd);
+            }
+            channel.position(validEnd);
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening the transfer log.");
+            e.printStackTrace();
+            failure = e;
+        }
+    }
+
+    private long read() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        long offset = 0;
+        while (true) {
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+                // Keep reading until the record is complete or the file ends
+            }
+            if (buffer.hasRemaining()) {
+                return offset;
+            }
+            crc.reset();
+            crc.update(buffer.array(), 0, RECORD_SIZE - 4);
+            if ((int) crc.getValue() != buffer.getInt(RECORD_SIZE - 4)) {
+                return offset;
+            }
+            byte type = buffer.get(0);
+            long id = buffer.getLong(1);
+            nextId = Math.max(nextId, id + 1);
+            if (type == BEGIN) {
+                unfinished.put(id, new Transfer(id, buffer.getLong(9), buffer.getLong(17), buffer.getLong(25)));
+            } else if (type == COMMIT) {
+                Transfer transfer = unfinished.get(id);
+                if (transfer != null) {
+                    transfer.committed = true;
+                }
+            } else if (type == END) {
+                unfinished.remove(id);
+            }
+            offset += RECORD_SIZE;
+        }
+    }
+
+    /**
+     * Returns the transfers begun and not ended, e.g. by a crash, in the order they began.
+     * @return A copy of the unfinished transfers.
+     */
+    List<Transfer> getUnfinished() {
+        lock.lock();
+        try {
+            return new ArrayList<>(unfinished.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs the start of a transfer. Must be called before its source is debited.
+     * @param fromAccountNumber Source account number.
+     * @param toAccountNumber Target account number.
+     * @param amount Amount to transfer, in cents.
+     * @return The id of the transfer.
+     * @throws UncheckedIOException if the record cannot be written or forced, or the log failed before.
+     */
+    long begin(long fromAccountNumber, long toAccountNumber, long amount) {
+        lock.lock();
+        try {
+            checkUsable();
+            long id = nextId++;
+            unfinished.put(id, new Transfer(id, fromAccountNumber, toAccountNumber, amount));
+            append(BEGIN, id, fromAccountNumber, toAccountNumber, amount);
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs the decision to complete a transfer. Must be called before its target is credited.
+     * @param id The id of the transfer.
+     * @throws UncheckedIOException if the record cannot be written or forced, or the log failed before.
+     */
+    void commit(long id) {
+        lock.lock();
+        try {
+            checkUsable();
+            Transfer transfer = unfinished.get(id);
+            if (transfer != null) {
+                transfer.committed = true;
+            }
+            append(COMMIT, id, 0, 0, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Logs that a transfer is settled and needs no recovery.
+     * @param id The id of the transfer.
+     * @throws UncheckedIOException if the record cannot be written or forced, or the log failed before.
+     */
+    void end(long id) {
+        lock.lock();
+        try {
+            checkUsable();
+            unfinished.remove(id);
+            append(END, id, 0, 0, 0);
+            if (channelSize() > COMPACTION_SIZE) {
+                compact();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a record and forces it to disk, stopping the log if either fails.
+     */
+    private void append(byte type, long id, long fromAccountNumber, long toAccountNumber, long amount) {
+        try {
+            write(type, id, fromAccountNumber, toAccountNumber, amount);
+            channel.force(false);
+        } catch (IOException e) {
+            throw fail("writing to", e);
+        }
+    }
+
+    private void write(byte type, long id, long fromAccountNumber, long toAccountNumber, long amount) throws IOException {
+        record.clear();
+        record.put(type).putLong(id).putLong(fromAccountNumber).putLong(toAccountNumber).putLong(amount);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * Stops the log after a write, sync or compaction error. Must be called while holding the log's lock.
+     * @return The exception to throw.
+     */
+    private UncheckedIOException fail(String action, IOException e) {
+        System.out.println("An error occurred while " + action + " the transfer log.");
+        e.printStackTrace();
+        if (failure == null) {
+            failure = e;
+        }
+        return new UncheckedIOException("The transfer log failed while " + action + " it.", e);
+    }
+
+    /**
+     * Throws if an error stopped the log. Must be called while holding the log's lock.
+     */
+    private void checkUsable() {
+        if (failure != null) {
+            throw new UncheckedIOException("The transfer log failed earlier and accepts no more records.", failure);
+        }
+    }
+
+    private long channelSize() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Rewrites the log with only the unfinished transfers, replacing it atomically.
+     */
+    private void compact() {
+        Path compactPath = logPath.resolveSibling(logPath.getFileName() + ".compact");
+        try {
+            channel.force(false);
+            channel.close();
+            channel = FileChannel.open(compactPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            for (Transfer transfer : unfinished.values()) {
+                write(BEGIN, transfer.id, transfer.fromAccountNumber, transfer.toAccountNumber, transfer.amount);
+                if (transfer.committed) {
+                    write(COMMIT, transfer.id, 0, 0, 0);
+                }
+            }
+            channel.force(true);
+            Files.move(compactPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw fail("compacting", e);
+        }
+    }
+
+    /**
+     * Forces the log to disk and closes it, emptying it first if no transfer is unfinished.
+     * A failed log is closed as it is, so recovery finds the transfers its file holds.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            try {
+                if (channel == null) {
+                    return;
+                }
+                if (failure == null) {
+                    if (unfinished.isEmpty()) {
+                        channel.truncate(0);
+                    }
+                    channel.force(true);
+                }
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("An error occurred while closing the transfer log.");
+                e.printStackTrace();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package oop.bank.system.classes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests recovery of transfers between shards left unfinished by a crash.
+ */
+class ShardedBankManagerTest {
+    @TempDir
+    Path dataDirectory;
+
+    /**
+     * Restarts after the idempotency retention time has passed, with an uncommitted and a committed transfer
+     * whose source was debited. Refunding the first must not evict the recorded debit of the second,
+     * which would end it without crediting its target.
+     */
+    @Test
+    void recoversTransfersAfterTheRetentionTimeHasPassed() throws InterruptedException {
+        String directory = dataDirectory.toString();
+        Client source = new Client(0, "Ada", "Source", "ada@example.com", "555-0100");
+        Client target = new Client(0, "Bob", "Target", "bob@example.com", "555-0101");
+        int sourceShard;
+        try (ShardedBankManager bank = new ShardedBankManager(directory, 2, 1)) {
+            bank.addClient(source, true);
+            bank.addClient(target, true);
+            sourceShard = bank.shardOf(source.getAccountNumber());
+            assertNotEquals(sourceShard, bank.shardOf(target.getAccountNumber()));
+            bank.deposit(source.getAccountNumber(), 100000);
+        }
+
+        // Leave the state a crash would: both sources debited, only the second transfer committed, neither ended
+        Path shardDirectory = dataDirectory.resolve("shard-" + sourceShard);
+        BankManager shard = new BankManager(shardDirectory.resolve("client-list.bin").toString(),
+                shardDirectory.resolve("clientData").toString(),
+                shardDirectory.resolve("transactions.journal").toString(), 1);
+        try (TransferLog log = new TransferLog(dataDirectory.resolve("transfers.log").toString())) {
+            long uncommitted = log.begin(source.getAccountNumber(), target.getAccountNumber(), 30000);
+            assertEquals(TransactionResult.SUCCESS, shard.sendTransfer(ShardedBankManager.debitKey(uncommitted),
+                    source.getAccountNumber(), target.getAccountNumber(), 30000));
+            long committed = log.begin(source.getAccountNumber(), target.getAccountNumber(), 20000);
+            assertEquals(TransactionResult.SUCCESS, shard.sendTransfer(ShardedBankManager.debitKey(committed),
+                    source.getAccountNumber(), target.getAccountNumber(), 20000));
+            log.commit(committed);
+        } finally {
+            shard.close();
+        }
+
+        Thread.sleep(50);
+        try (ShardedBankManager bank = new ShardedBankManager(directory, 2, 1, 10)) {
+            assertEquals(80000, bank.getAccountBalance(source.getAccountNumber()));
+            assertEquals(20000, bank.getAccountBalance(target.getAccountNumber()));
+        }
+        try (ShardedBankManager bank = new ShardedBankManager(directory, 2, 1)) {
+            assertEquals(80000, bank.getAccountBalance(source.getAccountNumber()));
+            assertEquals(20000, bank.getAccountBalance(target.getAccountNumber()));
+        }
+    }
+
+    /**
+     * Restarts with an uncommitted transfer whose source was debited and then removed. The refund is refused,
+     * so the transfer must stay in the transfer log instead of being ended with the amount lost.
+     */
+    @Test
+    void keepsTransfersWhoseRefundFailsUnfinished() {
+        String directory = dataDirectory.toString();
+        Client source = new Client(0, "Ada", "Source", "ada@example.com", "555-0100");
+        Client target = new Client(0, "Bob", "Target", "bob@example.com", "555-0101");
+        int sourceShard;
+        try (ShardedBankManager bank = new ShardedBankManager(directory, 2, 1)) {
+            bank.addClient(source, true);
+            bank.addClient(target, true);
+            sourceShard = bank.shardOf(source.getAccountNumber());
+            bank.deposit(source.getAccountNumber(), 100000);
+        }
+
+        Path shardDirectory = dataDirectory.resolve("shard-" + sourceShard);
+        BankManager shard = new BankManager(shardDirectory.resolve("client-list.bin").toString(),
+                shardDirectory.resolve("clientData").toString(),
+                shardDirectory.resolve("transactions.journal").toString(), 1);
+        try (TransferLog log = new TransferLog(dataDirectory.resolve("transfers.log").toString())) {
+            long id = log.begin(source.getAccountNumber(), target.getAccountNumber(), 30000);
+            assertEquals(TransactionResult.SUCCESS, shard.sendTransfer(ShardedBankManager.debitKey(id),
+                    source.getAccountNumber(), target.getAccountNumber(), 30000));
+            assertTrue(shard.removeClient(source.getAccountNumber()));
+        } finally {
+            shard.close();
+        }
+
+        for (int restart = 0; restart < 2; restart++) {
+            try (ShardedBankManager bank = new ShardedBankManager(directory, 2, 1)) {
+                assertEquals(0, bank.getAccountBalance(target.getAccountNumber()));
+            }
+            try (TransferLog log = new TransferLog(dataDirectory.resolve("transfers.log").toString())) {
+                assertEquals(1, log.getUnfinished().size());
+            }
+        }
+    }
+}
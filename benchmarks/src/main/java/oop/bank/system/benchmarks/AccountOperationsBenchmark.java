@@ -0,0 +1,112 @@
+package oop.bank.system.benchmarks;
+
+import oop.bank.system.classes.BankAccount;
+import oop.bank.system.classes.BankManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of {@link BankManager}: lookups and money movement, at different bank sizes.
+ * The single-threaded benchmarks pick random accounts over the whole bank; the contended ones
+ * concentrate all threads on a small set of hot accounts to measure lock contention.
+ * Run with {@code -prof gc} to report allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class AccountOperationsBenchmark {
+    private static final int HOT_ACCOUNTS = 16; // Accounts shared by all threads in the contended benchmarks
+    private static final long AMOUNT = 100;     // Amount moved per operation, in cents
+
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    private BankFixture fixture;
+    private BankManager bankManager;
+    private long[] accountNumbers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = BankFixture.create();
+        bankManager = fixture.open();
+        accountNumbers = fixture.populate(bankManager, accounts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bankManager.close();
+        fixture.delete();
+    }
+
+    private long randomAccount() {
+        return accountNumbers[ThreadLocalRandom.current().nextInt(accountNumbers.length)];
+    }
+
+    private long hotAccount() {
+        return accountNumbers[ThreadLocalRandom.current().nextInt(HOT_ACCOUNTS)];
+    }
+
+    @Benchmark
+    public Optional<BankAccount> findAccountByNumber() {
+        return bankManager.findAccountByNumber(randomAccount());
+    }
+
+    @Benchmark
+    public boolean deposit() {
+        return bankManager.deposit(randomAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    public boolean withdraw() throws Exception {
+        return bankManager.withdraw(randomAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    public boolean transferFunds() {
+        return bankManager.transferFunds(randomAccount(), randomAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean transferFundsUncontended() {
+        return bankManager.transferFunds(randomAccount(), randomAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean transferFundsContended() {
+        return bankManager.transferFunds(hotAccount(), hotAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean depositContended() {
+        return bankManager.deposit(hotAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Optional<BankAccount> findAccountByNumberConcurrent() {
+        return bankManager.findAccountByNumber(randomAccount());
+    }
+}
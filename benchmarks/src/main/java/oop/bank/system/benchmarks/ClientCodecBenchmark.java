@@ -0,0 +1,62 @@
+package oop.bank.system.benchmarks;
+
+import oop.bank.system.classes.Client;
+import oop.bank.system.classes.ClientRecord;
+import oop.bank.system.classes.CsvParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and formatting of client list rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientCodecBenchmark {
+    private final String row = "4821093376,Jane,Doe,jane.doe@example.com,5550142";
+    private final Client client = Client.fromString(row);
+    private final ByteBuffer rowBytes = ByteBuffer.wrap(row.getBytes(StandardCharsets.UTF_8));
+    private final CsvParser parser = new CsvParser();
+    private final ClientRecord record = new ClientRecord();
+
+    @Benchmark
+    public Client fromString() {
+        return Client.fromString(row);
+    }
+
+    /**
+     * Zero-garbage scan: the row is parsed into a reused record without creating any object.
+     */
+    @Benchmark
+    public long parseIntoRecord() {
+        parser.parse(row);
+        record.read(parser);
+        return record.getAccountNumber() + record.getEmail().length();
+    }
+
+    @Benchmark
+    public long parseBytesIntoRecord() {
+        parser.parse(rowBytes);
+        record.read(parser);
+        return record.getAccountNumber() + record.getEmail().length();
+    }
+
+    @Benchmark
+    public String toStringRow() {
+        return client.toString();
+    }
+}
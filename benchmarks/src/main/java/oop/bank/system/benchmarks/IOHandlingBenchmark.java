@@ -0,0 +1,62 @@
+package oop.bank.system.benchmarks;
+
+import oop.bank.system.classes.BankAccount;
+import oop.bank.system.classes.Client;
+import oop.bank.system.classes.IOHandling;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading the per-client client-info.txt files, with the account type, as BankManager writes them
+ * at a checkpoint.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IOHandlingBenchmark {
+    private static final String ACCOUNT_TYPE = "Checking";
+
+    private BankFixture fixture;
+    private IOHandling ioHandling;
+    private Client client;
+    private long balance;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = BankFixture.create();
+        ioHandling = new IOHandling(fixture.resolve("client-list.bin"), fixture.resolve("clientData"));
+        client = new Client(4821093376L, "Jane", "Doe", "jane.doe@example.com", "5550142");
+        ioHandling.writeClientData(client, ACCOUNT_TYPE, BankFixture.OPENING_BALANCE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.delete();
+    }
+
+    @Benchmark
+    public boolean writeClientData() {
+        return ioHandling.writeClientData(client, ACCOUNT_TYPE, ++balance);
+    }
+
+    @Benchmark
+    public BankAccount readAccountData() {
+        return ioHandling.readAccountData(client);
+    }
+}
@@ -0,0 +1,64 @@
+package oop.bank.system.benchmarks;
+
+import oop.bank.system.classes.BankManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup of a populated bank: loading the snapshot and replaying the journal tail
+ * in {@code BankManager.initializeClientsAndAccounts}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    private BankFixture fixture;
+    private BankManager opened;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = BankFixture.create();
+        BankManager bankManager = fixture.open();
+        fixture.populate(bankManager, accounts);
+        bankManager.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeOpened() {
+        if (opened != null) {
+            opened.close();
+            opened = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.delete();
+    }
+
+    @Benchmark
+    public BankManager open() {
+        opened = fixture.open();
+        return opened;
+    }
+}